@@ -0,0 +1,251 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import static com.google_voltpatches.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStatusListenerExt;
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback;
+
+/**
+ * Adapts how many rows a record writer feeds to a loader before it flushes it.
+ * It starts from a size derived from the table's estimated row width, and every
+ * few sampled batch round trips it:
+ * <ul>
+ * <li>halves the size if the client signaled backpressure</li>
+ * <li>shrinks it by a quarter if batches take much longer than the target latency</li>
+ * <li>grows it by a quarter if batches complete well within the target latency</li>
+ * </ul>
+ * always within the configured bounds. It receives batch latencies as a bulk loader
+ * success callback, and backpressure events as a client status listener.
+ * <p>
+ * The batch size is the number of rows of one batch sent to the server. Bulk loaders
+ * keep one batch per partition, so the rows a loader is fed between flushes are split
+ * into as many batches as there are partitions. The size, its bounds, and the target
+ * bytes it starts from, therefore apply to each partition's batch, and writers flush
+ * a loader once it was fed the size times the partition count rows.
+ */
+public class BatchSizer extends ClientStatusListenerExt implements BulkLoaderSuccessCallback {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    /* how many batch round trips are averaged before each adjustment */
+    final static int WINDOW = 8;
+    /* how many unchanged windows it takes to consider the size settled */
+    final static int SETTLE_WINDOWS = 4;
+    /* assumed width of variable length values, when they have no declared size */
+    final static int VARIABLE_WIDTH_GUESS = 64;
+    /* growth may not exceed this many times the target bytes per batch */
+    final static int BYTES_CEILING_FACTOR = 4;
+
+    private final String m_tableName;
+    private final int m_rowWidth;
+    private final int m_min;
+    private final int m_max;
+    private final int m_partitions;
+    private final long m_targetLatencyNanos;
+
+    private volatile int m_size;
+    private volatile boolean m_backpressure = false;
+    private ClientResponse m_lastResponse = null;
+
+    private long m_latencySum = 0L;
+    private int m_samples = 0;
+    private int m_backpressureEvents = 0;
+    private int m_stableWindows = 0;
+    private long m_batches = 0L;
+    private long m_totalLatencyNanos = 0L;
+
+    /**
+     * Sizes batches of loaders that send the rows they are fed in a single batch
+     *
+     * @param tableName the destination table name, for logging
+     * @param types the destination table column types
+     * @param min minimum number of rows per batch
+     * @param max maximum number of rows per batch
+     * @param targetLatencyMillis batch round trip latency target in milliseconds
+     * @param targetBytes target number of bytes per batch, used to derive the initial size
+     */
+    public BatchSizer(String tableName, VoltType [] types, int min, int max,
+            int targetLatencyMillis, int targetBytes) {
+        this(tableName, types, min, max, targetLatencyMillis, targetBytes, 1);
+    }
+
+    /**
+     * @param tableName the destination table name, for logging
+     * @param types the destination table column types
+     * @param min minimum number of rows per partition batch
+     * @param max maximum number of rows per partition batch
+     * @param targetLatencyMillis batch round trip latency target in milliseconds
+     * @param targetBytes target number of bytes per partition batch, used to derive the initial size
+     * @param partitions how many partition batches the rows fed between flushes are split into
+     */
+    public BatchSizer(String tableName, VoltType [] types, int min, int max,
+            int targetLatencyMillis, int targetBytes, int partitions) {
+        checkArgument(types != null && types.length > 0, "null or empty column types");
+        checkArgument(min > 0 && min <= max, "invalid batch size bounds [%s, %s]", min, max);
+        checkArgument(targetLatencyMillis > 0, "non positive target latency %s", targetLatencyMillis);
+        checkArgument(targetBytes > 0, "non positive target bytes %s", targetBytes);
+        checkArgument(partitions > 0, "non positive partition count %s", partitions);
+
+        m_tableName = tableName;
+        m_rowWidth = estimateRowWidth(types);
+        m_partitions = partitions;
+        m_min = min;
+        m_max = clamp((int)Math.min(Integer.MAX_VALUE, (long)BYTES_CEILING_FACTOR * targetBytes / m_rowWidth), min, max);
+        m_targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        m_size = clamp(targetBytes / m_rowWidth, m_min, m_max);
+    }
+
+    /**
+     * Estimates the serialized width, in bytes, of a row with the given column types
+     *
+     * @param types column types
+     * @return the estimated row width
+     */
+    static int estimateRowWidth(VoltType [] types) {
+        int width = 0;
+        for (VoltType type: types) {
+            if (type.isVariableLength()) {
+                width += 4 + VARIABLE_WIDTH_GUESS;
+            } else {
+                width += type.getLengthInBytesForFixedTypesWithoutCheck();
+            }
+        }
+        return Math.max(1, width);
+    }
+
+    private static int clamp(int size, int min, int max) {
+        return Math.max(min, Math.min(max, size));
+    }
+
+    /**
+     * @return the number of rows per partition batch
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * @return the number of rows to feed a loader before flushing it
+     */
+    public int getFlushRows() {
+        return (int)Math.min(Integer.MAX_VALUE, (long)m_size * m_partitions);
+    }
+
+    /**
+     * @return how many partition batches the rows fed between flushes are split into
+     */
+    public int getPartitions() {
+        return m_partitions;
+    }
+
+    /**
+     * @return the largest batch size it may grow to
+     */
+    public int getMaxSize() {
+        return m_max;
+    }
+
+    public int getRowWidth() {
+        return m_rowWidth;
+    }
+
+    /**
+     * Bulk loader success callback. It is invoked once per row, so only
+     * the first row of each batch response is sampled
+     */
+    @Override
+    public void success(Object rowHandle, ClientResponse response) {
+        synchronized (this) {
+            if (response == m_lastResponse) return;
+            m_lastResponse = response;
+        }
+        sample(response.getClientRoundtripNanos());
+    }
+
+    @Override
+    public void backpressure(boolean status) {
+        if (status && !m_backpressure) {
+            synchronized (this) {
+                ++m_backpressureEvents;
+            }
+        }
+        m_backpressure = status;
+    }
+
+    /**
+     * Records a batch round trip latency, and adjusts the batch size at the
+     * end of each sampling window
+     *
+     * @param latencyNanos batch round trip latency in nanoseconds
+     */
+    synchronized void sample(long latencyNanos) {
+        m_latencySum += latencyNanos;
+        m_totalLatencyNanos += latencyNanos;
+        ++m_batches;
+        if (++m_samples < WINDOW) return;
+
+        final long average = m_latencySum / m_samples;
+        final int size = m_size;
+        int adjusted = size;
+
+        if (m_backpressureEvents > 0 || m_backpressure) {
+            adjusted = clamp(size / 2, m_min, m_max);
+        } else if (average > m_targetLatencyNanos + m_targetLatencyNanos / 2) {
+            adjusted = clamp(size - Math.max(1, size / 4), m_min, m_max);
+        } else if (average < m_targetLatencyNanos - m_targetLatencyNanos / 4) {
+            adjusted = clamp(size + Math.max(1, size / 4), m_min, m_max);
+        }
+
+        if (adjusted != size) {
+            m_stableWindows = 0;
+            m_size = adjusted;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Batch size for table %s changed from %d to %d (average latency %.2f ms, backpressure events %d)",
+                        m_tableName, size, adjusted, average / 1e6, m_backpressureEvents));
+            }
+        } else if (++m_stableWindows == SETTLE_WINDOWS) {
+            LOG.info(String.format("Batch size for table %s settled at %d rows (average latency %.2f ms)",
+                    m_tableName, size, average / 1e6));
+        }
+        m_latencySum = 0L;
+        m_samples = 0;
+        m_backpressureEvents = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("batch size for table %s: %d rows [%d, %d] per partition across %d partitions, estimated row width %d bytes, %d sampled batches, average latency %.2f ms",
+                m_tableName, m_size, m_min, m_max, m_partitions, m_rowWidth, m_batches,
+                m_batches == 0 ? 0D : m_totalLatencyNanos / m_batches / 1e6);
+    }
+}
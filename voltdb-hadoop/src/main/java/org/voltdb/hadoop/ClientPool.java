@@ -0,0 +1,553 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.voltdb.client.ClientImpl;
+import org.voltdb.client.ClientStats;
+import org.voltdb.client.ClientStatsContext;
+import org.voltdb.client.ClientStatusListenerExt;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcCallException;
+import org.voltdb.hadoop.VoltConfiguration.Config;
+
+import com.google_voltpatches.common.base.Joiner;
+
+/**
+ * A JVM wide pool of connected VoltDB clients. Clients are reference counted, and
+ * shared by all the writers and catalog lookups that connect to the same hosts, with
+ * the same credentials and timeout. Bulk loaders opened on a shared client also share
+ * its per table, and per partition batches. Clients that are no longer referenced are
+ * closed after they sit idle for the configured idle time.
+ * <p>
+ * Clients are further keyed by a lane number, so that a writer that stripes rows
+ * across several loaders gets a separate client for each of its stripes
+ */
+class ClientPool {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final static Map<String, Entry> m_entries = new HashMap<String, Entry>();
+    private final static Map<ClientImpl, Entry> m_byClient = new IdentityHashMap<ClientImpl, Entry>();
+
+    private final static AtomicLong m_ids = new AtomicLong(0L);
+
+    private ClientPool() {
+    }
+
+    private final static class Entry {
+        final String m_key;
+        final long m_idleMillis;
+        final String m_hosts;
+        final int m_lane;
+        ClientImpl m_client;
+        volatile ObjectName m_beanName;
+        int m_refs = 0;
+        int m_idleGeneration = 0;
+        boolean m_invalid = false;
+        final Listeners m_listeners = new Listeners();
+
+        Entry(String key, long idleMillis, String [] hosts, int lane) {
+            m_key = key;
+            m_idleMillis = idleMillis;
+            m_hosts = Joiner.on(',').join(hosts);
+            m_lane = lane;
+        }
+
+        synchronized ClientImpl connect(Config config) throws IOException {
+            if (m_client == null) {
+                m_client = VoltConfiguration.connect(config, m_listeners);
+                synchronized (m_entries) {
+                    m_byClient.put(m_client, this);
+                }
+                m_beanName = LoadMonitor.register(
+                        LoadMonitor.nameFor("Client", m_hosts + "#" + m_lane + "#" + m_ids.incrementAndGet()),
+                        new Bean(this, m_client));
+            }
+            return m_client;
+        }
+    }
+
+    /*
+     * A pooled client's MXBean. Its invocation statistics are those of the interval
+     * between its last two samples, taken at most once a second
+     */
+    private final static class Bean implements VoltClientMXBean {
+        private final Entry m_entry;
+        private final ClientImpl m_client;
+        private final ClientStatsContext m_context;
+        private long m_sampledNanos = 0L;
+        private ClientStats m_stats;
+        private Map<Long, ClientStats> m_byConnection;
+
+        Bean(Entry entry, ClientImpl client) {
+            m_entry = entry;
+            m_client = client;
+            m_context = client.createStatsContext();
+            m_stats = m_context.getStats();
+            m_byConnection = m_context.getStatsByConnection();
+        }
+
+        private synchronized void sample() {
+            final long now = System.nanoTime();
+            if (now - m_sampledNanos < TimeUnit.SECONDS.toNanos(1)) return;
+            m_sampledNanos = now;
+            m_context.fetchAndResetBaseline();
+            m_stats = m_context.getStats();
+            m_byConnection = m_context.getStatsByConnection();
+        }
+
+        @Override
+        public String getHosts() {
+            return m_entry.m_hosts;
+        }
+
+        @Override
+        public int getLane() {
+            return m_entry.m_lane;
+        }
+
+        @Override
+        public int getReferences() {
+            synchronized (m_entries) {
+                return m_entry.m_refs;
+            }
+        }
+
+        @Override
+        public boolean isBackpressure() {
+            return m_entry.m_listeners.m_backpressure;
+        }
+
+        @Override
+        public String [] getConnectedHosts() {
+            List<InetSocketAddress> connected = m_client.getConnectedHostList();
+            String [] hosts = new String[connected.size()];
+            for (int i = 0; i < hosts.length; ++i) {
+                hosts[i] = connected.get(i).getHostName() + ":" + connected.get(i).getPort();
+            }
+            return hosts;
+        }
+
+        private synchronized ClientStats stats() {
+            sample();
+            return m_stats;
+        }
+
+        @Override
+        public long getInvocationsCompleted() {
+            return stats().getInvocationsCompleted();
+        }
+
+        @Override
+        public long getInvocationErrors() {
+            return stats().getInvocationErrors();
+        }
+
+        @Override
+        public long getInvocationAborts() {
+            return stats().getInvocationAborts();
+        }
+
+        @Override
+        public long getInvocationTimeouts() {
+            return stats().getInvocationTimeouts();
+        }
+
+        @Override
+        public long getTransactionsPerSecond() {
+            return stats().getTxnThroughput();
+        }
+
+        @Override
+        public synchronized Map<String, Double> getHostAverageLatencyMillis() {
+            sample();
+            Map<String, Double> latencies = new TreeMap<String, Double>();
+            for (ClientStats stats: m_byConnection.values()) {
+                latencies.put(stats.getHostname() + ":" + stats.getPort(), stats.getAverageLatency());
+            }
+            return latencies;
+        }
+
+        @Override
+        public synchronized Map<String, Double> getHostP99LatencyMillis() {
+            sample();
+            Map<String, Double> latencies = new TreeMap<String, Double>();
+            for (ClientStats stats: m_byConnection.values()) {
+                latencies.put(stats.getHostname() + ":" + stats.getPort(), stats.kPercentileLatencyAsDouble(0.99D));
+            }
+            return latencies;
+        }
+    }
+
+    /*
+     * Client status listener that relays events to all the listeners registered
+     * by the current users of a pooled client. It also logs the nodes that the
+     * topology aware client connects to, or loses, as they join, or leave the cluster
+     */
+    private final static class Listeners extends ClientStatusListenerExt {
+        final CopyOnWriteArrayList<ClientStatusListenerExt> m_delegates =
+                new CopyOnWriteArrayList<ClientStatusListenerExt>();
+        volatile boolean m_backpressure = false;
+
+        @Override
+        public void connectionLost(String hostname, int port, int connectionsLeft, DisconnectCause cause) {
+            LOG.warn("Lost connection to " + hostname + ":" + port + " (" + cause + "), "
+                    + connectionsLeft + " connections left");
+            if (FlightEvents.isRecording()) {
+                FlightEvents.emit(FlightEvents.Type.CONNECTION_LOST, hostname, port, connectionsLeft, String.valueOf(cause));
+            }
+            for (ClientStatusListenerExt delegate: m_delegates) {
+                delegate.connectionLost(hostname, port, connectionsLeft, cause);
+            }
+        }
+
+        @Override
+        public void connectionCreated(String hostname, int port, AutoConnectionStatus status) {
+            if (status == AutoConnectionStatus.SUCCESS) {
+                LOG.info("Connected to " + hostname + ":" + port);
+            } else {
+                LOG.warn("Failed to connect to " + hostname + ":" + port + " (" + status + ")");
+            }
+            if (FlightEvents.isRecording()) {
+                FlightEvents.emit(FlightEvents.Type.CONNECTION_CREATED, hostname, port, String.valueOf(status));
+            }
+            for (ClientStatusListenerExt delegate: m_delegates) {
+                delegate.connectionCreated(hostname, port, status);
+            }
+        }
+
+        @Override
+        public void backpressure(boolean status) {
+            m_backpressure = status;
+            for (ClientStatusListenerExt delegate: m_delegates) {
+                delegate.backpressure(status);
+            }
+        }
+
+        @Override
+        public void uncaughtException(ProcedureCallback callback, ClientResponse r, Throwable e) {
+            LOG.error("Uncaught exception in VoltDB procedure callback", e);
+        }
+    }
+
+    static String keyFor(Config config, int lane) {
+        String [] hosts = config.getHosts().clone();
+        Arrays.sort(hosts);
+        String password = config.getPassword();
+        return new StringBuilder(128)
+            .append(Arrays.toString(hosts))
+            .append('|').append(config.getUserName())
+            .append('|').append(password == null ? "" : Digester.digestMD5asUUID(password).toString())
+            .append('|').append(config.getClientTimeout())
+            .append('|').append(config.isClientAffinity())
+            .append('|').append(config.isTopologyAware())
+            .append('|').append(lane)
+            .toString();
+    }
+
+    /**
+     * Starts a statistics context on the pooled client of the given key, if it is
+     * connected. Its statistics cover the client's invocations from now on
+     *
+     * @param key pool key, as returned by {@link #keyFor(Config, int)}
+     * @return a {@linkplain ClientStatsContext}, or null if the pool has no such client
+     */
+    static ClientStatsContext statsContext(String key) {
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_entries.get(key);
+        }
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.m_client != null ? entry.m_client.createStatsContext() : null;
+        }
+    }
+
+    /**
+     * Acquires a connected client for the given configuration, and lane. It connects
+     * a new client only if the pool does not hold one already
+     *
+     * @param config a {@linkplain Config}
+     * @param lane client lane
+     * @return a connected client, that must be handed back with {@link #release(ClientImpl)}
+     * @throws IOException when it fails to connect
+     */
+    static ClientImpl acquire(Config config, int lane) throws IOException {
+        final String key = keyFor(config, lane);
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, TimeUnit.SECONDS.toMillis(config.getClientIdleSeconds()), config.getHosts(), lane);
+                m_entries.put(key, entry);
+            }
+            entry.m_refs += 1;
+        }
+        try {
+            return entry.connect(config);
+        } catch (IOException e) {
+            release(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Hands back a client acquired from this pool. Unreferenced clients are closed after
+     * they idle for the configured time, or at once if they were invalidated. Clients that
+     * do not belong to the pool are closed immediately
+     *
+     * @param client a client
+     */
+    static void release(ClientImpl client) {
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_byClient.get(client);
+        }
+        if (entry == null) {
+            close(client);
+        } else {
+            release(entry);
+        }
+    }
+
+    /**
+     * Marks the given client as unusable. Current holders may still use it until they
+     * release it, but subsequent acquisitions get a newly connected client
+     *
+     * @param client a client acquired from this pool
+     */
+    static void invalidate(ClientImpl client) {
+        synchronized (m_entries) {
+            Entry entry = m_byClient.get(client);
+            if (entry != null && !entry.m_invalid) {
+                entry.m_invalid = true;
+                if (m_entries.get(entry.m_key) == entry) {
+                    m_entries.remove(entry.m_key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates the given client when the procedure call failed because its connection
+     * was lost, or timed out. Calls that failed in VoltDB, like constraint violations,
+     * leave it usable
+     *
+     * @param client a client acquired from this pool
+     * @param e the exception of a procedure call made with it
+     */
+    static void invalidateOnConnectionFailure(ClientImpl client, ProcCallException e) {
+        final ClientResponse cr = e.getClientResponse();
+        if (cr == null
+                || cr.getStatus() == ClientResponse.CONNECTION_LOST
+                || cr.getStatus() == ClientResponse.CONNECTION_TIMEOUT) {
+            invalidate(client);
+        }
+    }
+
+    /**
+     * Registers a listener for the status events of the given pooled client. Listeners
+     * should be removed before the client is released
+     *
+     * @param client a client acquired from this pool
+     * @param listener a client status listener
+     */
+    static void addListener(ClientImpl client, ClientStatusListenerExt listener) {
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_byClient.get(client);
+        }
+        if (entry != null) {
+            entry.m_listeners.m_delegates.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * @param client a client acquired from this pool
+     * @return whether the given client last reported backpressure
+     */
+    static boolean isBackpressure(ClientImpl client) {
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_byClient.get(client);
+        }
+        return entry != null && entry.m_listeners.m_backpressure;
+    }
+
+    /**
+     * Removes a listener registered with {@link #addListener(ClientImpl, ClientStatusListenerExt)}
+     *
+     * @param client a client acquired from this pool
+     * @param listener a client status listener
+     */
+    static void removeListener(ClientImpl client, ClientStatusListenerExt listener) {
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_byClient.get(client);
+        }
+        if (entry != null) {
+            entry.m_listeners.m_delegates.remove(listener);
+        }
+    }
+
+    /**
+     * A loader's hold on a pooled client. If the loader's success callback is also a
+     * {@linkplain ClientStatusListenerExt}, it receives the client's status events
+     * until the loader is closed. Closing the loader hands the client back to the
+     * pool, once
+     */
+    final static class Loan {
+        private final ClientImpl m_client;
+        private final ClientStatusListenerExt m_listener;
+        private final AtomicBoolean m_closed = new AtomicBoolean(false);
+
+        /**
+         * @param client a client acquired from this pool
+         * @param successCallback the loader's success callback, or null
+         */
+        Loan(ClientImpl client, Object successCallback) {
+            m_client = client;
+            m_listener = successCallback instanceof ClientStatusListenerExt ? (ClientStatusListenerExt)successCallback : null;
+            if (m_listener != null) {
+                addListener(m_client, m_listener);
+            }
+        }
+
+        /**
+         * @return whether the client last reported backpressure
+         */
+        boolean isBackpressure() {
+            return ClientPool.isBackpressure(m_client);
+        }
+
+        /**
+         * @return true on the loader's first close only, which must be followed by
+         *   {@link #release()}
+         */
+        boolean close() {
+            return m_closed.compareAndSet(false, true);
+        }
+
+        /**
+         * Removes the loader's listener, and hands the client back to the pool
+         */
+        void release() {
+            if (m_listener != null) {
+                removeListener(m_client, m_listener);
+            }
+            ClientPool.release(m_client);
+        }
+    }
+
+    private static void release(final Entry entry) {
+        ClientImpl closeable = null;
+        ObjectName beanName = null;
+        synchronized (m_entries) {
+            if (--entry.m_refs > 0) {
+                return;
+            }
+            if (entry.m_invalid || entry.m_idleMillis <= 0 || entry.m_client == null) {
+                beanName = entry.m_beanName;
+                closeable = remove(entry);
+            } else {
+                final int generation = ++entry.m_idleGeneration;
+                LoaderThreads.scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictIfIdle(entry, generation);
+                    }
+                }, entry.m_idleMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        LoadMonitor.unregister(beanName);
+        close(closeable);
+    }
+
+    private static void evictIfIdle(Entry entry, int generation) {
+        ClientImpl closeable = null;
+        ObjectName beanName = null;
+        synchronized (m_entries) {
+            if (entry.m_refs == 0 && entry.m_idleGeneration == generation) {
+                beanName = entry.m_beanName;
+                closeable = remove(entry);
+            }
+        }
+        LoadMonitor.unregister(beanName);
+        close(closeable);
+    }
+
+    /*
+     * Must be called while holding the entries' lock. Its client's MXBean is left
+     * to the caller to unregister, after it lets go of the lock
+     */
+    private static ClientImpl remove(Entry entry) {
+        if (m_entries.get(entry.m_key) == entry) {
+            m_entries.remove(entry.m_key);
+        }
+        if (entry.m_client != null) {
+            m_byClient.remove(entry.m_client);
+        }
+        entry.m_beanName = null;
+        ClientImpl client = entry.m_client;
+        entry.m_client = null;
+        return client;
+    }
+
+    private static void close(ClientImpl client) {
+        if (client == null) return;
+        try {
+            client.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Close client interrupted.", e);
+        }
+    }
+
+    /**
+     * @return how many clients the pool holds
+     */
+    static int size() {
+        synchronized (m_entries) {
+            return m_byClient.size();
+        }
+    }
+}
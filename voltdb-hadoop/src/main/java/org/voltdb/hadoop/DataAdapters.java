@@ -23,13 +23,13 @@
 
 package org.voltdb.hadoop;
 
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicStampedReference;
 
 import org.voltdb.VoltType;
 
-import com.google_voltpatches.common.collect.ImmutableMap;
+import com.google_voltpatches.common.cache.Cache;
+import com.google_voltpatches.common.cache.CacheBuilder;
+import com.google_voltpatches.common.cache.CacheStats;
 
 /**
  * Holder class for {@linkplain VoltRecord} de/serializing adapters
@@ -37,17 +37,17 @@ import com.google_voltpatches.common.collect.ImmutableMap;
 public class DataAdapters {
 
     /*
-     * Adapters cache consists of an immutable map that is replaced every times
-     * a new table is inserted into it. Updates are ignored
+     * Adapters cache, keyed by table name. Cached adapters are replaced when they are
+     * looked up with column types that do not match their signature, as it happens
+     * after a table is altered
      */
-    static AtomicStampedReference<Map<String,DataAdapters>> m_adapterCache =
-            new AtomicStampedReference<Map<String,DataAdapters>>(
-                    ImmutableMap.<String,DataAdapters>of(), 0
-                    );
+    final static Cache<String,DataAdapters> m_adapterCache =
+            CacheBuilder.newBuilder().recordStats().build();
 
     /**
-     * Does a cache lookup. If it is a miss it uses the given array of column
-     * types to seed the cache for the given table name
+     * Does a cache lookup. If it is a miss, or the cached adapters do not match
+     * the given array of column types, it uses them to seed the cache for the
+     * given table name
      *
      * @param tableName
      * @param columnTypes an array of {@linkplain VoltType} representing the
@@ -55,33 +55,38 @@ public class DataAdapters {
      * @return the adapters for the given table
      */
     public static DataAdapters adaptersFor(String tableName, VoltType [] types) {
+        if (tableName == null) return null;
 
-        DataAdapters adapters = m_adapterCache.getReference().get(tableName);
-        if (adapters == null && types != null && types.length > 0) {
+        DataAdapters adapters = m_adapterCache.getIfPresent(tableName);
+        if (types != null && types.length > 0
+                && (adapters == null || !adapters.getSignature().equals(RecordAdapter.signatureFor(types)))) {
             adapters = new DataAdapters(tableName,types);
-
-            Map<String,DataAdapters> oldmap,newmap;
-            int [] stamp = new int[1];
-            do try {
-                oldmap = m_adapterCache.get(stamp);
-                newmap = addEntry(oldmap, tableName, adapters);
-            } catch (IllegalArgumentException ingoreDuplicates) {
-                break;
-            } while (!m_adapterCache.compareAndSet(oldmap, newmap, stamp[0], stamp[0]+1));
-
+            m_adapterCache.put(tableName, adapters);
         }
         return adapters;
     }
 
-    /*
-     * Creates a new immutable map by copying the source's content and adding
-     * the new entry after
+    /**
+     * Drops the cached adapters for the given table
+     *
+     * @param tableName table name
+     */
+    public static void invalidate(String tableName) {
+        m_adapterCache.invalidate(tableName);
+    }
+
+    /**
+     * @return hit, and miss statistics for the adapters cache
+     */
+    public static CacheStats getCacheStats() {
+        return m_adapterCache.stats();
+    }
+
+    /**
+     * @return how many tables have their adapters cached
      */
-    private static <K,V> ImmutableMap<K,V> addEntry(Map<K,V> src, K tn, V value) {
-        ImmutableMap.Builder<K,V> builder = ImmutableMap.builder();
-        builder.putAll(src);
-        builder.put(tn,value);
-        return builder.build();
+    public static long getCacheSize() {
+        return m_adapterCache.size();
     }
 
     private final String m_tableName;
@@ -84,7 +84,7 @@ public class DataInputAdapter extends RecordAdapter<VoltRecord, DataInput, IOExc
             record = new VoltRecord();
         }
 
-        record.clear();
+        record.clear().ensureCapacity(m_types.length);
 
         for (int i = 0; i < m_types.length; ++i) {
             m_adapters[i].adapt(record, in);
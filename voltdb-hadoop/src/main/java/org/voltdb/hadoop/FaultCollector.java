@@ -21,13 +21,15 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package org.voltdb.hadoop;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +40,14 @@ import org.voltdb.utils.RowWithMetaData;
 /**
  * Collects asynchronous faults from the VoltDB's bulk loader, and may
  * be used to check whether or not faults were issued by a loader.
+ * <p>
+ * Loader callback threads record faults in a bounded ring of preallocated slots,
+ * without locking, nor allocating. A callback claims a slot by advancing the ring's
+ * tail, only when there is room for it, and publishes the failed row last. The task
+ * thread drains published slots on checks, and either streams their rows to a
+ * {@linkplain RejectSink}, or logs them. Faults that find the ring full are written
+ * to the reject sink by the callback itself, under the sink's lock, so that no
+ * rejected row is missing from it. Without a sink, they are counted, and dropped.
  */
 public class FaultCollector implements BulkLoaderErrorHandler {
 
@@ -46,11 +56,26 @@ public class FaultCollector implements BulkLoaderErrorHandler {
     public static int MAXFAULTS = 10;
     public static int CHECKEVERY = 30;
 
-    private final LinkedBlockingQueue<Fault> m_queue;
+    private final static int SLOTS_MAX = 8192;
+    private final static Object NO_ROW = new Object();
+
     private final TextOutputAdapter m_adapter;
+    private final RejectSink m_sink;
+
+    private final AtomicReferenceArray<Object> m_rows;
+    private final ClientResponse [] m_responses;
+    private final String [] m_errors;
+    private final AtomicLong m_tail = new AtomicLong(0L);
+    private volatile long m_head = 0L;
 
-    private volatile int m_faultCount = 0;
-    private volatile int m_checkCount = 0;
+    private final StripedCounter m_faultCount = new StripedCounter();
+    private final StripedCounter m_dropped = new StripedCounter();
+    private int m_checkCount = 0;
+    private final Map<String, Long> m_byStatus = new TreeMap<String, Long>();
+    private volatile IOException m_sinkFailure = null;
+
+    private final StringBuilder m_sb = new StringBuilder(1024);
+    private final VoltRecord m_scratch = new VoltRecord();
 
     private final int m_maxBulkLoaderErrors;
 
@@ -62,22 +87,47 @@ public class FaultCollector implements BulkLoaderErrorHandler {
      * @param maxErrors  The maximal number of errors before CSVBulkLoader stops processing input
      */
     public FaultCollector(TextOutputAdapter adapter, int maxErrors) {
+        this(adapter, maxErrors, null);
+    }
+
+    /**
+     * Constructs a collector that streams the rows that are the source of the faults
+     * to the given sink, and logs them only once the sink is full
+     *
+     * @param adapter to format {@linkplain VoltRecord}
+     * @param maxErrors  The maximal number of errors before CSVBulkLoader stops processing input
+     * @param sink an optional {@linkplain RejectSink}
+     */
+    public FaultCollector(TextOutputAdapter adapter, int maxErrors, RejectSink sink) {
         m_adapter = adapter;
+        m_sink = sink;
         m_maxBulkLoaderErrors = maxErrors > 0 ? maxErrors : MAXFAULTS;
-        m_queue = new LinkedBlockingQueue<Fault>(m_maxBulkLoaderErrors);
+        final int slots = Math.min(m_maxBulkLoaderErrors, SLOTS_MAX);
+        m_rows = new AtomicReferenceArray<Object>(slots);
+        m_responses = new ClientResponse[slots];
+        m_errors = new String[slots];
     }
 
     /**
      * Fault descriptor class. Holds tenuous references to client responses
      * and volt records to mitigate GC pressure
+     *
+     * @deprecated faults are no longer queued as descriptors, but recorded in a ring
+     *   of preallocated slots. It is kept for source compatibility only
      */
+    @Deprecated
     public final static class Fault {
         final WeakReference<VoltRecord> m_recordRef;
         final WeakReference<ClientResponse> m_respRef;
 
         @SuppressWarnings("unchecked")
         public Fault(RowWithMetaData rmd, ClientResponse cr) {
-            m_recordRef = (WeakReference<VoltRecord>)rmd.rawLine;
+            if (rmd.rawLine instanceof WeakReference) {
+                m_recordRef = (WeakReference<VoltRecord>)rmd.rawLine;
+            } else {
+                m_recordRef = new WeakReference<VoltRecord>(
+                        rmd.rawLine instanceof VoltRecord ? (VoltRecord)rmd.rawLine : null);
+            }
             m_respRef = new WeakReference<ClientResponse>(cr);
         }
 
@@ -96,22 +146,91 @@ public class FaultCollector implements BulkLoaderErrorHandler {
     }
 
     /**
-     * Loader callback. If it is flooded with faults it drops them
+     * Loader callback. If it is flooded with faults it writes them to the reject
+     * sink straight away, or drops them if it has none
      */
     @Override
     public boolean handleError(RowWithMetaData rmd, ClientResponse cr, String error) {
-        ++m_faultCount;
-        Fault fault = new Fault(rmd,cr);
-        if (!m_queue.offer(fault)) {
-            fault.clear();
-        };
+        m_faultCount.increment();
+        final int slots = m_rows.length();
+        long tail;
+        do {
+            tail = m_tail.get();
+            if (tail - m_head >= slots) {
+                if (m_sink == null) {
+                    m_dropped.increment();
+                    if (FlightEvents.isRecording()) {
+                        emit(rmd, cr, error, true);
+                    }
+                } else {
+                    if (FlightEvents.isRecording()) {
+                        emit(rmd, cr, error, false);
+                    }
+                    overflow(rmd, cr, error);
+                }
+                return true;
+            }
+        } while (!m_tail.compareAndSet(tail, tail + 1));
+        if (FlightEvents.isRecording()) {
+            emit(rmd, cr, error, false);
+        }
+
+        final int slot = (int)(tail % slots);
+        m_responses[slot] = cr;
+        m_errors[slot] = error;
+        m_rows.set(slot, rmd != null && rmd.rawLine != null ? rmd.rawLine : NO_ROW);
         return true;
     }
 
+    /*
+     * Reports a fault that found the ring full from the callback thread. Sink write
+     * failures are rethrown by the next check
+     */
+    private void overflow(RowWithMetaData rmd, ClientResponse cr, String error) {
+        try {
+            report(rmd != null && rmd.rawLine != null ? rmd.rawLine : NO_ROW,
+                    count(cr != null ? cr.getStatusString() : error),
+                    new VoltRecord(), new StringBuilder(256));
+        } catch (IOException e) {
+            if (m_sinkFailure == null) {
+                m_sinkFailure = e;
+            }
+        }
+    }
+
+    private static void emit(RowWithMetaData rmd, ClientResponse cr, String error, boolean dropped) {
+        final long tag = rmd != null ? rmd.lineNumber : -1L;
+        FlightEvents.emit(FlightEvents.Type.FAULT_RECORDED, cr != null ? cr.getStatusString() : error,
+                RetryQueue.stripeOf(tag), RetryQueue.attemptOf(tag), dropped);
+    }
+
     @Override
     public boolean hasReachedErrorLimit() {
-        final int currentCount = m_faultCount;
-        return currentCount >= m_maxBulkLoaderErrors;
+        return m_faultCount.sum() >= m_maxBulkLoaderErrors;
+    }
+
+    /**
+     * @return how many faults were reported to it
+     */
+    public long getFaultCount() {
+        return m_faultCount.sum();
+    }
+
+    /**
+     * @return how many of the faults reported so far failed with each status. Faults
+     *   that were dropped for lack of a reject sink, and whose status is therefore
+     *   unknown, are counted as DROPPED
+     */
+    public Map<String, Long> getFaultsByStatus() {
+        final Map<String, Long> byStatus;
+        synchronized (m_byStatus) {
+            byStatus = new TreeMap<String, Long>(m_byStatus);
+        }
+        final long dropped = m_dropped.sum();
+        if (dropped > 0) {
+            byStatus.put("DROPPED", dropped);
+        }
+        return byStatus;
     }
 
     public void check(boolean eagerly) throws IOException {
@@ -121,30 +240,114 @@ public class FaultCollector implements BulkLoaderErrorHandler {
         if ((checkNow = checkCount >= CHECKEVERY)) {
             m_checkCount = 0;
         }
-        if (checkNow && !m_queue.isEmpty()) {
-            StringBuilder sb = new StringBuilder(1024);
-
-            List<Fault> faults = new ArrayList<Fault>();
-            m_queue.drainTo(faults);
-
-            for (Fault fault: faults) {
-                VoltRecord rec = fault.getVoltRecord();
-                ClientResponse rsp = fault.getResponse();
-                if (rsp != null && rec != null) {
-                    sb.setLength(0);
-                    sb.append("Failed to load record into VoltDB\n");
-                    sb.append("+cause: \"").append(rsp.getStatusString()).append("\"\n");
-                    sb.append("+--row: [").append(m_adapter.adapt(null, rec).toString());
-                    sb.append("]");
-                    LOG.error(sb.toString());
-                } else {
-                    LOG.error("Failed to load record into VoltDB: [error details were garbage collected]");
-                }
-            }
+        if (checkNow) {
+            drain();
+        }
+        if (m_sinkFailure != null) {
+            throw new IOException("Failed to write rejected rows", m_sinkFailure);
         }
         if (hasReachedErrorLimit()) {
             throw new IOException("VoltDB loader reached the maximum of allowable errors: check logs for specific load errors. max error:" +
-                       this.m_maxBulkLoaderErrors + " fault count:" + this.m_faultCount);
+                       this.m_maxBulkLoaderErrors + " fault count:" + m_faultCount.sum());
+        }
+    }
+
+    /*
+     * Consumes published slots from the head. Slots are cleared before the head
+     * is advanced past them, so that callbacks never claim a slot in use
+     */
+    private void drain() throws IOException {
+        final int slots = m_rows.length();
+        long head = m_head;
+        Object row;
+        while ((row = m_rows.get((int)(head % slots))) != null) {
+            final int slot = (int)(head % slots);
+            final ClientResponse cr = m_responses[slot];
+            final String error = m_errors[slot];
+            m_responses[slot] = null;
+            m_errors[slot] = null;
+            m_rows.set(slot, null);
+            m_head = ++head;
+
+            report(row, count(cr != null ? cr.getStatusString() : error), m_scratch, m_sb);
+        }
+    }
+
+    private String count(String status) {
+        final String key = status != null ? status : "UNKNOWN";
+        synchronized (m_byStatus) {
+            final Long count = m_byStatus.get(key);
+            m_byStatus.put(key, count == null ? 1L : count + 1L);
+        }
+        return status;
+    }
+
+    /*
+     * Writes the row to the sink, or logs it, with the given scratch record, and buffer
+     * of the calling thread
+     */
+    private void report(Object row, String status, VoltRecord scratch, StringBuilder sb) throws IOException {
+        final VoltRecord rec = recordOf(row, scratch);
+        final boolean formattable = rec != null && m_adapter != null && rec.size() == m_adapter.m_types.length;
+        if (formattable && m_sink != null) {
+            synchronized (m_sink) {
+                if (m_sink.write(rec, status)) return;
+            }
+        }
+        if (formattable) {
+            sb.setLength(0);
+            sb.append("Failed to load record into VoltDB\n");
+            sb.append("+cause: \"").append(status).append("\"\n");
+            sb.append("+--row: [");
+            m_adapter.append(sb, rec).append("]");
+            LOG.error(sb);
+        } else {
+            LOG.error("Failed to load record into VoltDB: \"" + status + "\" [row details are unavailable]");
+        }
+    }
+
+    /*
+     * Row handles are the field values fed to the loader, or the record itself
+     * for rows rejected before they are fed. Staged rows carry one more field
+     * than the table
+     */
+    private VoltRecord recordOf(Object row, VoltRecord scratch) {
+        if (row instanceof VoltRecord) {
+            return (VoltRecord)row;
+        }
+        if (!(row instanceof Object[])) {
+            return null;
+        }
+        final Object [] fields = (Object[])row;
+        final int width = m_adapter != null ? Math.min(fields.length, m_adapter.m_types.length) : fields.length;
+        scratch.clear();
+        for (int i = 0; i < width; ++i) {
+            scratch.add(fields[i]);
+        }
+        return scratch;
+    }
+
+    /**
+     * Reports the faults left, and closes the reject sink, if any. It is called
+     * after the loaders are closed, so that no fault goes unreported
+     */
+    public void close() {
+        try {
+            drain();
+        } catch (IOException e) {
+            LOG.error("Failed to write rejected rows", e);
+        } finally {
+            if (m_sink != null) try {
+                synchronized (m_sink) {
+                    m_sink.close();
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to close rejected rows file " + m_sink.getPath(), e);
+            }
+        }
+        final long dropped = m_dropped.sum();
+        if (dropped > 0) {
+            LOG.warn(dropped + " VoltDB load faults were dropped, as they came faster than they were reported");
         }
     }
 }
@@ -0,0 +1,258 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Emits Java Flight Recorder events from the load path, so that VoltDB stalls may
+ * be correlated with GC pauses, and allocation hot spots in a task's recording.
+ * <p>
+ * This library targets Java 6, so events are not declared as {@code jdk.jfr.Event}
+ * subclasses. Instead their types are defined at run time through the
+ * {@code jdk.jfr.EventFactory} API, available on Java 8u262, and later, and they
+ * are defined only once a recording starts. A flight recorder listener keeps track
+ * of running recordings, and emitters check {@link #isRecording()} before they
+ * box their event's values:
+ * <pre>
+ * if (FlightEvents.isRecording()) {
+ *     FlightEvents.emit(FlightEvents.Type.FAULT_RECORDED, status, stripe, attempt, dropped);
+ * }
+ * </pre>
+ * When no recording runs, or flight recording is unavailable, emitters cost a
+ * volatile read.
+ */
+public final class FlightEvents {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final static String JFR = "jdk.jfr.";
+
+    public enum Type {
+        BATCH_SUBMITTED("BatchSubmitted", "Batch Submitted",
+                "target", String.class, "rows", int.class),
+        BATCH_ACKNOWLEDGED("BatchAcknowledged", "Batch Acknowledged",
+                "latencyMicros", long.class, "clusterRoundtripMillis", int.class),
+        BACKPRESSURE("Backpressure", "Backpressure",
+                "backpressuredLoaders", int.class),
+        CONNECTION_LOST("ConnectionLost", "Connection Lost",
+                "host", String.class, "port", int.class, "connectionsLeft", int.class, "cause", String.class),
+        CONNECTION_CREATED("ConnectionCreated", "Connection Created",
+                "host", String.class, "port", int.class, "status", String.class),
+        CATALOG_LOOKUP("CatalogLookup", "Catalog Lookup",
+                "table", String.class, "columns", int.class, "configured", boolean.class),
+        FAULT_RECORDED("FaultRecorded", "Fault Recorded",
+                "status", String.class, "stripe", int.class, "attempt", int.class, "dropped", boolean.class);
+
+        final String m_name;
+        final String m_label;
+        final Object [] m_fields;
+
+        private Type(String name, String label, Object...fields) {
+            m_name = "org.voltdb.hadoop." + name;
+            m_label = label;
+            m_fields = fields;
+        }
+    }
+
+    private static volatile boolean m_recording = false;
+
+    /* event factories by type ordinal, defined on the first recording */
+    private static volatile Object [] m_factories = null;
+
+    private static Method m_newEvent;
+    private static Method m_begin;
+    private static Method m_set;
+    private static Method m_commit;
+
+    static {
+        try {
+            final Class<?> recorder = Class.forName(JFR + "FlightRecorder");
+            final Class<?> listener = Class.forName(JFR + "FlightRecorderListener");
+            final Class<?> event = Class.forName(JFR + "Event");
+            m_newEvent = Class.forName(JFR + "EventFactory").getMethod("newEvent");
+            m_begin = event.getMethod("begin");
+            m_set = event.getMethod("set", int.class, Object.class);
+            m_commit = event.getMethod("commit");
+            recorder.getMethod("addListener", listener).invoke(null, Proxy.newProxyInstance(
+                    FlightEvents.class.getClassLoader(), new Class<?>[] {listener}, new RecordingTracker()));
+            if ((Boolean)recorder.getMethod("isInitialized").invoke(null)) {
+                refresh();
+            }
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Java Flight Recorder is unavailable, VoltDB flight events are disabled");
+        } catch (Throwable t) {
+            LOG.warn("Failed to set up VoltDB flight events, they are disabled", t);
+            m_recording = false;
+        }
+    }
+
+    private FlightEvents() {
+    }
+
+    /**
+     * @return true if a flight recording is running, and events should be emitted
+     */
+    public static boolean isRecording() {
+        return m_recording;
+    }
+
+    /**
+     * Begins a duration event, like {@link Type#BACKPRESSURE}, to be
+     * committed by {@link #commit(Object, Object...)} when it ends
+     *
+     * @param type event {@linkplain Type}
+     * @return an event handle, or null if no recording is running
+     */
+    public static Object begin(Type type) {
+        if (!m_recording) return null;
+        try {
+            final Object event = m_newEvent.invoke(m_factories[type.ordinal()]);
+            m_begin.invoke(event);
+            return event;
+        } catch (Exception e) {
+            disable(e);
+            return null;
+        }
+    }
+
+    /**
+     * Sets the field values of an event begun by {@link #begin(Type)}, and commits it
+     *
+     * @param event an event handle, that may be null
+     * @param values field values, in the order of the event's {@linkplain Type} fields
+     */
+    public static void commit(Object event, Object...values) {
+        if (event == null) return;
+        try {
+            for (int i = 0; i < values.length; ++i) {
+                m_set.invoke(event, i, values[i]);
+            }
+            m_commit.invoke(event);
+        } catch (Exception e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * Emits an instant event
+     *
+     * @param type event {@linkplain Type}
+     * @param values field values, in the order of the event's {@linkplain Type} fields
+     */
+    public static void emit(Type type, Object...values) {
+        commit(begin(type), values);
+    }
+
+    private static void disable(Exception e) {
+        if (m_recording) {
+            LOG.warn("Failed to emit VoltDB flight event, flight events are disabled", e);
+        }
+        m_recording = false;
+        m_factories = new Object[0];
+    }
+
+    /*
+     * Checks whether any recording runs, and defines the event types once one does
+     */
+    private static synchronized void refresh() throws Exception {
+        if (m_factories != null && m_factories.length == 0) return;
+
+        final Class<?> recorder = Class.forName(JFR + "FlightRecorder");
+        final Method getState = Class.forName(JFR + "Recording").getMethod("getState");
+        final Object platform = recorder.getMethod("getFlightRecorder").invoke(null);
+        boolean running = false;
+        for (Object recording: (List<?>)recorder.getMethod("getRecordings").invoke(platform)) {
+            running |= "RUNNING".equals(String.valueOf(getState.invoke(recording)));
+        }
+        if (running && m_factories == null) {
+            m_factories = defineTypes();
+        }
+        m_recording = running;
+    }
+
+    private static Object [] defineTypes() throws Exception {
+        final Class<?> element = Class.forName(JFR + "AnnotationElement");
+        final Class<?> descriptor = Class.forName(JFR + "ValueDescriptor");
+        final Constructor<?> newElement = element.getConstructor(Class.class, Object.class);
+        final Constructor<?> newDescriptor = descriptor.getConstructor(Class.class, String.class);
+        final Method create = Class.forName(JFR + "EventFactory").getMethod("create", List.class, List.class);
+
+        final Type [] types = Type.values();
+        final Object [] factories = new Object[types.length];
+        for (Type type: types) {
+            final List<Object> annotations = Arrays.asList(
+                    newElement.newInstance(annotation("Name"), type.m_name),
+                    newElement.newInstance(annotation("Label"), type.m_label),
+                    newElement.newInstance(annotation("Category"), new String[] {"VoltDB", "Hadoop"}));
+            final List<Object> fields = new ArrayList<Object>(type.m_fields.length >> 1);
+            for (int i = 0; i < type.m_fields.length; i += 2) {
+                fields.add(newDescriptor.newInstance(type.m_fields[i + 1], type.m_fields[i]));
+            }
+            factories[type.ordinal()] = create.invoke(null,
+                    Collections.unmodifiableList(annotations), Collections.unmodifiableList(fields));
+        }
+        return factories;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+        return (Class<? extends Annotation>)Class.forName(JFR + name);
+    }
+
+    /*
+     * Flight recorder listener, that refreshes the recording state when recordings
+     * start, or stop. The recorder's initialization callback is ignored, as no
+     * recording runs yet when it is called
+     */
+    private final static class RecordingTracker implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) return proxy == args[0];
+                if ("hashCode".equals(method.getName())) return System.identityHashCode(proxy);
+                return "VoltDB flight events recording tracker";
+            }
+            if (!"recordingStateChanged".equals(method.getName())) return null;
+            try {
+                refresh();
+            } catch (Exception e) {
+                disable(e);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * Keeps a task alive while its record writer makes progress. Every few seconds it
+ * checks whether the writer fed, or its loaders completed, any rows since the last
+ * check, and only then reports progress to the task, along with a status line that
+ * tells how many of the submitted rows were acknowledged, and how many batches are in
+ * flight. Loaders that do not track their batches, like fixed size bulk loads, report
+ * their outstanding rows instead.
+ * <p>
+ * A writer blocked on backpressure, or draining its last batches on close, keeps
+ * making progress as VoltDB acknowledges its rows, so it is not timed out. A writer
+ * whose loaders stalled stops sending heartbeats, and its task times out as usual.
+ * Heartbeats of all the writers in the JVM share one daemon thread.
+ */
+public class Heartbeat {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    /**
+     * Row counts of a record writer's loaders
+     */
+    public interface Source {
+        /** @return how many rows were fed to the loaders */
+        long getSubmitted();
+        /** @return how many rows VoltDB acknowledged */
+        long getAcknowledged();
+        /** @return how many rows failed to load */
+        long getFailed();
+        /** @return how many batches were sent to VoltDB, and not yet acknowledged, or -1 if the loaders do not track them */
+        long getInFlightBatches();
+    }
+
+    private final String m_name;
+    private final Source m_source;
+    private volatile Progressable m_progress;
+    private final ScheduledFuture<?> m_future;
+    private long m_lastMark = -1L;
+
+    /**
+     * @param name what is loaded, as shown in the task status
+     * @param source the writer's {@linkplain Source}
+     * @param progress the task's progress reporter. It may be null, and set later
+     * @param intervalSeconds heartbeat interval in seconds. Zero, or less, disables heartbeats
+     */
+    public Heartbeat(String name, Source source, Progressable progress, int intervalSeconds) {
+        m_name = name;
+        m_source = source;
+        m_progress = progress;
+        if (intervalSeconds > 0) {
+            m_future = LoaderThreads.scheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        beat(false);
+                    } catch (Throwable t) {
+                        LOG.warn("Failed to report VoltDB writer progress", t);
+                    }
+                }
+            }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            m_future = null;
+        }
+    }
+
+    /**
+     * Reports progress to the given reporter from now on, as the one handed to
+     * record writers on close may differ from the one they were opened with
+     *
+     * @param progress a progress reporter. It is ignored if null
+     */
+    public void reportTo(Progressable progress) {
+        if (progress != null) {
+            m_progress = progress;
+        }
+    }
+
+    /**
+     * Reports progress if any rows were fed, or completed since the last heartbeat
+     *
+     * @param always whether to report even if no rows were
+     * @return whether it reported progress
+     */
+    synchronized boolean beat(boolean always) {
+        final Progressable progress = m_progress;
+        final long submitted = m_source.getSubmitted();
+        final long acknowledged = m_source.getAcknowledged();
+        final long failed = m_source.getFailed();
+        final long mark = submitted + acknowledged + failed;
+        if (progress == null || (mark == m_lastMark && !always)) {
+            return false;
+        }
+        m_lastMark = mark;
+        progress.progress();
+        setStatus(progress, statusOf(submitted, acknowledged, failed, m_source.getInFlightBatches()));
+        return true;
+    }
+
+    String statusOf(long submitted, long acknowledged, long failed, long batches) {
+        final String inFlight = batches < 0L
+                ? Math.max(0L, submitted - acknowledged - failed) + " outstanding, "
+                : batches + (batches == 1L ? " batch" : " batches") + " in flight, ";
+        return "VoltDB " + m_name + ": " + acknowledged + " of " + submitted + " submitted rows acknowledged, "
+                + inFlight + failed + " failed";
+    }
+
+    private static void setStatus(Progressable progress, String status) {
+        if (progress instanceof Reporter) {
+            ((Reporter)progress).setStatus(status);
+        } else if (progress instanceof TaskAttemptContext) {
+            ((TaskAttemptContext)progress).setStatus(status);
+        }
+    }
+
+    /**
+     * Stops the heartbeats, and reports the final row counts
+     */
+    public void stop() {
+        if (m_future != null) {
+            m_future.cancel(false);
+        }
+        beat(true);
+    }
+}
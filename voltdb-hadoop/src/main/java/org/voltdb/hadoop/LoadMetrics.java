@@ -0,0 +1,213 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram_voltpatches.AtomicHistogram;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStatusListenerExt;
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback;
+
+/**
+ * Batch level metrics of a record writer's loaders: how many batches VoltDB
+ * acknowledged, the distribution of their round trip latencies, and how long
+ * the loaders' clients signaled backpressure.
+ * <p>
+ * Each loader gets its own {@linkplain Lane}, that receives the loader's success
+ * callbacks, and its client's status events, and relays them to the adaptive
+ * batch sizer, if any. Latencies are recorded in microseconds, with two
+ * significant digits, in a lock free HdrHistogram.
+ */
+public class LoadMetrics {
+
+    /* latencies are capped at this many microseconds */
+    final static long LATENCY_MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+    final static int LATENCY_DIGITS = 2;
+
+    private final BatchSizer m_sizer;
+    private final StageProfiler m_profiler;
+    private final AtomicHistogram m_latencies = new AtomicHistogram(LATENCY_MAX_MICROS, LATENCY_DIGITS);
+    private final AtomicLong m_batches = new AtomicLong(0L);
+    private final AtomicLong m_backpressureNanos = new AtomicLong(0L);
+    private final AtomicInteger m_backpressured = new AtomicInteger(0);
+
+    /**
+     * @param sizer an optional adaptive batch sizer, that also receives the
+     *   loaders' success callbacks, and status events
+     */
+    public LoadMetrics(BatchSizer sizer) {
+        this(sizer, StageProfiler.DISABLED);
+    }
+
+    /**
+     * @param sizer an optional adaptive batch sizer, that also receives the
+     *   loaders' success callbacks, and status events
+     * @param profiler the {@linkplain StageProfiler} that records batch round trips
+     */
+    public LoadMetrics(BatchSizer sizer, StageProfiler profiler) {
+        m_sizer = sizer;
+        m_profiler = profiler;
+    }
+
+    /**
+     * @return the adaptive batch sizer, or null if batches have a fixed size
+     */
+    public BatchSizer getSizer() {
+        return m_sizer;
+    }
+
+    /**
+     * @return the stage profiler of its loaders
+     */
+    public StageProfiler getProfiler() {
+        return m_profiler;
+    }
+
+    /**
+     * @return a success callback, and client status listener for one loader
+     */
+    Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * A loader's success callback, and client status listener. Bulk loaders call back
+     * once per row, so only the first row of each batch response is sampled
+     */
+    final class Lane extends ClientStatusListenerExt implements BulkLoaderSuccessCallback {
+        private ClientResponse m_lastResponse = null;
+        private long m_backpressureSince = 0L;
+        private boolean m_backpressure = false;
+        private Object m_backpressureEvent = null;
+
+        @Override
+        public void success(Object rowHandle, ClientResponse response) {
+            if (m_sizer != null) {
+                m_sizer.success(rowHandle, response);
+            }
+            synchronized (this) {
+                if (response == m_lastResponse) return;
+                m_lastResponse = response;
+            }
+            sample(response.getClientRoundtripNanos());
+            if (FlightEvents.isRecording()) {
+                FlightEvents.emit(FlightEvents.Type.BATCH_ACKNOWLEDGED,
+                        TimeUnit.NANOSECONDS.toMicros(response.getClientRoundtripNanos()), response.getClusterRoundtrip());
+            }
+        }
+
+        @Override
+        public void backpressure(boolean status) {
+            if (m_sizer != null) {
+                m_sizer.backpressure(status);
+            }
+            synchronized (this) {
+                if (status == m_backpressure) return;
+                m_backpressure = status;
+                if (status) {
+                    m_backpressureSince = System.nanoTime();
+                    m_backpressureEvent = FlightEvents.begin(FlightEvents.Type.BACKPRESSURE);
+                    m_backpressured.incrementAndGet();
+                } else {
+                    m_backpressureNanos.addAndGet(System.nanoTime() - m_backpressureSince);
+                    FlightEvents.commit(m_backpressureEvent, m_backpressured.getAndDecrement());
+                    m_backpressureEvent = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records an acknowledged batch
+     *
+     * @param latencyNanos batch round trip latency in nanoseconds
+     */
+    void sample(long latencyNanos) {
+        m_batches.incrementAndGet();
+        m_latencies.recordValue(Math.max(0L, Math.min(LATENCY_MAX_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos))));
+        m_profiler.record(StageProfiler.Stage.NETWORK, latencyNanos);
+    }
+
+    /**
+     * Adds the given metrics to its own
+     *
+     * @param other {@linkplain LoadMetrics}
+     * @return itself for chained setter invocations
+     */
+    public LoadMetrics add(LoadMetrics other) {
+        m_batches.addAndGet(other.m_batches.get());
+        m_backpressureNanos.addAndGet(other.m_backpressureNanos.get());
+        m_latencies.add(other.m_latencies);
+        return this;
+    }
+
+    /**
+     * @return how many batches VoltDB acknowledged
+     */
+    public long getBatches() {
+        return m_batches.get();
+    }
+
+    /**
+     * @return milliseconds during which the loaders' clients signaled backpressure,
+     *   summed across clients
+     */
+    public long getBackpressureMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(m_backpressureNanos.get());
+    }
+
+    /**
+     * @return whether any of the loaders' clients currently signals backpressure
+     */
+    public boolean isBackpressure() {
+        return m_backpressured.get() > 0;
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100
+     * @return batch round trip latency, in microseconds, at the given percentile,
+     *   or zero if no batch was acknowledged
+     */
+    public long getLatencyMicros(double percentile) {
+        return m_latencies.getTotalCount() == 0L ? 0L : m_latencies.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the longest batch round trip latency in microseconds
+     */
+    public long getMaxLatencyMicros() {
+        return m_latencies.getTotalCount() == 0L ? 0L : m_latencies.getMaxValue();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d acknowledged batches, latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, backpressure %d ms",
+                getBatches(), getLatencyMicros(50D) / 1e3, getLatencyMicros(99D) / 1e3, getLatencyMicros(99.9D) / 1e3,
+                getMaxLatencyMicros() / 1e3, getBackpressureMillis());
+    }
+}
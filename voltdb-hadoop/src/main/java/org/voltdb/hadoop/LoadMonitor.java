@@ -0,0 +1,385 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registers the JMX MXBeans of long lived writer JVMs, like the ones of Hive, and Pig
+ * drivers, in the platform MBean server, under the org.voltdb.hadoop domain:
+ * <ul>
+ * <li>one {@linkplain VoltTableMXBean} per loaded table, and cluster, that aggregates
+ * the table's open, and closed {@linkplain RecordLoader}s</li>
+ * <li>one {@linkplain VoltClientMXBean} per pooled client</li>
+ * <li>a {@linkplain VoltCachesMXBean} for the column types, and adapters caches</li>
+ * </ul>
+ * Registration failures are logged, and otherwise ignored.
+ */
+public class LoadMonitor {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    public final static String DOMAIN = "org.voltdb.hadoop";
+
+    private final static Map<String, Table> m_tables = new HashMap<String, Table>();
+    private static boolean m_cachesRegistered = false;
+
+    private LoadMonitor() {
+    }
+
+    /**
+     * Adds the given loader to its table's MXBean, and registers the bean
+     * on the table's first loader
+     *
+     * @param clusterKey the loaded cluster, as keyed by {@link VoltConfiguration#clusterKeyFor(String[])}
+     * @param tableName the loaded table
+     * @param loader a {@linkplain RecordLoader}
+     */
+    static void opened(String clusterKey, String tableName, RecordLoader loader) {
+        if (tableName == null) return;
+        final String name = tableName.toUpperCase(Locale.ROOT);
+        final String key = keyFor(clusterKey, name);
+        Table table;
+        synchronized (m_tables) {
+            table = m_tables.get(key);
+            if (table == null) {
+                table = new Table(clusterKey, name);
+                m_tables.put(key, table);
+                register(nameFor("Table", clusterKey, name), table);
+            }
+            if (!m_cachesRegistered) {
+                m_cachesRegistered = register(nameFor("Caches", "caches"), new Caches()) != null;
+            }
+        }
+        table.m_open.add(loader);
+    }
+
+    /**
+     * Folds the given loader's counts into its table's totals
+     *
+     * @param clusterKey the loaded cluster
+     * @param tableName the loaded table
+     * @param loader a closed {@linkplain RecordLoader}
+     */
+    static void closed(String clusterKey, String tableName, RecordLoader loader) {
+        if (tableName == null) return;
+        Table table;
+        synchronized (m_tables) {
+            table = m_tables.get(keyFor(clusterKey, tableName.toUpperCase(Locale.ROOT)));
+        }
+        if (table != null) {
+            table.close(loader);
+        }
+    }
+
+    /**
+     * @param hosts the cluster host names
+     * @param tableName a table name
+     * @return the table's MXBean, or null if none of its loaders were opened
+     */
+    public static VoltTableMXBean tableBean(String [] hosts, String tableName) {
+        final String key = keyFor(VoltConfiguration.clusterKeyFor(hosts), tableName.toUpperCase(Locale.ROOT));
+        synchronized (m_tables) {
+            return m_tables.get(key);
+        }
+    }
+
+    /*
+     * Table key: the cluster key, followed by the upper case table name
+     */
+    private static String keyFor(String clusterKey, String name) {
+        return clusterKey + '|' + name;
+    }
+
+    static ObjectName nameFor(String type, String name) {
+        return nameFor(type, null, name);
+    }
+
+    /*
+     * Beans of the same type, and name, that belong to different clusters are told
+     * apart by an additional cluster property
+     */
+    static ObjectName nameFor(String type, String clusterKey, String name) {
+        try {
+            Hashtable<String, String> properties = new Hashtable<String, String>();
+            properties.put("type", type);
+            if (clusterKey != null) {
+                properties.put("cluster", ObjectName.quote(clusterKey));
+            }
+            properties.put("name", ObjectName.quote(name));
+            return new ObjectName(DOMAIN, properties);
+        } catch (Exception e) {
+            LOG.warn("Invalid MBean name for " + type + " " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Registers the given bean under the given name, replacing the bean
+     * registered under the same name, if any
+     *
+     * @param name an MBean name
+     * @param bean an MXBean
+     * @return the name, or null if it failed to register the bean
+     */
+    static ObjectName register(ObjectName name, Object bean) {
+        if (name == null) return null;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            return name;
+        } catch (Exception e) {
+            LOG.warn("Failed to register MBean " + name, e);
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName name) {
+        if (name == null) return;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to unregister MBean " + name, e);
+        }
+    }
+
+    /*
+     * A table's MXBean. Closed loaders' counts are kept in its totals. Its batch
+     * statistics are those of a snapshot of all its loaders' metrics, merged at
+     * most once a second
+     */
+    final static class Table implements VoltTableMXBean {
+        private final String m_cluster;
+        private final String m_name;
+        final List<RecordLoader> m_open = new CopyOnWriteArrayList<RecordLoader>();
+
+        private long m_submitted = 0L;
+        private long m_acknowledged = 0L;
+        private long m_failed = 0L;
+        private long m_rejected = 0L;
+        private final LoadMetrics m_metrics = new LoadMetrics(null);
+
+        private long m_rateNanos = System.nanoTime();
+        private long m_rateAcknowledged = 0L;
+        private double m_rate = 0D;
+
+        private long m_sampledNanos = 0L;
+        private LoadMetrics m_sampled = null;
+
+        Table(String cluster, String name) {
+            m_cluster = cluster;
+            m_name = name;
+        }
+
+        synchronized void close(RecordLoader loader) {
+            if (!m_open.remove(loader)) return;
+            m_submitted += loader.getSubmitted();
+            m_acknowledged += loader.getAcknowledged();
+            m_failed += loader.getFailed();
+            m_rejected += loader.getRejected();
+            m_metrics.add(loader.getMetrics());
+        }
+
+        @Override
+        public String getTableName() {
+            return m_name;
+        }
+
+        @Override
+        public String getCluster() {
+            return m_cluster;
+        }
+
+        @Override
+        public int getOpenWriters() {
+            return m_open.size();
+        }
+
+        @Override
+        public synchronized long getRowsSubmitted() {
+            long submitted = m_submitted;
+            for (RecordLoader loader: m_open) {
+                submitted += loader.getSubmitted();
+            }
+            return submitted;
+        }
+
+        @Override
+        public synchronized long getRowsAcknowledged() {
+            long acknowledged = m_acknowledged;
+            for (RecordLoader loader: m_open) {
+                acknowledged += loader.getAcknowledged();
+            }
+            return acknowledged;
+        }
+
+        @Override
+        public synchronized long getRowsFailed() {
+            long failed = m_failed;
+            for (RecordLoader loader: m_open) {
+                failed += loader.getFailed();
+            }
+            return failed;
+        }
+
+        @Override
+        public synchronized long getRowsRejected() {
+            long rejected = m_rejected;
+            for (RecordLoader loader: m_open) {
+                rejected += loader.getRejected();
+            }
+            return rejected;
+        }
+
+        @Override
+        public long getRowsOutstanding() {
+            long outstanding = 0L;
+            for (RecordLoader loader: m_open) {
+                outstanding += Math.max(0L, loader.getSubmitted() - loader.getAcknowledged() - loader.getFailed());
+            }
+            return outstanding;
+        }
+
+        @Override
+        public synchronized double getRowsPerSecond() {
+            final long now = System.nanoTime();
+            final long elapsed = now - m_rateNanos;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                final long acknowledged = getRowsAcknowledged();
+                m_rate = (acknowledged - m_rateAcknowledged) * 1e9 / elapsed;
+                m_rateAcknowledged = acknowledged;
+                m_rateNanos = now;
+            }
+            return m_rate;
+        }
+
+        @Override
+        public boolean isBackpressure() {
+            for (RecordLoader loader: m_open) {
+                if (loader.getMetrics().isBackpressure()) return true;
+            }
+            return false;
+        }
+
+        /*
+         * Merges the closed loaders' metrics with the open ones', unless it did
+         * so less than a second ago
+         */
+        private synchronized LoadMetrics metrics() {
+            final long now = System.nanoTime();
+            if (m_sampled != null && now - m_sampledNanos < TimeUnit.SECONDS.toNanos(1)) {
+                return m_sampled;
+            }
+            LoadMetrics metrics = new LoadMetrics(null).add(m_metrics);
+            for (RecordLoader loader: m_open) {
+                metrics.add(loader.getMetrics());
+            }
+            m_sampledNanos = now;
+            m_sampled = metrics;
+            return metrics;
+        }
+
+        @Override
+        public long getBackpressureMillis() {
+            return metrics().getBackpressureMillis();
+        }
+
+        @Override
+        public long getBatches() {
+            return metrics().getBatches();
+        }
+
+        @Override
+        public long getBatchLatencyP50Micros() {
+            return metrics().getLatencyMicros(50D);
+        }
+
+        @Override
+        public long getBatchLatencyP99Micros() {
+            return metrics().getLatencyMicros(99D);
+        }
+
+        @Override
+        public long getBatchLatencyMaxMicros() {
+            return metrics().getMaxLatencyMicros();
+        }
+    }
+
+    final static class Caches implements VoltCachesMXBean {
+        @Override
+        public long getTypeCacheSize() {
+            return VoltConfiguration.getTypeCacheSize();
+        }
+
+        @Override
+        public long getTypeCacheHits() {
+            return VoltConfiguration.getTypeCacheStats().hitCount();
+        }
+
+        @Override
+        public long getTypeCacheMisses() {
+            return VoltConfiguration.getTypeCacheStats().missCount();
+        }
+
+        @Override
+        public long getAdapterCacheSize() {
+            return DataAdapters.getCacheSize();
+        }
+
+        @Override
+        public long getAdapterCacheHits() {
+            return DataAdapters.getCacheStats().hitCount();
+        }
+
+        @Override
+        public long getAdapterCacheMisses() {
+            return DataAdapters.getCacheStats().missCount();
+        }
+
+        @Override
+        public void invalidateTypeCache() {
+            VoltConfiguration.invalidateTableTypes();
+        }
+    }
+}
@@ -0,0 +1,587 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.voltdb.client.ClientStats;
+
+/**
+ * A job level load report, aggregated from the statistics files that each task's
+ * writers leave in the directory set by {@link VoltConfiguration#REPORT_DIR_PROP}.
+ * <p>
+ * Task statistics cover throughput, batch latency percentiles, faults by status, and
+ * the client time spent on each VoltDB host. The job report adds them up, and points
+ * out skew: the slowest tasks, and the hosts that took the largest share of the client
+ * time. VoltDB responses do not tell which partition served them, so hosts, whose
+ * load follows that of the partitions they lead, stand in for partitions.
+ * <p>
+ * Writers of failed, and refused speculative attempts leave statistics too, so the
+ * VoltDB output committers mark each committed attempt, and the report only takes
+ * the committed attempt of each task. Jobs whose committer does not mark attempts,
+ * which run without speculative execution, fall back on each task's latest attempt.
+ * <p>
+ * {@link org.voltdb.hadoop.mapred.VoltLoader} writes the report once its job completes.
+ * Other drivers may run this class with the report directory as its argument.
+ */
+public class LoadReport {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    /** Suffix of the task statistics files */
+    public final static String STATS_SUFFIX = ".stats.json";
+    /** Suffix of the empty files that mark committed task attempts */
+    public final static String COMMITTED_SUFFIX = ".committed";
+    /** Name of the report files, suffixed by .json, and .txt */
+    public final static String REPORT_NAME = "load-report";
+
+    private final static int TOP = 5;
+    private final static Pattern ATTEMPT = Pattern.compile("^(attempt_.+)_(\\d+)$");
+
+    private final List<JSONObject> m_tasks;
+
+    /**
+     * @param tasks task statistics, as written by {@link #writeTaskStats(Configuration, List)}
+     */
+    public LoadReport(List<JSONObject> tasks) {
+        m_tasks = tasks;
+    }
+
+    /**
+     * Writes the statistics of the given loaders to the task's statistics file, if a
+     * report directory is configured. Failures are logged, as statistics are not worth
+     * failing the task for
+     *
+     * @param conf job configuration
+     * @param loaders the closed loaders of the task's writer
+     */
+    public static void writeTaskStats(Configuration conf, List<RecordLoader> loaders) {
+        if (!isReported(conf) || loaders.isEmpty()) return;
+        final String dir = conf.get(VoltConfiguration.REPORT_DIR_PROP);
+
+        String attemptId = conf.get("mapreduce.task.attempt.id", conf.get("mapred.task.id"));
+        if (attemptId == null) {
+            attemptId = "task-" + UUID.randomUUID();
+        }
+        final Path path = new Path(dir.trim(), attemptId + STATS_SUFFIX);
+        try {
+            write(conf, path, taskStatsOf(attemptId, loaders).toString(2));
+        } catch (JSONException e) {
+            LOG.warn("Failed to format VoltDB load statistics", e);
+        } catch (IOException e) {
+            LOG.warn("Failed to write VoltDB load statistics to " + path, e);
+        }
+    }
+
+    /**
+     * @param conf job configuration
+     * @return whether task statistics are written to a report directory
+     */
+    public static boolean isReported(Configuration conf) {
+        final String dir = conf.get(VoltConfiguration.REPORT_DIR_PROP);
+        return dir != null && !dir.trim().isEmpty();
+    }
+
+    /**
+     * Marks the given task attempt as committed, so that the report takes its statistics
+     * over those of the task's other attempts. Output committers invoke it once they
+     * committed the attempt. Failures are logged, as statistics are not worth failing
+     * the task for
+     *
+     * @param conf job configuration
+     * @param attemptId the committed task attempt id
+     */
+    public static void commitTaskStats(Configuration conf, String attemptId) {
+        if (!isReported(conf)) return;
+        final Path path = new Path(conf.get(VoltConfiguration.REPORT_DIR_PROP).trim(), attemptId + COMMITTED_SUFFIX);
+        try {
+            write(conf, path, "");
+        } catch (IOException e) {
+            LOG.warn("Failed to mark VoltDB load statistics of " + attemptId + " as committed", e);
+        }
+    }
+
+    static JSONObject taskStatsOf(String attemptId, List<RecordLoader> loaders) throws JSONException {
+        final JSONArray tables = new JSONArray();
+        final Map<String, Long> faults = new TreeMap<String, Long>();
+        final Set<FaultCollector> collectors = Collections.newSetFromMap(new IdentityHashMap<FaultCollector, Boolean>());
+        final Map<String, Map<Long, ClientStats>> clients = new LinkedHashMap<String, Map<Long, ClientStats>>();
+        long opened = Long.MAX_VALUE, closed = 0L;
+
+        for (RecordLoader loader: loaders) {
+            if (loader.getTableName() != null) {
+                tables.put(loader.getTableName());
+            }
+            opened = Math.min(opened, loader.getOpenedMillis());
+            closed = Math.max(closed, loader.getClosedMillis() > 0L ? loader.getClosedMillis() : System.currentTimeMillis());
+            final FaultCollector collector = loader.getFaultCollector();
+            if (collector != null && collectors.add(collector)) {
+                for (Map.Entry<String, Long> status: collector.getFaultsByStatus().entrySet()) {
+                    add(faults, status.getKey(), status.getValue());
+                }
+            }
+            for (Map.Entry<String, Map<Long, ClientStats>> client: loader.getConnectionStats().entrySet()) {
+                if (!clients.containsKey(client.getKey())) {
+                    clients.put(client.getKey(), client.getValue());
+                }
+            }
+        }
+        final Map<String, long[]> hosts = new TreeMap<String, long[]>();
+        for (Map<Long, ClientStats> connections: clients.values()) {
+            for (ClientStats stats: connections.values()) {
+                final long [] host = hostOf(hosts, stats.getHostname() + ":" + stats.getPort());
+                host[0] += stats.getInvocationsCompleted();
+                host[1] += stats.getInvocationAborts();
+                host[2] += stats.getInvocationErrors();
+                host[3] += Math.round(stats.getInvocationsCompleted() * stats.getAverageLatency());
+            }
+        }
+        final long elapsed = Math.max(1L, closed - opened);
+        final Map<VoltCounter, Long> counters = RecordLoader.countersOf(loaders);
+
+        final JSONObject stats = new JSONObject();
+        stats.put("task", attemptId);
+        stats.put("tables", tables);
+        stats.put("startMillis", opened);
+        stats.put("endMillis", closed);
+        stats.put("elapsedMillis", elapsed);
+        stats.put("rowsPerSecond", counters.get(VoltCounter.ROWS_ACKNOWLEDGED) * 1000D / elapsed);
+        stats.put("counters", toJSON(counters));
+        stats.put("faults", toJSON(faults));
+        stats.put("hosts", hostsToJSON(hosts));
+        return stats;
+    }
+
+    private static long [] hostOf(Map<String, long[]> hosts, String host) {
+        long [] stats = hosts.get(host);
+        if (stats == null) {
+            stats = new long[4];
+            hosts.put(host, stats);
+        }
+        return stats;
+    }
+
+    private static <K> void add(Map<K, Long> totals, K key, long value) {
+        totals.put(key, total(totals, key) + value);
+    }
+
+    /*
+     * Totals of counters that no task reported, as when there are no tasks, are zero
+     */
+    private static <K> long total(Map<K, Long> totals, K key) {
+        final Long total = totals.get(key);
+        return total == null ? 0L : total;
+    }
+
+    private static JSONObject toJSON(Map<?, Long> values) throws JSONException {
+        final JSONObject json = new JSONObject();
+        for (Map.Entry<?, Long> value: values.entrySet()) {
+            json.put(value.getKey().toString(), value.getValue().longValue());
+        }
+        return json;
+    }
+
+    private static JSONObject hostsToJSON(Map<String, long[]> hosts) throws JSONException {
+        final JSONObject json = new JSONObject();
+        for (Map.Entry<String, long[]> host: hosts.entrySet()) {
+            json.put(host.getKey(), new JSONObject()
+                    .put("invocations", host.getValue()[0])
+                    .put("aborts", host.getValue()[1])
+                    .put("errors", host.getValue()[2])
+                    .put("timeMillis", host.getValue()[3]));
+        }
+        return json;
+    }
+
+    /**
+     * Reads the task statistics files in the given directory. Of the attempts of the
+     * same task, only the committed one is kept, or the latest one if none is marked
+     * as committed
+     *
+     * @param conf job configuration
+     * @param dir report directory
+     * @return a {@linkplain LoadReport}
+     * @throws IOException when it fails to list, or read the directory's files
+     */
+    public static LoadReport read(Configuration conf, Path dir) throws IOException {
+        final FileSystem fs = dir.getFileSystem(conf);
+        final FileStatus [] files = fs.listStatus(dir, new PathFilter() {
+            @Override
+            public boolean accept(Path path) {
+                return path.getName().endsWith(STATS_SUFFIX) || path.getName().endsWith(COMMITTED_SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+
+        final Set<String> committed = new HashSet<String>();
+        for (FileStatus file: files) {
+            final String name = file.getPath().getName();
+            if (name.endsWith(COMMITTED_SUFFIX)) {
+                committed.add(name.substring(0, name.length() - COMMITTED_SUFFIX.length()));
+            }
+        }
+        final Map<String, JSONObject> byTask = new TreeMap<String, JSONObject>();
+        final Map<String, Long> ranks = new HashMap<String, Long>();
+        for (FileStatus file: files) {
+            if (!file.getPath().getName().endsWith(STATS_SUFFIX)) continue;
+            final JSONObject stats;
+            try {
+                stats = new JSONObject(read(fs, file.getPath()));
+            } catch (JSONException e) {
+                LOG.warn("Skipping unreadable VoltDB load statistics " + file.getPath(), e);
+                continue;
+            }
+            final String attemptId = stats.optString("task", file.getPath().getName());
+            final Matcher matcher = ATTEMPT.matcher(attemptId);
+            final String taskId = matcher.matches() ? matcher.group(1) : attemptId;
+            final int attempt = matcher.matches() ? Integer.parseInt(matcher.group(2)) : 0;
+            /* committed attempts outrank any other, and later attempts outrank earlier ones */
+            final long rank = (committed.contains(attemptId) ? 1L << 32 : 0L) + attempt;
+            final Long other = ranks.get(taskId);
+            if (other == null || other < rank) {
+                byTask.put(taskId, stats);
+                ranks.put(taskId, rank);
+            }
+        }
+        return new LoadReport(new ArrayList<JSONObject>(byTask.values()));
+    }
+
+    /**
+     * @return the task statistics it aggregates
+     */
+    public List<JSONObject> getTasks() {
+        return m_tasks;
+    }
+
+    /**
+     * @return the job level report
+     * @throws JSONException when the task statistics are malformed
+     */
+    public JSONObject toJSON() throws JSONException {
+        final int count = m_tasks.size();
+        final Map<VoltCounter, Long> totals = new EnumMap<VoltCounter, Long>(VoltCounter.class);
+        final Map<String, Long> faults = new TreeMap<String, Long>();
+        final Map<String, long[]> hosts = new TreeMap<String, long[]>();
+        final long [] elapsed = new long[count];
+        final long [] rows = new long[count];
+        final long [] p50s = new long[count];
+        long start = count > 0 ? Long.MAX_VALUE : 0L, end = 0L, p99 = 0L, p999 = 0L, max = 0L;
+
+        for (int i = 0; i < count; ++i) {
+            final JSONObject task = m_tasks.get(i);
+            start = Math.min(start, task.getLong("startMillis"));
+            end = Math.max(end, task.getLong("endMillis"));
+            elapsed[i] = task.getLong("elapsedMillis");
+
+            final JSONObject counters = task.getJSONObject("counters");
+            for (VoltCounter counter: VoltCounter.values()) {
+                if (!counter.name().startsWith("BATCH_LATENCY_")) {
+                    add(totals, counter, counters.optLong(counter.name()));
+                }
+            }
+            rows[i] = counters.optLong(VoltCounter.ROWS_ACKNOWLEDGED.name());
+            p50s[i] = counters.optLong(VoltCounter.BATCH_LATENCY_P50_MICROS.name());
+            p99 = Math.max(p99, counters.optLong(VoltCounter.BATCH_LATENCY_P99_MICROS.name()));
+            p999 = Math.max(p999, counters.optLong(VoltCounter.BATCH_LATENCY_P999_MICROS.name()));
+            max = Math.max(max, counters.optLong(VoltCounter.BATCH_LATENCY_MAX_MICROS.name()));
+
+            final JSONObject taskFaults = task.optJSONObject("faults");
+            if (taskFaults != null) {
+                for (Iterator<String> keys = taskFaults.keys(); keys.hasNext();) {
+                    final String status = keys.next();
+                    add(faults, status, taskFaults.getLong(status));
+                }
+            }
+            final JSONObject taskHosts = task.optJSONObject("hosts");
+            if (taskHosts != null) {
+                for (Iterator<String> keys = taskHosts.keys(); keys.hasNext();) {
+                    final String name = keys.next();
+                    final JSONObject from = taskHosts.getJSONObject(name);
+                    final long [] host = hostOf(hosts, name);
+                    host[0] += from.optLong("invocations");
+                    host[1] += from.optLong("aborts");
+                    host[2] += from.optLong("errors");
+                    host[3] += from.optLong("timeMillis");
+                }
+            }
+        }
+        final long jobElapsed = Math.max(1L, end - start);
+
+        final JSONObject report = new JSONObject();
+        report.put("tasks", count);
+        report.put("startMillis", start);
+        report.put("endMillis", end);
+        report.put("elapsedMillis", jobElapsed);
+        report.put("rowsPerSecond", total(totals, VoltCounter.ROWS_ACKNOWLEDGED) * 1000D / jobElapsed);
+        report.put("totals", toJSON(totals));
+        report.put("latencyMicros", new JSONObject()
+                .put("medianTaskP50", median(p50s))
+                .put("worstTaskP99", p99)
+                .put("worstTaskP999", p999)
+                .put("max", max));
+        report.put("faults", toJSON(faults));
+        report.put("hosts", hostsToJSON(hosts));
+        report.put("skew", skewOf(elapsed, rows, hosts));
+        return report;
+    }
+
+    private JSONObject skewOf(final long [] elapsed, long [] rows, Map<String, long[]> hosts) throws JSONException {
+        final JSONObject skew = new JSONObject();
+        final long medianElapsed = median(elapsed), medianRows = median(rows);
+        skew.put("medianTaskElapsedMillis", medianElapsed);
+        skew.put("maxTaskElapsedMillis", max(elapsed));
+        skew.put("elapsedSkew", ratio(max(elapsed), medianElapsed));
+        skew.put("medianTaskRows", medianRows);
+        skew.put("maxTaskRows", max(rows));
+        skew.put("rowsSkew", ratio(max(rows), medianRows));
+
+        final List<Integer> slowest = new ArrayList<Integer>(elapsed.length);
+        for (int i = 0; i < elapsed.length; ++i) {
+            slowest.add(i);
+        }
+        Collections.sort(slowest, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return elapsed[a] == elapsed[b] ? 0 : elapsed[a] > elapsed[b] ? -1 : 1;
+            }
+        });
+        final JSONArray tasks = new JSONArray();
+        for (int i: slowest.subList(0, Math.min(TOP, slowest.size()))) {
+            final JSONObject task = m_tasks.get(i);
+            tasks.put(new JSONObject()
+                    .put("task", task.optString("task"))
+                    .put("elapsedMillis", elapsed[i])
+                    .put("rowsAcknowledged", rows[i])
+                    .put("rowsPerSecond", task.optDouble("rowsPerSecond", 0D))
+                    .put("p99Micros", task.getJSONObject("counters").optLong(VoltCounter.BATCH_LATENCY_P99_MICROS.name())));
+        }
+        skew.put("slowestTasks", tasks);
+
+        long totalTime = 0L;
+        for (long [] host: hosts.values()) {
+            totalTime += host[3];
+        }
+        final List<Map.Entry<String, long[]>> hottest = new ArrayList<Map.Entry<String, long[]>>(hosts.entrySet());
+        Collections.sort(hottest, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return a.getValue()[3] == b.getValue()[3] ? 0 : a.getValue()[3] > b.getValue()[3] ? -1 : 1;
+            }
+        });
+        final JSONArray hostsJson = new JSONArray();
+        for (Map.Entry<String, long[]> host: hottest.subList(0, Math.min(TOP, hottest.size()))) {
+            hostsJson.put(new JSONObject()
+                    .put("host", host.getKey())
+                    .put("timeMillis", host.getValue()[3])
+                    .put("invocations", host.getValue()[0])
+                    .put("share", totalTime > 0L ? (double)host.getValue()[3] / totalTime : 0D)
+                    .put("meanRatio", totalTime > 0L ? (double)host.getValue()[3] * hosts.size() / totalTime : 0D));
+        }
+        skew.put("hottestHosts", hostsJson);
+        return skew;
+    }
+
+    static long median(long [] values) {
+        if (values.length == 0) return 0L;
+        final long [] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(sorted.length - 1) >> 1];
+    }
+
+    private static long max(long [] values) {
+        long max = 0L;
+        for (long value: values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static double ratio(long value, long base) {
+        return base > 0L ? (double)value / base : 0D;
+    }
+
+    /**
+     * Formats the given job level report as text
+     *
+     * @param report a report, as returned by {@link #toJSON()}
+     * @return its text rendering
+     * @throws JSONException when the report is malformed
+     */
+    public static String format(JSONObject report) throws JSONException {
+        final StringBuilder sb = new StringBuilder(1024);
+        final JSONObject totals = report.getJSONObject("totals");
+        sb.append(String.format(Locale.ROOT,
+                "VoltDB load report: %d tasks, %d of %d submitted rows acknowledged, %d failed, %d rejected, in %.1f s (%.1f rows/s)\n",
+                report.getInt("tasks"),
+                totals.optLong(VoltCounter.ROWS_ACKNOWLEDGED.name()), totals.optLong(VoltCounter.ROWS_SUBMITTED.name()),
+                totals.optLong(VoltCounter.ROWS_FAILED.name()), totals.optLong(VoltCounter.ROWS_REJECTED.name()),
+                report.getLong("elapsedMillis") / 1000D, report.getDouble("rowsPerSecond")));
+
+        final JSONObject latency = report.getJSONObject("latencyMicros");
+        sb.append(String.format(Locale.ROOT,
+                "Batch latency: median task p50 %d us, worst task p99 %d us, worst task p99.9 %d us, max %d us\n",
+                latency.getLong("medianTaskP50"), latency.getLong("worstTaskP99"),
+                latency.getLong("worstTaskP999"), latency.getLong("max")));
+
+        final JSONObject faults = report.getJSONObject("faults");
+        sb.append("Faults:");
+        if (faults.length() == 0) {
+            sb.append(" none");
+        }
+        for (Iterator<String> keys = faults.keys(); keys.hasNext();) {
+            final String status = keys.next();
+            sb.append(' ').append(status).append(' ').append(faults.getLong(status));
+            if (keys.hasNext()) sb.append(',');
+        }
+        sb.append('\n');
+
+        final JSONObject skew = report.getJSONObject("skew");
+        sb.append(String.format(Locale.ROOT,
+                "Task skew: elapsed max %.1f s, median %.1f s (%.2fx); acknowledged rows max %d, median %d (%.2fx)\n",
+                skew.getLong("maxTaskElapsedMillis") / 1000D, skew.getLong("medianTaskElapsedMillis") / 1000D,
+                skew.getDouble("elapsedSkew"), skew.getLong("maxTaskRows"), skew.getLong("medianTaskRows"),
+                skew.getDouble("rowsSkew")));
+
+        final JSONArray tasks = skew.getJSONArray("slowestTasks");
+        sb.append("Slowest tasks:\n");
+        for (int i = 0; i < tasks.length(); ++i) {
+            final JSONObject task = tasks.getJSONObject(i);
+            sb.append(String.format(Locale.ROOT, "  %s  %.1f s, %d rows, %.1f rows/s, p99 %d us\n",
+                    task.getString("task"), task.getLong("elapsedMillis") / 1000D, task.getLong("rowsAcknowledged"),
+                    task.getDouble("rowsPerSecond"), task.getLong("p99Micros")));
+        }
+
+        final JSONArray hosts = skew.getJSONArray("hottestHosts");
+        sb.append("Hottest hosts:\n");
+        for (int i = 0; i < hosts.length(); ++i) {
+            final JSONObject host = hosts.getJSONObject(i);
+            sb.append(String.format(Locale.ROOT, "  %s  %.1f%% of client time, %.2fx the mean, %d invocations\n",
+                    host.getString("host"), host.getDouble("share") * 100D, host.getDouble("meanRatio"),
+                    host.getLong("invocations")));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the report, as JSON, and as text, to the given directory
+     *
+     * @param conf job configuration
+     * @param dir report directory
+     * @throws IOException when it fails to write either file
+     */
+    public void write(Configuration conf, Path dir) throws IOException {
+        try {
+            final JSONObject report = toJSON();
+            write(conf, new Path(dir, REPORT_NAME + ".json"), report.toString(2));
+            write(conf, new Path(dir, REPORT_NAME + ".txt"), format(report));
+        } catch (JSONException e) {
+            throw new IOException("malformed VoltDB load statistics", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return format(toJSON());
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String read(FileSystem fs, Path path) throws IOException {
+        final Reader reader = new InputStreamReader(fs.open(path), "UTF-8");
+        try {
+            final StringBuilder sb = new StringBuilder(4096);
+            final char [] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(Configuration conf, Path path, String content) throws IOException {
+        final Writer writer = new OutputStreamWriter(path.getFileSystem(conf).create(path, true), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Aggregates the task statistics in the given report directory, and writes
+     * the job level report into it
+     *
+     * @param args report directory
+     * @throws IOException when it fails to read, or write the report directory
+     */
+    public static void main(String [] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: LoadReport REPORT_DIR");
+            System.exit(1);
+        }
+        final Configuration conf = new Configuration();
+        final Path dir = new Path(args[0]);
+        final LoadReport report = read(conf, dir);
+        report.write(conf, dir);
+        System.out.print(report);
+    }
+}
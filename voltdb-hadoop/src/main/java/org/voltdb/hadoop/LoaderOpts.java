@@ -39,6 +39,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.lib.IdentityReducer;
 import org.voltdb.hadoop.mapred.VoltLoader;
 
 import com.google_voltpatches.common.base.Function;
@@ -51,6 +52,12 @@ import com.google_voltpatches.common.collect.FluentIterable;
  * <p><pre>
  * org.voltdb.hadoop: usage: VoltLoader [OPTION]... FILE TABLE
  *       -p,--password <password>            user password
+ *       -R,--report <directory>             directory where tasks write their load
+ *                                           statistics, and the job load report
+ *                                           is written
+ *       -r,--shuffle                        regroup rows through a shuffle, and
+ *                                           reduce phase before loading them
+ *                                           (default: map only direct load)
  *       -s,--servers <HOST[:PORT][,]...>    List of VoltDB servers to connect to
  *                                           (default: localhost)
  *       -u,--user <username>                database user
@@ -78,6 +85,19 @@ public class LoaderOpts {
             .withLongOpt("password").withDescription("user password")
             .create('p');
 
+    @SuppressWarnings("static-access")
+    private final static Option shuffleOpt = OptionBuilder
+            .isRequired(false).withLongOpt("shuffle")
+            .withDescription("regroup rows through a shuffle, and reduce phase before loading them (default: map only direct load)")
+            .create('r');
+
+    @SuppressWarnings("static-access")
+    private final static Option reportOpt = OptionBuilder
+            .withArgName("directory").hasArg().isRequired(false)
+            .withLongOpt("report")
+            .withDescription("directory where tasks write their load statistics, and the job load report is written")
+            .create('R');
+
     private final static Options options = new Options();
     final static String usage;
 
@@ -85,6 +105,8 @@ public class LoaderOpts {
         options.addOption(serversOpt);
         options.addOption(userOpt);
         options.addOption(passwordOpt);
+        options.addOption(shuffleOpt);
+        options.addOption(reportOpt);
 
         usage = getCommandUsage(options, "VoltLoader [OPTION]... FILE TABLE");
     }
@@ -105,6 +127,8 @@ public class LoaderOpts {
     final String m_password;
     final String m_source;
     final String m_table;
+    final boolean m_shuffle;
+    final String m_reportDir;
 
     final static Predicate<String> isEmpty = new Predicate<String>() {
         @Override
@@ -151,6 +175,8 @@ public class LoaderOpts {
 
         m_user = cli.getOptionValue('u');
         m_password = cli.getOptionValue('p');
+        m_shuffle = cli.hasOption('r');
+        m_reportDir = cli.getOptionValue('R');
     }
 
     public String [] getServers() {
@@ -173,9 +199,34 @@ public class LoaderOpts {
         return m_table;
     }
 
+    public boolean isShuffle() {
+        return m_shuffle;
+    }
+
+    public String getReportDir() {
+        return m_reportDir;
+    }
+
+    /**
+     * Configures the given job with the parsed options. Unless the shuffle option
+     * is given the job is set up as a map only job, where mappers write directly
+     * to the VoltDB output format, bypassing the sort, spill, and shuffle of
+     * rows that are loaded as they are read anyway
+     *
+     * @param conf a {@linkplain JobConf}
+     * @return the given job configuration
+     */
     public JobConf configure(JobConf conf) {
         VoltConfiguration.configureVoltDB(conf, m_servers, m_user, m_password, m_table);
         org.apache.hadoop.mapred.FileInputFormat.addInputPath(conf, new Path(m_source));
+        if (m_reportDir != null) {
+            VoltConfiguration.configureReport(conf, m_reportDir);
+        }
+        if (m_shuffle) {
+            conf.setReducerClass(IdentityReducer.class);
+        } else {
+            conf.setNumReduceTasks(0);
+        }
         return conf;
     }
 }
\ No newline at end of file
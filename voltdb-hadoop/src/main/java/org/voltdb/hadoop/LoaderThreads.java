@@ -0,0 +1,81 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM wide daemon threads shared by all the writers. Timed work, as client pool
+ * evictions, timed procedure flushes, and writer heartbeats, runs on one small
+ * scheduler, so its tasks must be short, and must not block. Work that blocks, as
+ * connecting to cluster hosts, runs on a separate pool that grows on demand, so
+ * that it never delays the timed work. Connection attempts that are still pending
+ * when a client is returned keep their thread until they complete.
+ */
+final class LoaderThreads {
+
+    private final static int SCHEDULER_THREADS = 2;
+
+    private static ScheduledExecutorService m_scheduler;
+    private static ExecutorService m_blocking;
+
+    private LoaderThreads() {
+    }
+
+    /**
+     * @return the scheduler of short, non blocking timed tasks
+     */
+    static synchronized ScheduledExecutorService scheduler() {
+        if (m_scheduler == null) {
+            m_scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS, daemons("VoltDB loader scheduler"));
+        }
+        return m_scheduler;
+    }
+
+    /**
+     * @return an executor of tasks that may block, as host connections
+     */
+    static synchronized ExecutorService blocking() {
+        if (m_blocking == null) {
+            m_blocking = Executors.newCachedThreadPool(daemons("VoltDB host connector"));
+        }
+        return m_blocking;
+    }
+
+    private static ThreadFactory daemons(final String name) {
+        final AtomicInteger threads = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " " + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,328 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.voltdb.hadoop.VoltConfiguration.Config;
+
+/**
+ * Feeds {@linkplain VoltRecord}s to several VoltDB tables on behalf of the multi-table
+ * mapred, and mapreduce record writers. Each record is routed to the table named by its
+ * key, or, when the key is empty or routing by key is disabled, by the record's table
+ * name, and lastly to the configured destination table.
+ * <p>
+ * A {@linkplain RecordLoader}, and its {@linkplain FaultCollector}, are opened lazily
+ * for each table on its first record, with the column types resolved through the
+ * column types cache. All the tables share the task's rate limit lease.
+ */
+public class MultiTableLoader implements Heartbeat.Source, Closeable {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final Configuration m_conf;
+    private final String m_defaultTable;
+    private final boolean m_routeByKey;
+    private final RateLimiter.Lease m_lease;
+    private final StageProfiler m_profiler;
+
+    private final Map<String, Route> m_routes = new HashMap<String, Route>();
+    private final List<Route> m_opened = new CopyOnWriteArrayList<Route>();
+
+    /*
+     * The loader, and the fault collector for one table
+     */
+    final static class Route {
+        final RecordLoader m_loader;
+        final FaultCollector m_faultCollector;
+
+        Route(RecordLoader loader, FaultCollector faultCollector) {
+            m_loader = loader;
+            m_faultCollector = faultCollector;
+        }
+    }
+
+    /**
+     * @param conf job configuration. Neither procedure, nor staged loads are supported
+     * @throws IOException when it is configured for procedure, or staged loads
+     */
+    public MultiTableLoader(Configuration conf) throws IOException {
+        this(conf, StageProfiler.current());
+    }
+
+    /**
+     * @param conf job configuration. Neither procedure, nor staged loads are supported
+     * @param profiler the {@linkplain StageProfiler} of the table loaders it opens
+     * @throws IOException when it is configured for procedure, or staged loads
+     */
+    public MultiTableLoader(Configuration conf, StageProfiler profiler) throws IOException {
+        m_conf = conf;
+        m_profiler = profiler;
+        m_defaultTable = conf.get(VoltConfiguration.TABLENAME_PROP);
+        m_routeByKey = conf.getBoolean(VoltConfiguration.ROUTE_BY_KEY_PROP, true);
+
+        Config config = VoltConfiguration.configFrom(conf, m_defaultTable);
+        if (config.getProcedureName() != null) {
+            throw new IOException("Multi table loads cannot be combined with procedure loads");
+        }
+        if (config.isStaged()) {
+            throw new IOException("Multi table loads cannot be combined with staged loads");
+        }
+        if (config.isRateLimited()) {
+            m_lease = RateLimiter.lease(RecordLoader.rateKeyFor(config),
+                    (double)config.getRowsPerSecond() / config.getRateTasks(),
+                    (double)config.getBytesPerSecond() / config.getRateTasks());
+        } else {
+            m_lease = null;
+        }
+    }
+
+    /**
+     * Name of the table the given record is routed to
+     *
+     * @param key record key
+     * @param record a {@linkplain VoltRecord}
+     * @return a table name
+     * @throws IOException when neither the key, the record, or the configuration name a table
+     */
+    String tableFor(Text key, VoltRecord record) throws IOException {
+        if (m_routeByKey && key != null && key.getLength() > 0) {
+            return key.toString();
+        }
+        String tableName = record.getTableName();
+        if (VoltConfiguration.isNullOrEmpty.apply(tableName)) {
+            tableName = m_defaultTable;
+        }
+        if (VoltConfiguration.isNullOrEmpty.apply(tableName)) {
+            throw new IOException("no destination table for record " + record);
+        }
+        return tableName;
+    }
+
+    /**
+     * Routes the given record to its table's loader
+     *
+     * @param key record key
+     * @param record a {@linkplain VoltRecord}
+     * @throws IOException when it fails to open the table's loader, or to write to it
+     */
+    public void write(Text key, VoltRecord record) throws IOException {
+        Route route = routeFor(tableFor(key, record));
+        route.m_loader.write(key, record);
+        route.m_faultCollector.check(false);
+    }
+
+    private Route routeFor(String tableName) throws IOException {
+        String name = tableName.trim().toUpperCase(Locale.ROOT);
+        Route route = m_routes.get(name);
+        if (route == null) {
+            route = open(name);
+            m_routes.put(name, route);
+            m_opened.add(route);
+            LOG.info("Opened loader for table " + name + ", " + m_routes.size() + " tables in all");
+        }
+        return route;
+    }
+
+    /**
+     * Opens the given table's loader. It shares this loader's rate limit lease
+     *
+     * @param tableName a table name
+     * @return a {@linkplain Route}
+     * @throws IOException when it fails to look up the table's columns, or to open its loader
+     */
+    Route open(String tableName) throws IOException {
+        Config config = VoltConfiguration.builderFrom(m_conf, tableName).setRateLimits(0L, 0L, 1).build();
+        VoltConfiguration conf = new VoltConfiguration(config);
+        TextOutputAdapter adapter = new TextOutputAdapter(conf.getTableColumnTypes(),"|");
+
+        FaultCollector faultCollector = new FaultCollector(adapter, config.getMaxBulkLoaderErrors(),
+                conf.getRejectSink(m_conf));
+        RecordLoader loader = new RecordLoader(conf, faultCollector, m_profiler);
+        if (m_lease != null) {
+            loader.shareRateLimit(m_lease);
+        }
+        return new Route(loader, faultCollector);
+    }
+
+    /**
+     * @return how many table loaders it opened
+     */
+    public int getTableCount() {
+        return m_opened.size();
+    }
+
+    @Override
+    public long getSubmitted() {
+        long submitted = 0L;
+        for (Route route: m_opened) {
+            submitted += route.m_loader.getSubmitted();
+        }
+        return submitted;
+    }
+
+    @Override
+    public long getAcknowledged() {
+        long acknowledged = 0L;
+        for (Route route: m_opened) {
+            acknowledged += route.m_loader.getAcknowledged();
+        }
+        return acknowledged;
+    }
+
+    @Override
+    public long getFailed() {
+        long failed = 0L;
+        for (Route route: m_opened) {
+            failed += route.m_loader.getFailed();
+        }
+        return failed;
+    }
+
+    /**
+     * @return how many batches its table loaders have in flight, or -1 if any of them
+     *   does not track its batches
+     */
+    @Override
+    public long getInFlightBatches() {
+        long batches = 0L;
+        for (Route route: m_opened) {
+            final long inFlight = route.m_loader.getInFlightBatches();
+            if (inFlight < 0L) return -1L;
+            batches += inFlight;
+        }
+        return batches;
+    }
+
+    /**
+     * @return milliseconds all its table loaders spent waiting on the rate limiter
+     */
+    public long getThrottledMillis() {
+        long millis = 0L;
+        for (Route route: m_opened) {
+            millis += route.m_loader.getThrottledMillis();
+        }
+        return millis;
+    }
+
+    /**
+     * @return how many rows all its table loaders resubmitted for a retry
+     */
+    public long getRetries() {
+        long retries = 0L;
+        for (Route route: m_opened) {
+            retries += route.m_loader.getRetries();
+        }
+        return retries;
+    }
+
+    /**
+     * @return how many rows all its table loaders could not retry
+     */
+    public long getRetriesExhausted() {
+        long exhausted = 0L;
+        for (Route route: m_opened) {
+            exhausted += route.m_loader.getRetriesExhausted();
+        }
+        return exhausted;
+    }
+
+    /**
+     * @return how many records all its table loaders rejected for violating column constraints
+     */
+    public long getRejected() {
+        long rejected = 0L;
+        for (Route route: m_opened) {
+            rejected += route.m_loader.getRejected();
+        }
+        return rejected;
+    }
+
+    /**
+     * @return the counters of all its table loaders, as published when the task closes
+     */
+    public Map<VoltCounter, Long> getCounters() {
+        return RecordLoader.countersOf(getLoaders());
+    }
+
+    /**
+     * @return the loaders of the tables it routed records to, in the order they were opened
+     */
+    public List<RecordLoader> getLoaders() {
+        List<RecordLoader> loaders = new ArrayList<RecordLoader>(m_opened.size());
+        for (Route route: m_opened) {
+            loaders.add(route.m_loader);
+        }
+        return loaders;
+    }
+
+    /**
+     * Closes all the tables' loaders, and then checks their faults, so that faults
+     * of their final flushes count too. It closes, and checks all the tables even
+     * if any of them fail. It releases the rate limit lease last
+     *
+     * @throws IOException when any loader failed to flush, or any table reached its
+     *   maximum of allowable errors
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        try {
+            for (Route route: m_opened) {
+                try {
+                    route.m_loader.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            for (Route route: m_opened) {
+                try {
+                    route.m_faultCollector.check(true);
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                } finally {
+                    route.m_faultCollector.close();
+                }
+            }
+        } finally {
+            if (m_lease != null) {
+                m_lease.release();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
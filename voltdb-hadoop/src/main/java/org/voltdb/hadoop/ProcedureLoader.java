@@ -0,0 +1,336 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import static com.google_voltpatches.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback;
+import org.voltdb.utils.BulkLoaderErrorHandler;
+import org.voltdb.utils.CSVDataLoader;
+import org.voltdb.utils.RowWithMetaData;
+
+import com.google_voltpatches.common.collect.ImmutableMap;
+
+/**
+ * A loader that collects rows into a {@linkplain VoltTable}, and invokes a user
+ * named stored procedure once per batch, with the table as its only parameter.
+ * Table columns are positionally named C1, C2, ... Cn, and typed after the
+ * destination table's column types.
+ * <p>
+ * A failed procedure invocation is reported to the error handler once for each
+ * row of its batch, so that error limits, reject files, and retries account for
+ * every row. The success callback is instead invoked once per batch, with its
+ * first row, as it stands for the invocation's response.
+ */
+public class ProcedureLoader implements CSVDataLoader {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final Client m_client;
+    private final String m_procedureName;
+    private final VoltType [] m_types;
+    private final VoltTable.ColumnInfo [] m_columns;
+    private final int m_batchSize;
+    private final BulkLoaderErrorHandler m_errorHandler;
+    private final BulkLoaderSuccessCallback m_successCallback;
+
+    /* the batch being filled. It is swapped out under the loader's monitor, and
+     * sent outside of it, as invocations block while the client is backpressured */
+    private VoltTable m_table;
+    private List<RowWithMetaData> m_metas;
+    private ScheduledFuture<?> m_flush = null;
+
+    /* guards the counters apart from the batch, as procedure callbacks must never
+     * wait on a writer blocked by client backpressure */
+    private final Object m_counts = new Object();
+    private long m_processed = 0L;
+    private long m_failed = 0L;
+    private int m_outstanding = 0;
+
+    /**
+     * @param client a connected VoltDB client
+     * @param procedureName the name of the procedure invoked with each batch
+     * @param types the procedure's table parameter column types
+     * @param batchSize how many rows are sent with each invocation
+     * @param errorHandler an asynchronous error handler
+     * @param successCallback an optional asynchronous success callback
+     */
+    public ProcedureLoader(Client client, String procedureName, VoltType [] types, int batchSize,
+            BulkLoaderErrorHandler errorHandler, BulkLoaderSuccessCallback successCallback) {
+        checkArgument(client != null, "null client");
+        checkArgument(procedureName != null && !procedureName.trim().isEmpty(), "null or empty procedure name");
+        checkArgument(types != null && types.length > 0, "null or empty column types");
+        checkArgument(batchSize > 0, "non positive batch size %s", batchSize);
+        checkArgument(errorHandler != null, "null error handler");
+
+        m_client = client;
+        m_procedureName = procedureName;
+        m_types = types;
+        m_batchSize = batchSize;
+        m_errorHandler = errorHandler;
+        m_successCallback = successCallback;
+
+        m_columns = new VoltTable.ColumnInfo[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            m_columns[i] = new VoltTable.ColumnInfo("C" + (i+1), types[i]);
+        }
+        m_table = new VoltTable(m_columns);
+        m_metas = new ArrayList<RowWithMetaData>(batchSize);
+    }
+
+    public String getProcedureName() {
+        return m_procedureName;
+    }
+
+    @Override
+    public VoltType[] getColumnTypes() {
+        return m_types;
+    }
+
+    @Override
+    public Map<Integer, String> getColumnNames() {
+        ImmutableMap.Builder<Integer, String> mb = ImmutableMap.builder();
+        for (int i = 0; i < m_columns.length; ++i) {
+            mb.put(i, "C" + (i+1));
+        }
+        return mb.build();
+    }
+
+    /**
+     * Adds the given row to the current batch, and invokes the procedure if
+     * the batch is full. Rows that cannot be converted to the column types
+     * are reported to the error handler
+     */
+    @Override
+    public void insertRow(RowWithMetaData meta, Object[] fields) throws InterruptedException {
+        BatchCallback batch = null;
+        synchronized (this) {
+            try {
+                m_table.addRow(fields);
+            } catch (RuntimeException e) {
+                synchronized (m_counts) {
+                    ++m_failed;
+                }
+                m_errorHandler.handleError(meta, null, e.getMessage());
+                return;
+            }
+            m_metas.add(meta);
+            if (m_table.getRowCount() >= m_batchSize) {
+                batch = takeBatch();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /*
+     * Swaps out the current batch, and counts it as outstanding. Callers must
+     * hold the loader's monitor
+     */
+    private BatchCallback takeBatch() {
+        if (m_table.getRowCount() == 0) return null;
+
+        final BatchCallback batch = new BatchCallback(m_table, m_metas);
+        m_table = new VoltTable(m_columns);
+        m_metas = new ArrayList<RowWithMetaData>(m_batchSize);
+        synchronized (m_counts) {
+            ++m_outstanding;
+        }
+        return batch;
+    }
+
+    /*
+     * Invokes the procedure with the given batch. Callers must not hold the
+     * loader's monitor, as this blocks while the client is backpressured
+     */
+    private void send(BatchCallback batch) {
+        if (FlightEvents.isRecording()) {
+            FlightEvents.emit(FlightEvents.Type.BATCH_SUBMITTED, m_procedureName, batch.m_rows.size());
+        }
+        try {
+            if (!m_client.callProcedure(batch, m_procedureName, batch.m_table)) {
+                batch.failed(null, "procedure " + m_procedureName + " invocation was not queued");
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to invoke procedure " + m_procedureName, e);
+            batch.failed(null, e.getMessage());
+        }
+    }
+
+    private void completed(int rows, boolean success) {
+        synchronized (m_counts) {
+            if (success) {
+                m_processed += rows;
+            } else {
+                m_failed += rows;
+            }
+            if (--m_outstanding == 0) {
+                m_counts.notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Keeps the batch's rows, so that each is reported when the invocation fails
+     */
+    private final class BatchCallback implements ProcedureCallback {
+        private final VoltTable m_table;
+        private final List<RowWithMetaData> m_rows;
+
+        BatchCallback(VoltTable table, List<RowWithMetaData> rows) {
+            m_table = table;
+            m_rows = rows;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (response.getStatus() != ClientResponse.SUCCESS) {
+                failed(response, response.getStatusString());
+                return;
+            }
+            if (m_successCallback != null) {
+                m_successCallback.success(m_rows.get(0).rawLine, response);
+            }
+            completed(m_rows.size(), true);
+        }
+
+        void failed(ClientResponse response, String error) {
+            try {
+                for (RowWithMetaData meta: m_rows) {
+                    m_errorHandler.handleError(meta, response, error);
+                }
+            } finally {
+                completed(m_rows.size(), false);
+            }
+        }
+    }
+
+    /**
+     * Invokes the procedure with the current batch, without waiting for its response
+     */
+    @Override
+    public void flush() {
+        BatchCallback batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @return whether the loader's client is backpressured. Timed flushes, which
+     *   run on a JVM wide thread, are skipped rather than block while it is
+     */
+    protected boolean isBackpressure() {
+        return false;
+    }
+
+    /**
+     * Sends the current batch, and waits for all outstanding invocations to complete
+     */
+    @Override
+    public void close() throws Exception {
+        setFlushInterval(0, 0);
+        flush();
+        synchronized (m_counts) {
+            while (m_outstanding > 0) {
+                m_counts.wait();
+            }
+        }
+    }
+
+    @Override
+    public long getProcessedRows() {
+        synchronized (m_counts) {
+            return m_processed;
+        }
+    }
+
+    @Override
+    public long getFailedRows() {
+        synchronized (m_counts) {
+            return m_failed;
+        }
+    }
+
+    /**
+     * @return how many procedure invocations were sent, and not yet completed
+     */
+    public int getOutstandingBatches() {
+        synchronized (m_counts) {
+            return m_outstanding;
+        }
+    }
+
+    /**
+     * Batches are sent when they fill up, or when the loader is flushed. This
+     * schedules flushes of partially filled batches
+     *
+     * @param delay seconds before the first flush
+     * @param seconds seconds between flushes. Zero, or less, cancels timed flushes
+     */
+    @Override
+    public synchronized void setFlushInterval(int delay, int seconds) {
+        if (m_flush != null) {
+            m_flush.cancel(false);
+            m_flush = null;
+        }
+        if (seconds > 0) {
+            m_flush = LoaderThreads.scheduler().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!isBackpressure()) {
+                            flush();
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.error("Timed flush of procedure " + m_procedureName + " batch failed", e);
+                    }
+                }
+            }, Math.max(0, delay), seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void resumeLoading() {
+    }
+}
@@ -0,0 +1,204 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Token bucket limiter that caps the rows, and bytes per second record writers feed
+ * to VoltDB. A job's budget is split in per task shares, and all the writers of the
+ * same job that run in the same JVM pool their shares into one limiter, so that idle
+ * writers lend their share to the busy ones. Buckets hold up to a second's worth of
+ * tokens, so that a writer that was idle for a while may briefly burst.
+ */
+public class RateLimiter {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    final static double BURST_SECONDS = 1.0D;
+
+    private final static Map<String, RateLimiter> m_limiters = new HashMap<String, RateLimiter>();
+
+    private final String m_key;
+    private final Bucket m_rows = new Bucket();
+    private final Bucket m_bytes = new Bucket();
+    private int m_refs = 0;
+
+    private RateLimiter(String key) {
+        m_key = key;
+    }
+
+    /*
+     * A token bucket whose tokens may go into debt. Callers take their tokens at
+     * once, and then wait for the debt to be repaid, so that concurrent callers
+     * are served in order
+     */
+    final static class Bucket {
+        private double m_rate = 0D;
+        private double m_tokens = 0D;
+        private long m_refilledAt = System.nanoTime();
+
+        private void refill(long now) {
+            if (m_rate > 0D) {
+                m_tokens = Math.min(m_rate * BURST_SECONDS, m_tokens + (now - m_refilledAt) * m_rate / 1e9);
+            }
+            m_refilledAt = now;
+        }
+
+        synchronized void addRate(double rate, long now) {
+            refill(now);
+            m_rate = Math.max(0D, m_rate + rate);
+            if (m_rate < 1e-9) {
+                m_rate = 0D;
+                m_tokens = 0D;
+            }
+        }
+
+        synchronized double getRate() {
+            return m_rate;
+        }
+
+        /**
+         * Takes the given number of tokens
+         *
+         * @return how many nanoseconds the caller must wait for them
+         */
+        synchronized long take(double permits, long now) {
+            if (m_rate <= 0D) return 0L;
+            refill(now);
+            m_tokens -= permits;
+            return m_tokens >= 0D ? 0L : (long)(-m_tokens / m_rate * 1e9);
+        }
+    }
+
+    /**
+     * A writer's share of a job's rate limiter
+     */
+    public final static class Lease {
+        private final RateLimiter m_limiter;
+        private final double m_rowsPerSecond;
+        private final double m_bytesPerSecond;
+        private boolean m_released = false;
+
+        private Lease(RateLimiter limiter, double rowsPerSecond, double bytesPerSecond) {
+            m_limiter = limiter;
+            m_rowsPerSecond = rowsPerSecond;
+            m_bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * Waits until the job's budget allows for the given rows, and bytes
+         *
+         * @param rows number of rows
+         * @param bytes number of bytes
+         * @return how many nanoseconds it waited
+         * @throws InterruptedException when interrupted while waiting
+         */
+        public long throttle(int rows, int bytes) throws InterruptedException {
+            final long now = System.nanoTime();
+            long wait = Math.max(m_limiter.m_rows.take(rows, now), m_limiter.m_bytes.take(bytes, now));
+            if (wait > 0L) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            return wait;
+        }
+
+        /**
+         * Withdraws this writer's share from the job's limiter
+         */
+        public void release() {
+            if (m_released) return;
+            m_released = true;
+            m_limiter.release(m_rowsPerSecond, m_bytesPerSecond);
+        }
+    }
+
+    /**
+     * Adds the given share to the JVM's limiter for the given job
+     *
+     * @param key a key that identifies the job
+     * @param rowsPerSecond the writer's rows per second share. Zero or less is unlimited
+     * @param bytesPerSecond the writer's bytes per second share. Zero or less is unlimited
+     * @return a {@linkplain Lease} on the job's limiter
+     */
+    public static Lease lease(String key, double rowsPerSecond, double bytesPerSecond) {
+        RateLimiter limiter;
+        synchronized (m_limiters) {
+            limiter = m_limiters.get(key);
+            if (limiter == null) {
+                limiter = new RateLimiter(key);
+                m_limiters.put(key, limiter);
+            }
+            limiter.m_refs += 1;
+        }
+        final long now = System.nanoTime();
+        final double rows = Math.max(0D, rowsPerSecond);
+        final double bytes = Math.max(0D, bytesPerSecond);
+        limiter.m_rows.addRate(rows, now);
+        limiter.m_bytes.addRate(bytes, now);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Leased %.1f rows/s, and %.1f bytes/s of job %s budget", rows, bytes, key));
+        }
+        return new Lease(limiter, rows, bytes);
+    }
+
+    private void release(double rowsPerSecond, double bytesPerSecond) {
+        final long now = System.nanoTime();
+        m_rows.addRate(-rowsPerSecond, now);
+        m_bytes.addRate(-bytesPerSecond, now);
+        synchronized (m_limiters) {
+            if (--m_refs == 0 && m_limiters.get(m_key) == this) {
+                m_limiters.remove(m_key);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of bytes the given field values take on the wire
+     *
+     * @param fields field values
+     * @return estimated number of bytes
+     */
+    public static int estimateBytes(Object [] fields) {
+        int bytes = 0;
+        for (Object field: fields) {
+            if (field == null) {
+                bytes += 1;
+            } else if (field instanceof byte[]) {
+                bytes += 4 + ((byte[])field).length;
+            } else if (field instanceof CharSequence) {
+                bytes += 4 + ((CharSequence)field).length();
+            } else {
+                bytes += 8;
+            }
+        }
+        return bytes;
+    }
+}
@@ -51,13 +51,23 @@ public abstract class RecordAdapter<R, P, E extends Exception> {
                 types != null && types.length > 0,
                 "given types is a null or empty array");
 
-        StringBuilder sb = new StringBuilder(1024);
         m_types = new TypeAide[types.length];
         for (int i = 0; i < types.length; ++i) {
             m_types[i] = TypeAide.forType(types[i]);
-            sb.append(types[i].name());
         }
-        m_signature = Digester.digestMD5asUUID(sb.toString());
+        m_signature = signatureFor(types);
+    }
+
+    /**
+     * @param types table column types
+     * @return the signature of adapters for the given column types
+     */
+    public static UUID signatureFor(VoltType [] types) {
+        StringBuilder sb = new StringBuilder(1024);
+        for (VoltType type: types) {
+            sb.append(type.name());
+        }
+        return Digester.digestMD5asUUID(sb.toString());
     }
 
     /**
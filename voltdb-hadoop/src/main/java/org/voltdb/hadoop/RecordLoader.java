@@ -0,0 +1,818 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop;
+
+import static com.google_voltpatches.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
+import org.voltdb.client.ClientStats;
+import org.voltdb.client.ClientStatsContext;
+import org.voltdb.utils.BulkLoaderErrorHandler;
+import org.voltdb.utils.CSVDataLoader;
+import org.voltdb.utils.RowWithMetaData;
+
+/**
+ * Feeds {@linkplain VoltRecord}s to VoltDB on behalf of the mapred, and mapreduce
+ * record writers. Rows are striped across one or more bulk loaders, each with
+ * its own pooled client lane, either round robin or by the record key's hash.
+ * <p>
+ * When configured as an asynchronous writer, the task thread only snapshots the
+ * records' field values into a bounded {@linkplain RecordRing}, and a dedicated
+ * sender thread feeds them to the loaders. Record conversion on the task thread
+ * then overlaps with loader backpressure on the sender thread. Writes block
+ * while the ring is full, and flushing, or closing, waits for the ring to drain.
+ * <p>
+ * When retries are configured, a {@linkplain RowRetrier} resubmits rows that failed
+ * with a transient status to their stripe's loader once their back off elapses, on
+ * the thread that feeds the loaders. Closing waits for all the loaders' rows to
+ * complete, and for all the pending retries.
+ * <p>
+ * When a {@linkplain RowValidator} is set, a {@linkplain RowScreen} hands records
+ * that violate the destination table's column constraints to the error handler on
+ * the task thread, and they never reach a loader's batch.
+ */
+public class RecordLoader implements Heartbeat.Source, Closeable {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final static int DRAIN_MAX = 256;
+
+    private final CSVDataLoader [] m_loaders;
+    private final boolean m_stripeByKey;
+    private int m_next = 0;
+
+    private final RecordRing m_ring;
+    private final Thread m_sender;
+    private volatile boolean m_stopping = false;
+    private volatile Throwable m_senderFailure = null;
+    private volatile long m_discarded = 0L;
+
+    private final BatchSizer m_sizer;
+    private final StageProfiler m_profiler;
+    private final AtomicIntegerArray m_unflushed;
+
+    private RowRetrier m_retries = null;
+    /* fed by one thread at a time, and read by heartbeat, and monitoring threads */
+    private final AtomicLongArray m_submitted;
+    private final AtomicLong m_bytes = new AtomicLong(0L);
+    private final LoadMetrics m_metrics;
+    private FaultCollector m_faults = null;
+    private BulkLoaderErrorHandler m_errorHandler = null;
+    private String m_tableName = null;
+    private String m_clusterKey = null;
+
+    private RowScreen m_screen = null;
+
+    private String m_attemptId = null;
+    private RateLimiter.Lease m_lease = null;
+    private boolean m_ownsLease = false;
+    private volatile long m_throttledNanos = 0L;
+
+    private final long m_openedMillis = System.currentTimeMillis();
+    private long m_closedMillis = 0L;
+    private final Map<String, ClientStatsContext> m_clientStats = new LinkedHashMap<String, ClientStatsContext>();
+    private final Map<String, Map<Long, ClientStats>> m_connectionStats = new LinkedHashMap<String, Map<Long, ClientStats>>();
+
+    /**
+     * Opens as many loaders as the configured loader parallelism. They are procedure
+     * loaders if a stored procedure is configured, or bulk loaders otherwise. Their
+     * stages are profiled by the {@linkplain StageProfiler} bound to the calling thread
+     *
+     * @param conf a {@linkplain VoltConfiguration}
+     * @param errorHandler an asynchronous loader error handler shared by all the loaders
+     * @throws IOException when it fails to open any of the loaders
+     */
+    public RecordLoader(VoltConfiguration conf, BulkLoaderErrorHandler errorHandler) throws IOException {
+        this(conf, errorHandler, StageProfiler.current());
+    }
+
+    /**
+     * @param conf a {@linkplain VoltConfiguration}
+     * @param errorHandler an asynchronous loader error handler shared by all the loaders
+     * @param profiler the {@linkplain StageProfiler} of its stages
+     * @throws IOException when it fails to open any of the loaders
+     */
+    public RecordLoader(VoltConfiguration conf, BulkLoaderErrorHandler errorHandler, StageProfiler profiler)
+            throws IOException {
+        this(conf, RowRetrier.queueFor(conf.getConfig(), errorHandler), errorHandler, profiler);
+    }
+
+    private RecordLoader(VoltConfiguration conf, RetryQueue retries, BulkLoaderErrorHandler errorHandler,
+            StageProfiler profiler) throws IOException {
+        this(conf, retries != null ? retries : errorHandler, new LoadMetrics(sizerFor(conf), profiler));
+        if (retries != null) {
+            setRetries(retries);
+        }
+        m_errorHandler = errorHandler;
+        if (errorHandler instanceof FaultCollector) {
+            m_faults = (FaultCollector)errorHandler;
+        }
+        RowValidator validator = null;
+        try {
+            validator = conf.getRowValidator();
+        } catch (IOException e) {
+            try {
+                close();
+            } catch (IOException ignored) {
+                LOG.error("Failed to close VoltDB loaders", ignored);
+            }
+            throw e;
+        }
+        if (validator != null) {
+            setValidator(validator, errorHandler);
+        }
+        m_tableName = conf.getConfig().getTableName();
+        m_clusterKey = VoltConfiguration.clusterKeyFor(conf.getConfig().getHosts());
+        LoadMonitor.opened(m_clusterKey, m_tableName, this);
+    }
+
+    /**
+     * Resubmits rows that failed with a retryable status, as the given queue allows
+     *
+     * @param retries a {@linkplain RetryQueue} that handles the loaders' errors
+     */
+    void setRetries(RetryQueue retries) {
+        m_retries = new RowRetrier(retries, new RowRetrier.Stripes() {
+            @Override
+            public void feed(Object[] fields, int stripe, int attempt) throws IOException {
+                RecordLoader.this.feed(fields, stripe, attempt);
+            }
+
+            @Override
+            public boolean isCompleted() {
+                return RecordLoader.this.isCompleted();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                flushLoaders();
+            }
+        });
+    }
+
+    /**
+     * Checks records against their table's column constraints before they are fed to
+     * the loaders, and hands the ones that violate them to the given error handler
+     *
+     * @param validator a {@linkplain RowValidator}
+     * @param rejects the handler of rejected records
+     */
+    void setValidator(RowValidator validator, BulkLoaderErrorHandler rejects) {
+        m_screen = new RowScreen(validator, rejects);
+    }
+
+    private RecordLoader(VoltConfiguration conf, BulkLoaderErrorHandler errorHandler, LoadMetrics metrics) throws IOException {
+        this(metrics, openLoaders(conf, errorHandler, metrics), conf.getConfig().isStripeByKey(),
+                conf.getConfig().isAsyncWriter() ? conf.getConfig().getWriterQueueSize() : 0);
+        VoltConfiguration.Config config = conf.getConfig();
+        if (config.isStaged()) {
+            m_attemptId = config.getAttemptId();
+        }
+        for (int lane = 0; lane < m_loaders.length; ++lane) {
+            final String key = ClientPool.keyFor(config, lane);
+            final ClientStatsContext context = ClientPool.statsContext(key);
+            if (context != null) {
+                m_clientStats.put(key, context);
+            }
+        }
+        if (config.isRateLimited()) {
+            setRateLimit(rateKeyFor(config),
+                    (double)config.getRowsPerSecond() / config.getRateTasks(),
+                    (double)config.getBytesPerSecond() / config.getRateTasks());
+        }
+    }
+
+    static String rateKeyFor(VoltConfiguration.Config config) {
+        if (config.getJobId() != null) {
+            return config.getJobId();
+        }
+        return ClientPool.keyFor(config, 0) + '|' + config.getTableName();
+    }
+
+    /**
+     * Caps the rate at which this loader feeds rows to VoltDB with a share of the
+     * given job's budget
+     *
+     * @param key job key. Loaders with the same key share their rate limits
+     * @param rowsPerSecond this loader's rows per second share
+     * @param bytesPerSecond this loader's bytes per second share
+     */
+    void setRateLimit(String key, double rowsPerSecond, double bytesPerSecond) {
+        shareRateLimit(RateLimiter.lease(key, rowsPerSecond, bytesPerSecond));
+        m_ownsLease = true;
+    }
+
+    /**
+     * Caps the rate at which this loader feeds rows to VoltDB with the given lease,
+     * that it shares with other loaders. It does not release it when it is closed
+     *
+     * @param lease a {@linkplain RateLimiter.Lease}
+     */
+    public void shareRateLimit(RateLimiter.Lease lease) {
+        if (m_lease != null && m_ownsLease) {
+            m_lease.release();
+        }
+        m_lease = lease;
+        m_ownsLease = false;
+    }
+
+    RecordLoader(CSVDataLoader [] loaders, boolean stripeByKey) {
+        this(loaders, stripeByKey, 0, null);
+    }
+
+    /**
+     * @param loaders loaders to stripe rows across
+     * @param stripeByKey whether to stripe by the record key's hash
+     * @param queueSize sender queue size. Zero feeds rows to the loaders on the caller's thread
+     * @param sizer an optional adaptive batch sizer, that decides how many rows are fed
+     *   to each loader between flushes
+     */
+    RecordLoader(CSVDataLoader [] loaders, boolean stripeByKey, int queueSize, BatchSizer sizer) {
+        this(new LoadMetrics(sizer), loaders, stripeByKey, queueSize);
+    }
+
+    private RecordLoader(LoadMetrics metrics, CSVDataLoader [] loaders, boolean stripeByKey, int queueSize) {
+        checkArgument(loaders != null && loaders.length > 0, "null or empty loaders");
+        checkArgument(queueSize >= 0, "negative queue size %s", queueSize);
+        m_loaders = loaders;
+        m_stripeByKey = stripeByKey;
+        m_metrics = metrics;
+        m_sizer = metrics.getSizer();
+        m_profiler = metrics.getProfiler();
+        m_unflushed = new AtomicIntegerArray(loaders.length);
+        m_submitted = new AtomicLongArray(loaders.length);
+        if (queueSize > 0) {
+            m_ring = new RecordRing(queueSize);
+            m_sender = new Thread(new Sender(), "VoltDB record sender");
+            m_sender.setDaemon(true);
+            m_sender.start();
+        } else {
+            m_ring = null;
+            m_sender = null;
+        }
+    }
+
+    private static BatchSizer sizerFor(VoltConfiguration conf) throws IOException {
+        VoltConfiguration.Config config = conf.getConfig();
+        if (config.isStaged()) {
+            if (config.getAttemptId() == null) {
+                throw new IOException("Staged loads require a task attempt id");
+            }
+            if (config.getProcedureName() != null) {
+                throw new IOException("Staged loads cannot be combined with procedure loads");
+            }
+        }
+        if (!config.isAdaptiveBatch()) {
+            return null;
+        }
+        return new BatchSizer(config.getTableName(), conf.getTableColumnTypes(),
+                config.getMinBatchSize(), config.getMaxBatchSize(),
+                config.getBatchTargetLatency(), config.getBatchTargetBytes(),
+                conf.getBatchPartitions());
+    }
+
+    private static CSVDataLoader [] openLoaders(VoltConfiguration conf, BulkLoaderErrorHandler errorHandler,
+            LoadMetrics metrics) throws IOException {
+        CSVDataLoader [] loaders = new CSVDataLoader[Math.max(1, conf.getConfig().getLoaderParallelism())];
+        try {
+            for (int i = 0; i < loaders.length; ++i) {
+                loaders[i] = conf.getLoader(errorHandler, metrics.newLane(), i);
+            }
+        } catch (IOException e) {
+            closeAll(loaders);
+            throw e;
+        }
+        return loaders;
+    }
+
+    /**
+     * @return how many loaders rows are striped across
+     */
+    public int getParallelism() {
+        return m_loaders.length;
+    }
+
+    /**
+     * Picks a loader for the given key, and feeds it the given record
+     *
+     * @param key the record key. It is used for striping only when configured to stripe by key
+     * @param record a {@linkplain VoltRecord}
+     * @throws IOException
+     */
+    public void write(Text key, VoltRecord record) throws IOException {
+        if (m_screen != null && !m_screen.admits(record)) {
+            return;
+        }
+        if (m_ring == null) {
+            resubmitDue();
+            feed(fieldsOf(record), stripeFor(key), 1);
+            return;
+        }
+        checkSender();
+        try {
+            m_ring.put(record, fieldsOf(record), stripeFor(key));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the record sender", e);
+        }
+    }
+
+    /*
+     * Staged rows are tagged with the task attempt id in their last field
+     */
+    private Object [] fieldsOf(VoltRecord record) {
+        return m_attemptId == null ? record.share() : record.toArray(m_attemptId);
+    }
+
+    /**
+     * @return whether rows are fed to the loaders by a sender thread
+     */
+    public boolean isAsync() {
+        return m_ring != null;
+    }
+
+    /*
+     * Feeds a row's field values to the given stripe's loader, and flushes the loader
+     * once it was fed as many rows as the adaptive batch size times the partitions its
+     * loader batches rows across. The fields array is the
+     * row's handle in the loader callbacks, and its stripe, and attempt are tagged in
+     * the handle's line number, so that nothing else is allocated per row
+     */
+    private void feed(Object [] fields, int stripe, int attempt) throws IOException {
+        final int bytes = RateLimiter.estimateBytes(fields);
+        if (m_lease != null) try {
+            m_throttledNanos += m_lease.throttle(1, bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while throttled", e);
+        }
+        m_submitted.lazySet(stripe, m_submitted.get(stripe) + 1L);
+        m_bytes.lazySet(m_bytes.get() + bytes);
+        final long token = m_profiler.start(StageProfiler.Stage.ENQUEUE);
+        try {
+            m_loaders[stripe].insertRow(new RowWithMetaData(fields, RetryQueue.tagFor(stripe, attempt)), fields);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted loader insert", e);
+        } finally {
+            m_profiler.stop(StageProfiler.Stage.ENQUEUE, token);
+        }
+        int unflushed;
+        if (m_sizer != null && (unflushed = m_unflushed.incrementAndGet(stripe)) >= m_sizer.getFlushRows()) {
+            if (FlightEvents.isRecording()) {
+                FlightEvents.emit(FlightEvents.Type.BATCH_SUBMITTED, m_tableName, unflushed);
+            }
+            m_unflushed.set(stripe, 0);
+            try {
+                m_loaders[stripe].flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted loader flush", e);
+            } catch (Exception e) {
+                throw new IOException("failed to flush loader", e);
+            }
+        }
+    }
+
+    /*
+     * Feeds the rows whose retry back off elapsed to their loaders
+     */
+    private void resubmitDue() throws IOException {
+        if (m_retries != null) {
+            m_retries.resubmitDue();
+        }
+    }
+
+    /*
+     * Procedure loaders count failed rows apart from processed ones, while
+     * bulk loaders count them as processed too
+     */
+    private static long completedRows(CSVDataLoader loader) {
+        if (loader instanceof ProcedureLoader) {
+            return loader.getProcessedRows() + loader.getFailedRows();
+        }
+        return loader.getProcessedRows();
+    }
+
+    /*
+     * Bulk loaders count failed rows as processed
+     */
+    private static long acknowledgedRows(CSVDataLoader loader) {
+        if (loader instanceof ProcedureLoader) {
+            return loader.getProcessedRows();
+        }
+        return loader.getProcessedRows() - loader.getFailedRows();
+    }
+
+    private boolean isCompleted() {
+        for (int i = 0; i < m_loaders.length; ++i) {
+            if (completedRows(m_loaders[i]) < m_submitted.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return how many rows were resubmitted after they failed with a retryable status
+     */
+    public long getRetries() {
+        return m_retries == null ? 0L : m_retries.getRetries();
+    }
+
+    /**
+     * @return how many rows failed with a retryable status, but could not be retried
+     */
+    public long getRetriesExhausted() {
+        return m_retries == null ? 0L : m_retries.getExhausted();
+    }
+
+    /**
+     * @return how many records were rejected because they violate their table's column constraints
+     */
+    public long getRejected() {
+        return m_screen == null ? 0L : m_screen.getRejected();
+    }
+
+    /**
+     * @return how many rows it fed to the loaders, including resubmitted ones
+     */
+    @Override
+    public long getSubmitted() {
+        long submitted = 0L;
+        for (int i = 0; i < m_submitted.length(); ++i) {
+            submitted += m_submitted.get(i);
+        }
+        return submitted;
+    }
+
+    /**
+     * @return the estimated serialized size, in bytes, of the rows it fed to the loaders
+     */
+    public long getSubmittedBytes() {
+        return m_bytes.get();
+    }
+
+    /**
+     * @return how many rows VoltDB acknowledged as loaded
+     */
+    @Override
+    public long getAcknowledged() {
+        long acknowledged = 0L;
+        for (CSVDataLoader loader: m_loaders) {
+            acknowledged += acknowledgedRows(loader);
+        }
+        return acknowledged;
+    }
+
+    /**
+     * @return how many rows failed to load, not counting rejected records. It is
+     *   zero unless its error handler is a {@linkplain FaultCollector}
+     */
+    @Override
+    public long getFailed() {
+        return m_faults == null ? 0L : Math.max(0L, m_faults.getFaultCount() - getRejected());
+    }
+
+    /**
+     * @return how many batches were sent, and not yet acknowledged, or -1 for fixed size
+     *   bulk loads, which do not tell. Procedure loaders count their invocations. Adaptive
+     *   bulk loads estimate them from the rows flushed to VoltDB, and not yet completed,
+     *   split into batches of the current batch size
+     */
+    @Override
+    public long getInFlightBatches() {
+        long batches = 0L;
+        for (int i = 0; i < m_loaders.length; ++i) {
+            final CSVDataLoader loader = m_loaders[i];
+            if (loader instanceof ProcedureLoader) {
+                batches += ((ProcedureLoader)loader).getOutstandingBatches();
+            } else if (m_sizer != null) {
+                final long rows = m_submitted.get(i) - completedRows(loader) - m_unflushed.get(i);
+                final int size = m_sizer.getSize();
+                batches += rows > 0L ? (rows + size - 1) / size : 0L;
+            } else {
+                return -1L;
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * @return how many records its sender failed to feed, or discarded after it failed
+     */
+    public long getDiscarded() {
+        return m_discarded;
+    }
+
+    /**
+     * @return the destination table name, if it was opened from a configuration
+     */
+    public String getTableName() {
+        return m_tableName;
+    }
+
+    /**
+     * @return its fault collector, if its error handler is one
+     */
+    FaultCollector getFaultCollector() {
+        return m_faults;
+    }
+
+    /**
+     * @return when it was opened, in milliseconds since the epoch
+     */
+    long getOpenedMillis() {
+        return m_openedMillis;
+    }
+
+    /**
+     * @return when it was closed, in milliseconds since the epoch, or zero while it is open
+     */
+    long getClosedMillis() {
+        return m_closedMillis;
+    }
+
+    /**
+     * @return its clients' statistics by connection, taken on close, keyed by client
+     *   pool key. Loaders that share clients report the same connections
+     */
+    Map<String, Map<Long, ClientStats>> getConnectionStats() {
+        return m_connectionStats;
+    }
+
+    /**
+     * @return its loaders' batch {@linkplain LoadMetrics}
+     */
+    public LoadMetrics getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * @return its counters, as published when the task closes
+     */
+    public Map<VoltCounter, Long> getCounters() {
+        return countersOf(Collections.singletonList(this));
+    }
+
+    /**
+     * Adds up the counters of the given loaders. Latency percentiles are taken
+     * from their merged batch latencies
+     *
+     * @param loaders {@linkplain RecordLoader}s
+     * @return counters, as published when the task closes
+     */
+    static Map<VoltCounter, Long> countersOf(Iterable<RecordLoader> loaders) {
+        final LoadMetrics metrics = new LoadMetrics(null);
+        long submitted = 0L, acknowledged = 0L, failed = 0L, bytes = 0L;
+        long throttled = 0L, retries = 0L, exhausted = 0L, rejected = 0L;
+        for (RecordLoader loader: loaders) {
+            submitted += loader.getSubmitted();
+            acknowledged += loader.getAcknowledged();
+            failed += loader.getFailed();
+            bytes += loader.getSubmittedBytes();
+            throttled += loader.getThrottledMillis();
+            retries += loader.getRetries();
+            exhausted += loader.getRetriesExhausted();
+            rejected += loader.getRejected();
+            metrics.add(loader.m_metrics);
+        }
+        Map<VoltCounter, Long> counters = new EnumMap<VoltCounter, Long>(VoltCounter.class);
+        counters.put(VoltCounter.ROWS_SUBMITTED, submitted);
+        counters.put(VoltCounter.ROWS_ACKNOWLEDGED, acknowledged);
+        counters.put(VoltCounter.ROWS_FAILED, failed);
+        counters.put(VoltCounter.BYTES_SUBMITTED, bytes);
+        counters.put(VoltCounter.BATCHES, metrics.getBatches());
+        counters.put(VoltCounter.BACKPRESSURE_MILLIS, metrics.getBackpressureMillis());
+        counters.put(VoltCounter.BATCH_LATENCY_P50_MICROS, metrics.getLatencyMicros(50D));
+        counters.put(VoltCounter.BATCH_LATENCY_P99_MICROS, metrics.getLatencyMicros(99D));
+        counters.put(VoltCounter.BATCH_LATENCY_P999_MICROS, metrics.getLatencyMicros(99.9D));
+        counters.put(VoltCounter.BATCH_LATENCY_MAX_MICROS, metrics.getMaxLatencyMicros());
+        counters.put(VoltCounter.THROTTLED_MILLIS, throttled);
+        counters.put(VoltCounter.RETRIES, retries);
+        counters.put(VoltCounter.RETRIES_EXHAUSTED, exhausted);
+        counters.put(VoltCounter.ROWS_REJECTED, rejected);
+        return counters;
+    }
+
+    /**
+     * @return the adaptive batch sizer, or null if batches have a fixed size
+     */
+    public BatchSizer getBatchSizer() {
+        return m_sizer;
+    }
+
+    /**
+     * @return how many milliseconds it waited for its rate limit
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(m_throttledNanos);
+    }
+
+    private void checkSender() throws IOException {
+        final Throwable failure = m_senderFailure;
+        if (failure != null) {
+            throw new IOException("VoltDB record sender failed", failure);
+        }
+    }
+
+    private void awaitDrained() throws IOException {
+        if (m_ring == null) return;
+        try {
+            m_ring.awaitDrained();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while draining the record sender queue", e);
+        }
+    }
+
+    /*
+     * Drains the ring into the loaders until it is stopped, and the ring is empty.
+     * After a failure it keeps draining, and discards records, so that the writer
+     * is never left blocked on a full ring. The record it failed on, and the ones
+     * it discards are reported to the error handler as faults
+     */
+    private final class Sender implements Runnable, RecordRing.Sink {
+        @Override
+        public void run() {
+            while (!m_stopping || !m_ring.isEmpty()) {
+                if (m_retries != null && m_senderFailure == null) try {
+                    resubmitDue();
+                } catch (Throwable t) {
+                    LOG.error("Failed to resubmit record to VoltDB loader", t);
+                    m_senderFailure = t;
+                }
+                if (m_ring.drain(this, DRAIN_MAX) == 0) {
+                    m_ring.awaitRecords();
+                }
+            }
+        }
+
+        @Override
+        public void accept(VoltRecord record, Object[] fields, int stripe) {
+            if (m_senderFailure != null) {
+                discard(fields, stripe, "discarded after the record sender failed");
+                return;
+            }
+            try {
+                feed(fields, stripe, 1);
+            } catch (Throwable t) {
+                LOG.error("Failed to feed record to VoltDB loader", t);
+                m_senderFailure = t;
+                discard(fields, stripe, "record sender failed: " + t.getMessage());
+            }
+        }
+
+        private void discard(Object [] fields, int stripe, String error) {
+            ++m_discarded;
+            if (m_errorHandler != null) {
+                m_errorHandler.handleError(new RowWithMetaData(fields, RetryQueue.tagFor(stripe, 1)), null, error);
+            }
+        }
+    }
+
+    int stripeFor(Text key) {
+        if (m_loaders.length == 1) {
+            return 0;
+        }
+        if (m_stripeByKey && key != null) {
+            return (key.hashCode() & Integer.MAX_VALUE) % m_loaders.length;
+        }
+        int stripe = m_next;
+        m_next = stripe + 1 == m_loaders.length ? 0 : stripe + 1;
+        return stripe;
+    }
+
+    /**
+     * Waits for the sender to drain its queue, if any, and then flushes all
+     * the loaders' pending batches
+     *
+     * @throws IOException when any of the loaders fail to flush
+     */
+    public void flush() throws IOException {
+        awaitDrained();
+        checkSender();
+        flushLoaders();
+    }
+
+    private void flushLoaders() throws IOException {
+        for (int i = 0; i < m_unflushed.length(); ++i) {
+            m_unflushed.set(i, 0);
+        }
+        IOException failure = null;
+        for (CSVDataLoader loader: m_loaders) try {
+            loader.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (failure == null) failure = new IOException("interrupted loader flush", e);
+        } catch (Exception e) {
+            if (failure == null) failure = new IOException("failed to flush loader", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flushes all the loaders first, so that all stripes drain together, and
+     * then closes them
+     *
+     * @throws IOException when the record sender failed, or any of the loaders
+     *   failed to flush. The loaders are closed nonetheless
+     */
+    public void close() throws IOException {
+        final long ackStart = System.nanoTime();
+        IOException failure = null;
+        try {
+            flush();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            stopSender();
+            if (m_retries != null) {
+                m_retries.settle();
+            }
+            closeAll(m_loaders);
+            m_profiler.record(StageProfiler.Stage.ACK, System.nanoTime() - ackStart);
+            m_closedMillis = System.currentTimeMillis();
+            snapshotClientStats();
+            LoadMonitor.closed(m_clusterKey, m_tableName, this);
+            if (m_lease != null && m_ownsLease) {
+                m_lease.release();
+            }
+            if (m_sizer != null) {
+                LOG.info("Closed VoltDB loaders with " + m_sizer);
+            }
+            LOG.info("Closed VoltDB loaders after " + getSubmitted() + " submitted rows, " + m_metrics);
+        }
+        if (failure == null && m_senderFailure != null) {
+            failure = new IOException("VoltDB record sender failed", m_senderFailure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Takes the per connection statistics of its clients, while they are still pooled
+     */
+    private void snapshotClientStats() {
+        for (Map.Entry<String, ClientStatsContext> entry: m_clientStats.entrySet()) try {
+            m_connectionStats.put(entry.getKey(), entry.getValue().fetch().getStatsByConnection());
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to take VoltDB client statistics", e);
+        }
+    }
+
+    private void stopSender() {
+        if (m_sender == null) return;
+        m_stopping = true;
+        m_ring.wakeConsumer();
+        try {
+            m_sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for the record sender to stop", e);
+        }
+    }
+
+    private static void closeAll(CSVDataLoader [] loaders) {
+        for (CSVDataLoader loader: loaders) if (loader != null) try {
+            loader.close();
+        } catch (Exception e) {
+            LOG.error("Failed to close VoltDB loader", e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock free, single producer and single consumer ring of records
+ * awaiting to be fed to a loader. Each slot holds a record, a snapshot of its
+ * field values, and the loader stripe it is destined to. The producer parks
+ * when the ring is full, and the consumer parks when it is empty. Each side
+ * wakes the other up when it makes room, or adds records respectively.
+ */
+class RecordRing {
+
+    /* upper bound to any park, as a safeguard against missed wake ups */
+    private final static long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final static int SPINS = 64;
+
+    /**
+     * Consumer side callback that receives the drained records
+     */
+    interface Sink {
+        void accept(VoltRecord record, Object [] fields, int stripe);
+    }
+
+    private final VoltRecord [] m_records;
+    private final Object [][] m_fields;
+    private final int [] m_stripes;
+    private final int m_mask;
+
+    /* next slot to read */
+    private final AtomicLong m_head = new AtomicLong(0);
+    /* next slot to write */
+    private final AtomicLong m_tail = new AtomicLong(0);
+
+    private volatile Thread m_parkedProducer;
+    private volatile Thread m_parkedConsumer;
+
+    /**
+     * @param capacity ring capacity. It is rounded up to the next power of two
+     */
+    RecordRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        m_records = new VoltRecord[size];
+        m_fields = new Object[size][];
+        m_stripes = new int[size];
+        m_mask = size - 1;
+    }
+
+    int capacity() {
+        return m_mask + 1;
+    }
+
+    int size() {
+        return (int)(m_tail.get() - m_head.get());
+    }
+
+    boolean isEmpty() {
+        return m_tail.get() == m_head.get();
+    }
+
+    /**
+     * Adds a record to the ring, parking the producer thread while the ring is full
+     *
+     * @param record a {@linkplain VoltRecord}
+     * @param fields a snapshot of its field values
+     * @param stripe destination loader stripe
+     * @throws InterruptedException when the producer is interrupted while parked
+     */
+    void put(VoltRecord record, Object [] fields, int stripe) throws InterruptedException {
+        final long tail = m_tail.get();
+        int spins = 0;
+        while (tail - m_head.get() > m_mask) {
+            if (++spins < SPINS) continue;
+            m_parkedProducer = Thread.currentThread();
+            if (tail - m_head.get() > m_mask) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            m_parkedProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        final int idx = (int)tail & m_mask;
+        m_records[idx] = record;
+        m_fields[idx] = fields;
+        m_stripes[idx] = stripe;
+        m_tail.set(tail + 1);
+
+        Thread consumer = m_parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Feeds up to the given maximum number of records to the given sink. Slots are
+     * handed back to the producer one at a time, even when the sink throws
+     *
+     * @param sink a record {@linkplain Sink}
+     * @param max maximum number of records to drain
+     * @return the number of drained records
+     */
+    int drain(Sink sink, int max) {
+        long head = m_head.get();
+        final int available = (int)Math.min(m_tail.get() - head, max);
+        for (int i = 0; i < available; ++i, ++head) {
+            final int idx = (int)head & m_mask;
+            try {
+                sink.accept(m_records[idx], m_fields[idx], m_stripes[idx]);
+            } finally {
+                m_records[idx] = null;
+                m_fields[idx] = null;
+                m_head.set(head + 1);
+
+                Thread producer = m_parkedProducer;
+                if (producer != null) {
+                    LockSupport.unpark(producer);
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Parks the consumer until records are added, it is woken up, or a
+     * short while passes
+     */
+    void awaitRecords() {
+        m_parkedConsumer = Thread.currentThread();
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        m_parkedConsumer = null;
+    }
+
+    /**
+     * Wakes up a parked consumer
+     */
+    void wakeConsumer() {
+        Thread consumer = m_parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Parks the producer until the consumer drains all the records in the ring
+     *
+     * @throws InterruptedException when the producer is interrupted while parked
+     */
+    void awaitDrained() throws InterruptedException {
+        while (!isEmpty()) {
+            m_parkedProducer = Thread.currentThread();
+            if (!isEmpty()) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            m_parkedProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
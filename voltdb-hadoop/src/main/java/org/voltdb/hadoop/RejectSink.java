@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Streams rows that VoltDB rejected to a per task file, in the table's text format,
+ * so that they may be fixed and reloaded. Each row's status is written on the same
+ * line number of a companion status file. Files are created on the first rejected
+ * row, and at most the configured number of rows are written
+ */
+public class RejectSink implements Closeable {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final Configuration m_conf;
+    private final Path m_rowsPath;
+    private final Path m_statusPath;
+    private final TextOutputAdapter m_adapter;
+    private final long m_maxRows;
+    private final StringBuilder m_sb = new StringBuilder(1024);
+
+    private Writer m_rows = null;
+    private Writer m_statuses = null;
+    private long m_written = 0L;
+
+    /**
+     * @param conf the job configuration
+     * @param dir the directory reject files are written to
+     * @param tableName the table the rows were rejected from
+     * @param attemptId the task attempt id, that tells apart the files of each task attempt
+     * @param adapter the adapter that formats the rejected rows
+     * @param maxRows how many rows it writes at most
+     */
+    public RejectSink(Configuration conf, Path dir, String tableName, String attemptId,
+            TextOutputAdapter adapter, long maxRows) {
+        m_conf = conf;
+        m_rowsPath = new Path(dir, tableName.trim().toUpperCase() + '-' + attemptId + ".rejects");
+        m_statusPath = new Path(dir, tableName.trim().toUpperCase() + '-' + attemptId + ".status");
+        m_adapter = adapter;
+        m_maxRows = maxRows;
+    }
+
+    /**
+     * Writes the given rejected record, and its status
+     *
+     * @param record a rejected record
+     * @param status the reason it was rejected
+     * @return false if it already wrote as many rows as it may
+     * @throws IOException when it fails to write either file
+     */
+    public boolean write(VoltRecord record, String status) throws IOException {
+        if (m_written >= m_maxRows) return false;
+        if (m_rows == null) {
+            open();
+        }
+        m_sb.setLength(0);
+        m_adapter.append(m_sb, record).append('\n');
+        m_rows.append(m_sb);
+
+        m_sb.setLength(0);
+        m_sb.append(status == null ? "" : status);
+        for (int i = 0; i < m_sb.length(); ++i) {
+            char c = m_sb.charAt(i);
+            if (c == '\n' || c == '\r') m_sb.setCharAt(i, ' ');
+        }
+        m_statuses.append(m_sb.append('\n'));
+        ++m_written;
+        return true;
+    }
+
+    private void open() throws IOException {
+        FileSystem fs = m_rowsPath.getFileSystem(m_conf);
+        m_rows = new BufferedWriter(new OutputStreamWriter(fs.create(m_rowsPath, true), "UTF-8"));
+        try {
+            m_statuses = new BufferedWriter(new OutputStreamWriter(fs.create(m_statusPath, true), "UTF-8"));
+        } catch (IOException e) {
+            m_rows.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return how many rows it wrote
+     */
+    public long getWritten() {
+        return m_written;
+    }
+
+    /**
+     * @return the path of the rejected rows file
+     */
+    public Path getPath() {
+        return m_rowsPath;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (m_rows == null) return;
+        try {
+            m_rows.close();
+        } finally {
+            m_statuses.close();
+        }
+        LOG.info("Wrote " + m_written + " rejected rows to " + m_rowsPath);
+    }
+}
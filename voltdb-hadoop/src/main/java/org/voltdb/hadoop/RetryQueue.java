@@ -0,0 +1,326 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import static com.google_voltpatches.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.utils.BulkLoaderErrorHandler;
+import org.voltdb.utils.RowWithMetaData;
+
+/**
+ * A loader error handler that sets apart rows which failed with a transient status,
+ * like a lost connection, or an unavailable server, and holds them in a bounded queue
+ * until they are due for resubmission. Each row waits for an exponentially growing,
+ * jittered, back off. Rows that failed otherwise, ran out of attempts, or did not fit
+ * in the queue are handed to the delegate handler as permanent faults.
+ * <p>
+ * Note that a row whose connection was lost may have been inserted nonetheless, so
+ * retries are best combined with upserts.
+ */
+public class RetryQueue implements BulkLoaderErrorHandler {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final static Random m_random = new Random();
+
+    private final Policy m_policy;
+    private final BulkLoaderErrorHandler m_delegate;
+    private final PriorityQueue<Row> m_queue;
+    private volatile int m_size = 0;
+
+    private final AtomicLong m_retries = new AtomicLong(0L);
+    private final AtomicLong m_exhausted = new AtomicLong(0L);
+
+    /**
+     * Retry policy: which statuses are retried, how many times, and how long
+     * rows wait between attempts
+     */
+    public final static class Policy {
+        private final boolean [] m_retryable = new boolean[256];
+        private final int m_maxAttempts;
+        private final long m_backoffMillis;
+        private final long m_maxBackoffMillis;
+        private final int m_queueSize;
+
+        /**
+         * @param statuses retryable {@linkplain ClientResponse} status names, or numbers
+         * @param maxAttempts how many times a row is retried
+         * @param backoffMillis the back off before the first retry
+         * @param maxBackoffMillis back off cap
+         * @param queueSize how many rows may wait for a retry at once
+         */
+        public Policy(String [] statuses, int maxAttempts, long backoffMillis, long maxBackoffMillis, int queueSize) {
+            checkArgument(maxAttempts > 0, "non positive max attempts %s", maxAttempts);
+            checkArgument(queueSize > 0, "non positive queue size %s", queueSize);
+            for (String status: statuses) {
+                m_retryable[statusFor(status) & 0xff] = true;
+            }
+            m_maxAttempts = maxAttempts;
+            m_backoffMillis = Math.max(1L, backoffMillis);
+            m_maxBackoffMillis = Math.max(m_backoffMillis, maxBackoffMillis);
+            m_queueSize = queueSize;
+        }
+
+        /**
+         * @param response a failed row's response. It is null for rows that failed
+         *   before they were sent
+         * @return whether the row failed with a retryable status
+         */
+        public boolean isRetryable(ClientResponse response) {
+            return response != null && m_retryable[response.getStatus() & 0xff];
+        }
+
+        public int getMaxAttempts() {
+            return m_maxAttempts;
+        }
+
+        /**
+         * @param attempt the upcoming attempt, starting at one
+         * @return how many milliseconds to wait before the given attempt
+         */
+        public long backoffMillis(int attempt) {
+            return RetryQueue.backoffMillis(attempt, m_backoffMillis, m_maxBackoffMillis);
+        }
+    }
+
+    /**
+     * A row that waits for a retry, with what it takes to resubmit it. Rows are
+     * allocated only once they fail: while in flight, a row is the fields array
+     * that its loader was fed, and a tag packed in its {@linkplain RowWithMetaData}
+     * line number
+     */
+    final static class Row implements Comparable<Row> {
+        final Object [] m_fields;
+        final int m_stripe;
+        final int m_attempt;
+        long m_dueNanos;
+
+        Row(Object [] fields, int stripe, int attempt) {
+            m_fields = fields;
+            m_stripe = stripe;
+            m_attempt = attempt;
+        }
+
+        @Override
+        public int compareTo(Row o) {
+            return m_dueNanos < o.m_dueNanos ? -1 : (m_dueNanos == o.m_dueNanos ? 0 : 1);
+        }
+    }
+
+    /**
+     * Packs a row's stripe, and attempt in a {@linkplain RowWithMetaData} line number
+     *
+     * @param stripe the stripe the row is fed to
+     * @param attempt the row's attempt, starting at one
+     * @return a row tag
+     */
+    static long tagFor(int stripe, int attempt) {
+        return ((long)attempt << 32) | (stripe & 0xffffffffL);
+    }
+
+    static int stripeOf(long tag) {
+        return (int)tag;
+    }
+
+    /**
+     * @param tag a row tag, or the -1 line number of untagged rows
+     * @return the tagged attempt, or zero for untagged rows
+     */
+    static int attemptOf(long tag) {
+        return tag < 0L ? 0 : (int)(tag >>> 32);
+    }
+
+    /**
+     * @param policy a retry {@linkplain Policy}
+     * @param delegate the handler of permanent faults
+     */
+    public RetryQueue(Policy policy, BulkLoaderErrorHandler delegate) {
+        checkArgument(policy != null, "null policy");
+        checkArgument(delegate != null, "null delegate");
+        m_policy = policy;
+        m_delegate = delegate;
+        m_queue = new PriorityQueue<Row>(Math.min(policy.m_queueSize, 64));
+    }
+
+    /**
+     * Queues rows that failed with a retryable status, and hands the others
+     * to the delegate handler
+     */
+    @Override
+    public boolean handleError(RowWithMetaData rmd, ClientResponse cr, String error) {
+        final int attempt = rmd != null ? attemptOf(rmd.lineNumber) : 0;
+        if (m_policy.isRetryable(cr) && attempt > 0 && rmd.rawLine instanceof Object[]) {
+            if (attempt < m_policy.m_maxAttempts) {
+                Row retry = new Row((Object[])rmd.rawLine, stripeOf(rmd.lineNumber), attempt + 1);
+                retry.m_dueNanos = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(m_policy.backoffMillis(retry.m_attempt));
+                synchronized (m_queue) {
+                    if (m_queue.size() < m_policy.m_queueSize) {
+                        m_queue.add(retry);
+                        m_size = m_queue.size();
+                        return true;
+                    }
+                }
+                LOG.warn("Retry queue is full, row fails with " + error);
+            }
+            m_exhausted.incrementAndGet();
+        }
+        return m_delegate.handleError(rmd, cr, error);
+    }
+
+    @Override
+    public boolean hasReachedErrorLimit() {
+        return m_delegate.hasReachedErrorLimit();
+    }
+
+    /**
+     * @return whether no rows wait for a retry
+     */
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /**
+     * Takes the oldest row due for a retry, if any, and counts it as retried
+     *
+     * @return a row, or null if none is due
+     */
+    Row poll() {
+        if (m_size == 0) return null;
+        Row row;
+        synchronized (m_queue) {
+            row = m_queue.peek();
+            if (row == null || row.m_dueNanos - System.nanoTime() > 0L) {
+                return null;
+            }
+            m_queue.poll();
+            m_size = m_queue.size();
+        }
+        m_retries.incrementAndGet();
+        return row;
+    }
+
+    /**
+     * Empties the queue, and hands its rows over to the delegate as faults that
+     * ran out of retries
+     *
+     * @param error the error reported for each of the rows
+     * @return how many rows were handed over
+     */
+    int drain(String error) {
+        List<Row> rows;
+        synchronized (m_queue) {
+            rows = new ArrayList<Row>(m_queue);
+            m_queue.clear();
+            m_size = 0;
+        }
+        Collections.sort(rows);
+        for (Row row: rows) {
+            m_exhausted.incrementAndGet();
+            m_delegate.handleError(new RowWithMetaData(row.m_fields, tagFor(row.m_stripe, row.m_attempt)), null, error);
+        }
+        return rows.size();
+    }
+
+    /**
+     * Waits until a row is due for a retry, for at most the given time
+     *
+     * @param maxMillis longest wait
+     * @throws InterruptedException when interrupted while waiting
+     */
+    void awaitDue(long maxMillis) throws InterruptedException {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        synchronized (m_queue) {
+            Row row = m_queue.peek();
+            if (row != null) {
+                waitNanos = Math.min(waitNanos, row.m_dueNanos - System.nanoTime());
+            }
+        }
+        if (waitNanos > 0L) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return how many rows were resubmitted
+     */
+    public long getRetries() {
+        return m_retries.get();
+    }
+
+    /**
+     * @return how many rows failed with a retryable status, but could not be retried
+     */
+    public long getExhausted() {
+        return m_exhausted.get();
+    }
+
+    /**
+     * Exponential back off with jitter: the wait before the given attempt is picked
+     * at random between half, and all of the exponentially grown back off
+     *
+     * @param attempt the upcoming attempt, starting at one
+     * @param backoffMillis the back off before the first attempt
+     * @param maxBackoffMillis back off cap
+     * @return milliseconds to wait
+     */
+    public static long backoffMillis(int attempt, long backoffMillis, long maxBackoffMillis) {
+        long ceiling = backoffMillis;
+        for (int i = 1; i < attempt && ceiling < maxBackoffMillis; ++i) {
+            ceiling <<= 1;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMillis);
+        final long half = ceiling >> 1;
+        return half + (long)(m_random.nextDouble() * (ceiling - half + 1));
+    }
+
+    /**
+     * @param status a {@linkplain ClientResponse} status name, like CONNECTION_LOST, or number
+     * @return the status byte
+     */
+    static byte statusFor(String status) {
+        final String name = status.trim().toUpperCase();
+        try {
+            return Byte.parseByte(name);
+        } catch (NumberFormatException notANumber) {
+        }
+        try {
+            return ClientResponse.class.getField(name).getByte(null);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("unknown client response status " + status);
+        }
+    }
+}
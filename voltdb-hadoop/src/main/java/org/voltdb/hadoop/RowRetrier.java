@@ -0,0 +1,157 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.voltdb.hadoop.VoltConfiguration.Config;
+import org.voltdb.utils.BulkLoaderErrorHandler;
+
+/**
+ * Resubmits the rows a {@linkplain RetryQueue} holds to their stripe's loader, once
+ * their back off elapses, on the thread that feeds the loaders. When the loaders
+ * close, it settles the pending retries: it waits for all the loaders' rows to
+ * complete, and keeps resubmitting rows as they come due, until none are left.
+ */
+final class RowRetrier {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final static long SETTLE_POLL_MILLIS = 10L;
+
+    /**
+     * The striped loaders that rows are resubmitted to
+     */
+    interface Stripes {
+        /**
+         * Feeds a row's field values to the given stripe's loader
+         *
+         * @param fields field values
+         * @param stripe the row's stripe
+         * @param attempt the row's attempt, starting at one
+         * @throws IOException when it fails to feed the row
+         */
+        void feed(Object [] fields, int stripe, int attempt) throws IOException;
+
+        /**
+         * @return whether all the rows fed to the loaders completed
+         */
+        boolean isCompleted();
+
+        /**
+         * Flushes all the loaders' pending batches
+         *
+         * @throws IOException when any of the loaders fail to flush
+         */
+        void flush() throws IOException;
+    }
+
+    private final RetryQueue m_queue;
+    private final Stripes m_stripes;
+
+    /**
+     * @param queue a {@linkplain RetryQueue} that handles the loaders' errors
+     * @param stripes the loaders rows are resubmitted to
+     */
+    RowRetrier(RetryQueue queue, Stripes stripes) {
+        m_queue = queue;
+        m_stripes = stripes;
+    }
+
+    /**
+     * @param config a {@linkplain Config}
+     * @param errorHandler the handler of permanent faults
+     * @return a retry queue that delegates to the given error handler, or null
+     *   if retries are not configured
+     */
+    static RetryQueue queueFor(Config config, BulkLoaderErrorHandler errorHandler) {
+        RetryQueue.Policy policy = config.getRetryPolicy();
+        return policy == null ? null : new RetryQueue(policy, errorHandler);
+    }
+
+    /**
+     * Feeds the rows whose retry back off elapsed to their loaders
+     *
+     * @throws IOException when it fails to feed a row
+     */
+    void resubmitDue() throws IOException {
+        for (RetryQueue.Row row = m_queue.poll(); row != null; row = m_queue.poll()) {
+            m_stripes.feed(row.m_fields, row.m_stripe, row.m_attempt);
+        }
+    }
+
+    /**
+     * Waits for all the loaders' rows to complete, and resubmits rows as they come
+     * due for a retry, until none are left. It gives up when no row completes, nor
+     * is resubmitted, for as long as the default client timeout, and then hands the
+     * rows still waiting for a retry over to the fault handler, as exhausted retries
+     */
+    void settle() {
+        final long patienceNanos = TimeUnit.MILLISECONDS.toNanos(VoltConfiguration.TIMEOUT_DFLT);
+        long deadline = System.nanoTime() + patienceNanos;
+        long retries = m_queue.getRetries();
+        try {
+            while (!m_queue.isEmpty() || !m_stripes.isCompleted()) {
+                resubmitDue();
+                if (m_queue.getRetries() != retries) {
+                    retries = m_queue.getRetries();
+                    deadline = System.nanoTime() + patienceNanos;
+                    m_stripes.flush();
+                } else if (System.nanoTime() - deadline > 0L) {
+                    LOG.warn("Gave up waiting for VoltDB loaders to complete their rows, and retries");
+                    return;
+                }
+                m_queue.awaitDue(SETTLE_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for row retries", e);
+        } catch (IOException e) {
+            LOG.error("Failed to resubmit rows for retry", e);
+        } finally {
+            int abandoned = m_queue.drain("gave up waiting to retry row");
+            if (abandoned > 0) {
+                LOG.warn("Abandoned " + abandoned + " rows waiting for a retry");
+            }
+        }
+    }
+
+    /**
+     * @return how many rows were resubmitted after they failed with a retryable status
+     */
+    long getRetries() {
+        return m_queue.getRetries();
+    }
+
+    /**
+     * @return how many rows failed with a retryable status, but could not be retried
+     */
+    long getExhausted() {
+        return m_queue.getExhausted();
+    }
+}
@@ -0,0 +1,76 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.utils.BulkLoaderErrorHandler;
+import org.voltdb.utils.RowWithMetaData;
+
+/**
+ * Checks records against their table's column constraints before they are fed to
+ * the loaders. Records that violate them are handed to an error handler, as graceful
+ * failures, on the calling thread, and never reach a loader's batch.
+ */
+final class RowScreen {
+
+    private final RowValidator m_validator;
+    private final BulkLoaderErrorHandler m_rejects;
+
+    /* incremented by the task thread only, and read by heartbeat, and monitoring threads */
+    private volatile long m_rejected = 0L;
+
+    /**
+     * @param validator a {@linkplain RowValidator}
+     * @param rejects the handler of rejected records
+     */
+    RowScreen(RowValidator validator, BulkLoaderErrorHandler rejects) {
+        m_validator = validator;
+        m_rejects = rejects;
+    }
+
+    /**
+     * @param record a {@linkplain VoltRecord}
+     * @return true if the record may be loaded, or false if it was rejected
+     */
+    boolean admits(VoltRecord record) {
+        final String violation = m_validator.validate(record);
+        if (violation == null) {
+            return true;
+        }
+        ++m_rejected;
+        m_rejects.handleError(new RowWithMetaData(record, -1),
+                new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE, new VoltTable[0], violation), violation);
+        return false;
+    }
+
+    /**
+     * @return how many records were rejected
+     */
+    long getRejected() {
+        return m_rejected;
+    }
+}
@@ -0,0 +1,224 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.math.BigDecimal;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.VoltDecimalHelper;
+
+/**
+ * Checks records against their destination table's column constraints before they
+ * are fed to a loader, so that rows the server would reject are set apart locally,
+ * instead of failing, and replaying, the batch they would have been sent with.
+ * <p>
+ * It checks the number of fields, NULLs in NOT NULL columns, the length of strings,
+ * and byte arrays, integers outside their column type's range, and decimals that
+ * do not fit VoltDB's fixed decimal precision and scale. Values of any other kind
+ * are left for the loader to convert.
+ */
+public class RowValidator {
+
+    private final static int DECIMAL_INTEGER_DIGITS =
+            VoltDecimalHelper.kDefaultPrecision - VoltDecimalHelper.kDefaultScale;
+
+    /**
+     * Destination table column constraints, as read from the catalog
+     */
+    public final static class Column {
+        private final static Pattern SPEC = Pattern.compile("(\\w+)(?:\\((\\d+)\\))?( NOT NULL)?");
+
+        private final VoltType m_type;
+        private final int m_size;
+        private final boolean m_nullable;
+
+        /**
+         * @param type column type
+         * @param size maximum length of variable length columns, or zero if unknown
+         * @param nullable whether the column accepts NULLs
+         */
+        public Column(VoltType type, int size, boolean nullable) {
+            m_type = type;
+            m_size = type.isVariableLength() ? Math.max(0, size) : 0;
+            m_nullable = nullable;
+        }
+
+        public VoltType getType() {
+            return m_type;
+        }
+
+        public int getSize() {
+            return m_size;
+        }
+
+        public boolean isNullable() {
+            return m_nullable;
+        }
+
+        /**
+         * Parses a column specification, as formatted by {@link #toString()}
+         *
+         * @param spec a column specification
+         * @return a column
+         * @throws IllegalArgumentException if the specification is unreadable
+         */
+        public static Column valueOf(String spec) {
+            Matcher mtc = SPEC.matcher(spec.trim());
+            if (!mtc.matches()) {
+                throw new IllegalArgumentException("unreadable column specification: " + spec);
+            }
+            return new Column(VoltType.valueOf(mtc.group(1)),
+                    mtc.group(2) == null ? 0 : Integer.parseInt(mtc.group(2)), mtc.group(3) == null);
+        }
+
+        /**
+         * @return the column type name, followed by its size, if known, and by
+         *   NOT NULL if it does not accept NULLs
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(32).append(m_type.name());
+            if (m_size > 0) sb.append('(').append(m_size).append(')');
+            if (!m_nullable) sb.append(" NOT NULL");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @param types column types
+     * @return nullable columns of the given types, with unknown sizes
+     */
+    public static Column [] columnsFor(VoltType [] types) {
+        Column [] columns = new Column[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            columns[i] = new Column(types[i], 0, true);
+        }
+        return columns;
+    }
+
+    /**
+     * @param columns table columns
+     * @return the given columns' types
+     */
+    public static VoltType [] typesOf(Column [] columns) {
+        VoltType [] types = new VoltType[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            types[i] = columns[i].getType();
+        }
+        return types;
+    }
+
+    private final String m_tableName;
+    private final Column [] m_columns;
+
+    /**
+     * @param tableName destination table name
+     * @param columns destination table columns
+     */
+    public RowValidator(String tableName, Column [] columns) {
+        m_tableName = tableName;
+        m_columns = columns;
+    }
+
+    public String getTableName() {
+        return m_tableName;
+    }
+
+    /**
+     * Checks the given record's fields against the table's column constraints
+     *
+     * @param record a {@linkplain VoltRecord}
+     * @return a description of the first violated constraint, or null if none is
+     */
+    public String validate(VoltRecord record) {
+        if (record.size() != m_columns.length) {
+            return "Table " + m_tableName + " has " + m_columns.length + " columns, but the record has "
+                    + record.size() + " fields";
+        }
+        for (int i = 0; i < m_columns.length; ++i) {
+            String violation = validate(m_columns[i], record.get(i));
+            if (violation != null) {
+                return "Column " + (i + 1) + " of table " + m_tableName + " " + violation;
+            }
+        }
+        return null;
+    }
+
+    private static String validate(Column column, Object value) {
+        if (value == null) {
+            return column.m_nullable ? null : "does not accept NULL";
+        }
+        switch (column.m_type) {
+        case TINYINT:
+            return outOfRange(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        case SMALLINT:
+            return outOfRange(value, Short.MIN_VALUE, Short.MAX_VALUE);
+        case INTEGER:
+            return outOfRange(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        case BIGINT:
+            return outOfRange(value, Long.MIN_VALUE, Long.MAX_VALUE);
+        case STRING:
+            if (column.m_size > 0 && value instanceof String && ((String)value).length() > column.m_size) {
+                return "is at most " + column.m_size + " long, but the value is " + ((String)value).length() + " characters long";
+            }
+            return null;
+        case VARBINARY:
+            if (column.m_size > 0 && value instanceof byte[] && ((byte[])value).length > column.m_size) {
+                return "is at most " + column.m_size + " long, but the value is " + ((byte[])value).length + " bytes long";
+            }
+            return null;
+        case DECIMAL:
+            if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal)value;
+                if (decimal.precision() - decimal.scale() > DECIMAL_INTEGER_DIGITS) {
+                    return "holds at most " + DECIMAL_INTEGER_DIGITS + " integer digits, but the value has "
+                            + (decimal.precision() - decimal.scale());
+                }
+                if (decimal.scale() > VoltDecimalHelper.kDefaultScale && !VoltDecimalHelper.isRoundingEnabled()) {
+                    return "holds at most " + VoltDecimalHelper.kDefaultScale + " decimal digits, but the value has "
+                            + decimal.scale();
+                }
+            }
+            return null;
+        default:
+            return null;
+        }
+    }
+
+    /*
+     * The minimum value of each integer type is reserved for NULL
+     */
+    private static String outOfRange(Object value, long min, long max) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            long number = ((Number)value).longValue();
+            if (number <= min || number > max) {
+                return "value " + number + " is out of range";
+            }
+        }
+        return null;
+    }
+}
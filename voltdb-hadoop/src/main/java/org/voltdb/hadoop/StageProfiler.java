@@ -0,0 +1,228 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * An optional, sampling profiler of the load pipeline stages. When enabled, one in
+ * every configured number of events of each stage is timed, on each thread, both in
+ * wall clock, and in thread CPU time, and the totals are extrapolated from the sampled
+ * events. Network, and acknowledgement stages are waits, for which only wall clock
+ * time is measured, on every event:
+ * <ul>
+ * <li>{@link Stage#PARSE}: text lines parsed into records</li>
+ * <li>{@link Stage#CONVERT}: Pig tuples, or Hive rows converted into records</li>
+ * <li>{@link Stage#SERIALIZE}: records serialized, and deserialized as Writables</li>
+ * <li>{@link Stage#ENQUEUE}: rows fed to the loaders, including backpressure waits</li>
+ * <li>{@link Stage#NETWORK}: batch round trips, summed across concurrent batches</li>
+ * <li>{@link Stage#ACK}: writers waiting on close for their rows to be acknowledged</li>
+ * </ul>
+ * Each record writer, and the loader mapper, opens its own profiler with its job's
+ * sampling rate, and binds it to the task thread that opened it. Stages that run in
+ * the task thread, like parsing, and conversions, are recorded by the profiler bound
+ * to it, while a writer's loaders record their stages with the profiler that was bound
+ * when they were opened. Writers drain only their own profiler on close, so that in
+ * JVMs that run several tasks at once, such as Hive, and Pig servers, each job profiles
+ * only if it asks to, and each task publishes only its own stage times. Until a JVM
+ * opens an enabled profiler, each probe costs a volatile read.
+ */
+public final class StageProfiler {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    /** Counter group of the published stage times */
+    public final static String GROUP = "VoltDB Stage Profile";
+
+    public enum Stage {
+        PARSE, CONVERT, SERIALIZE, ENQUEUE, NETWORK, ACK
+    }
+
+    /** Token of events that are not sampled */
+    public final static long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final static int STAGES = Stage.values().length;
+    private final static ThreadMXBean m_threads = ManagementFactory.getThreadMXBean();
+    private final static boolean m_cpuTimed = m_threads.isCurrentThreadCpuTimeSupported();
+
+    /** The profiler of tasks that do not profile */
+    public final static StageProfiler DISABLED = new StageProfiler(0);
+
+    /* whether this JVM ever opened an enabled profiler */
+    private static volatile boolean m_used = false;
+    private final static ThreadLocal<StageProfiler> m_current = new ThreadLocal<StageProfiler>();
+
+    private final int m_every;
+    private final AtomicLongArray m_wallNanos = new AtomicLongArray(STAGES);
+    private final AtomicLongArray m_cpuNanos = new AtomicLongArray(STAGES);
+    private final AtomicLongArray m_events = new AtomicLongArray(STAGES);
+
+    /*
+     * Per thread, and stage: events since the last sample, and the sample's CPU time start
+     */
+    private final ThreadLocal<long[]> m_state = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[STAGES << 1];
+        }
+    };
+
+    /**
+     * @param every sample one in every given number of events. Zero disables the profiler
+     */
+    StageProfiler(int every) {
+        m_every = Math.max(0, every);
+    }
+
+    /**
+     * Opens a profiler with the given configuration's
+     * {@link VoltConfiguration#PROFILE_SAMPLE_EVERY_PROP} sampling rate, and binds it
+     * to the calling thread. It is {@link #DISABLED} if the configuration does not set it
+     *
+     * @param conf job configuration
+     * @return the opened profiler
+     */
+    public static StageProfiler open(Configuration conf) {
+        final int every = conf.getInt(VoltConfiguration.PROFILE_SAMPLE_EVERY_PROP, 0);
+        final StageProfiler profiler = every > 0 ? new StageProfiler(every) : DISABLED;
+        if (every > 0) {
+            m_used = true;
+        }
+        m_current.set(profiler);
+        return profiler;
+    }
+
+    /**
+     * @return the profiler bound to the calling thread, or {@link #DISABLED} if none is
+     */
+    public static StageProfiler current() {
+        if (!m_used) return DISABLED;
+        final StageProfiler profiler = m_current.get();
+        return profiler != null ? profiler : DISABLED;
+    }
+
+    /**
+     * Unbinds it from the calling thread, if it is bound to it
+     */
+    public void release() {
+        if (m_current.get() == this) {
+            m_current.remove();
+        }
+    }
+
+    public boolean isEnabled() {
+        return m_every > 0;
+    }
+
+    private static long cpuNanos() {
+        return m_cpuTimed ? m_threads.getCurrentThreadCpuTime() : 0L;
+    }
+
+    /**
+     * Marks the start of an event of the given stage
+     *
+     * @param stage a {@linkplain Stage}
+     * @return a token to hand to {@link #stop(Stage, long)}, that is {@link #NOT_SAMPLED}
+     *   unless the event is sampled
+     */
+    public long start(Stage stage) {
+        if (m_every == 0) return NOT_SAMPLED;
+        final long [] state = m_state.get();
+        final int idx = stage.ordinal() << 1;
+        if (++state[idx] < m_every) return NOT_SAMPLED;
+        state[idx] = 0L;
+        state[idx + 1] = cpuNanos();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of an event of the given stage
+     *
+     * @param stage a {@linkplain Stage}
+     * @param token the token returned by its {@link #start(Stage)}
+     */
+    public void stop(Stage stage, long token) {
+        if (token == NOT_SAMPLED) return;
+        final long wall = System.nanoTime() - token;
+        final long cpu = cpuNanos() - m_state.get()[(stage.ordinal() << 1) + 1];
+        final int idx = stage.ordinal();
+        m_wallNanos.addAndGet(idx, wall * m_every);
+        m_cpuNanos.addAndGet(idx, cpu * m_every);
+        m_events.addAndGet(idx, m_every);
+    }
+
+    /**
+     * Records the wall clock time of an event of a waiting stage
+     *
+     * @param stage a {@linkplain Stage}
+     * @param wallNanos wall clock time in nanoseconds
+     */
+    public void record(Stage stage, long wallNanos) {
+        if (m_every == 0) return;
+        m_wallNanos.addAndGet(stage.ordinal(), wallNanos);
+        m_events.incrementAndGet(stage.ordinal());
+    }
+
+    /**
+     * Takes, and resets the stage times it accumulated so far, and logs them
+     *
+     * @return counters by name, like PARSE_WALL_MILLIS, for the stages that had events
+     */
+    public Map<String, Long> drain() {
+        final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+        if (m_every == 0) return counters;
+        final StringBuilder summary = new StringBuilder(256).append("VoltDB load stage profile:");
+        for (Stage stage: Stage.values()) {
+            final int idx = stage.ordinal();
+            final long events = m_events.getAndSet(idx, 0L);
+            final long wall = TimeUnit.NANOSECONDS.toMillis(m_wallNanos.getAndSet(idx, 0L));
+            final long cpu = TimeUnit.NANOSECONDS.toMillis(m_cpuNanos.getAndSet(idx, 0L));
+            if (events == 0L) continue;
+            counters.put(stage + "_EVENTS", events);
+            counters.put(stage + "_WALL_MILLIS", wall);
+            summary.append(' ').append(stage.name().toLowerCase(Locale.ROOT))
+                .append(" [").append(events).append(" events, wall ").append(wall).append(" ms");
+            if (stage != Stage.NETWORK && stage != Stage.ACK) {
+                counters.put(stage + "_CPU_MILLIS", cpu);
+                summary.append(", cpu ").append(cpu).append(" ms");
+            }
+            summary.append(']');
+        }
+        if (!counters.isEmpty()) {
+            LOG.info(summary);
+        }
+        return counters;
+    }
+}
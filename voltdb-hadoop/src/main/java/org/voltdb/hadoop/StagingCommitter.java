@@ -0,0 +1,240 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.voltdb.client.ClientImpl;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcCallException;
+import org.voltdb.hadoop.VoltConfiguration.Config;
+
+/**
+ * Commit protocol for task attempts that load into a staging table. Rows are tagged
+ * with their task attempt id, held in the staging table's last column. Committing
+ * an attempt copies its rows into the destination table and deletes them from the
+ * staging table in one transaction. Aborting an attempt only deletes them.
+ * Duplicate speculative attempts therefore never insert rows twice.
+ * <p>
+ * Staging, and destination tables should be partitioned on the same column, so that
+ * the copy runs in a single pass over the staging table's partitions.
+ * <p>
+ * As an attempt's rows are promoted in a single transaction, they are bound by VoltDB's
+ * per transaction temporary table limit (the deployment's {@code temptables maxsize}).
+ * An attempt whose staged rows exceed it fails to commit, and its task is retried with
+ * the same outcome. Jobs that load large volumes should split them across more tasks,
+ * with smaller input splits, or more reducers, or raise the limit.
+ * <p>
+ * The rows of uncommitted attempts are discarded when the job ends. A killed speculative
+ * attempt may however still be flushing its loaders at that point, and stage rows after
+ * its job's clean up. Those are never promoted, and the next job that loads through the
+ * same staging table discards them when it is set up, along with any other rows of
+ * finished jobs. A staging table must therefore only be loaded by one job at a time.
+ */
+public class StagingCommitter {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private final Config m_config;
+
+    /**
+     * @param conf a {@linkplain VoltConfiguration} with a staging table
+     */
+    public StagingCommitter(VoltConfiguration conf) {
+        m_config = conf.getConfig();
+    }
+
+    public boolean isStaged() {
+        return m_config.isStaged();
+    }
+
+    /**
+     * @param conf a job configuration
+     * @return true if the job loads through a staging table
+     */
+    public static boolean isStaged(Configuration conf) {
+        return !VoltConfiguration.isNullOrEmpty.apply(conf.get(VoltConfiguration.STAGING_TABLE_PROP));
+    }
+
+    /**
+     * Discards the staged rows of finished jobs, which are the ones of all the
+     * jobs other than the given one. They are left behind by attempts that were
+     * still flushing when their job committed, or aborted
+     *
+     * @param jobId the id of the job being set up
+     * @throws IOException when the deletion fails
+     */
+    public void setupJob(String jobId) throws IOException {
+        delete(m_config, attemptPrefix(jobId), Match.OTHER_JOBS, "finished jobs'");
+    }
+
+    /**
+     * Promotes the given attempt's rows into the destination table
+     *
+     * @param attemptId a task attempt id
+     * @throws IOException when the promotion fails
+     */
+    public void commit(String attemptId) throws IOException {
+        ClientImpl client = ClientPool.acquire(m_config, 0);
+        try {
+            String [] staged = VoltConfiguration.getTableColumnNames(client, m_config.getStagingTableName());
+            String [] target = VoltConfiguration.getTableColumnNames(client, m_config.getTableName());
+            String sql = commitStatement(m_config, staged, target, attemptId);
+            ClientResponse cr = client.callProcedure("@AdHoc", sql);
+            LOG.info("Committed task attempt " + attemptId + " rows from staging table "
+                    + m_config.getStagingTableName() + " into " + m_config.getTableName()
+                    + ": " + cr.getResults()[0].asScalarLong() + " rows");
+        } catch (ProcCallException e) {
+            ClientPool.invalidateOnConnectionFailure(client, e);
+            throw new IOException("Failed to commit task attempt " + attemptId + " staged rows", e);
+        } finally {
+            ClientPool.release(client);
+        }
+    }
+
+    /**
+     * Discards the given attempt's staged rows
+     *
+     * @param attemptId a task attempt id
+     * @throws IOException when the deletion fails
+     */
+    public void abort(String attemptId) throws IOException {
+        delete(m_config, attemptId, Match.ATTEMPT, "task attempt " + attemptId);
+    }
+
+    /**
+     * Discards the staged rows of all the given job's attempts, including
+     * those whose tasks failed without being aborted
+     *
+     * @param jobId a job id
+     * @throws IOException when the deletion fails
+     */
+    public void abortJob(String jobId) throws IOException {
+        delete(m_config, attemptPrefix(jobId), Match.JOB, "job " + jobId);
+    }
+
+    /**
+     * Discards the staged rows left behind by the given job's attempts once it
+     * committed, such as those of attempts that were killed without being aborted
+     *
+     * @param jobId a job id
+     * @throws IOException when the deletion fails
+     */
+    public void commitJob(String jobId) throws IOException {
+        delete(m_config, attemptPrefix(jobId), Match.JOB, "uncommitted job " + jobId);
+    }
+
+    /*
+     * Which staged rows a deletion matches, given an attempt id, or a job's attempt prefix
+     */
+    enum Match { ATTEMPT, JOB, OTHER_JOBS }
+
+    private static void delete(Config config, String attempt, Match match, String what) throws IOException {
+        ClientImpl client = ClientPool.acquire(config, 0);
+        try {
+            String [] staged = VoltConfiguration.getTableColumnNames(client, config.getStagingTableName());
+            ClientResponse cr = client.callProcedure("@AdHoc", deleteStatement(config, staged, attempt, match));
+            LOG.info("Discarded " + what + " rows from staging table " + config.getStagingTableName()
+                    + ": " + cr.getResults()[0].asScalarLong() + " rows");
+        } catch (ProcCallException e) {
+            ClientPool.invalidateOnConnectionFailure(client, e);
+            throw new IOException("Failed to discard " + what + " staged rows", e);
+        } finally {
+            ClientPool.release(client);
+        }
+    }
+
+    /*
+     * Deletes the rows of the given attempt, of all the attempts whose id starts
+     * with the given prefix, or of all the others. Prefixes are compared with SUBSTRING,
+     * rather than LIKE, as attempt ids are full of underscores, which LIKE takes as wildcards
+     */
+    static String deleteStatement(Config config, String [] staged, String attempt, Match match)
+            throws IOException {
+        checkStaged(config, staged);
+        final String attemptColumn = staged[staged.length-1];
+        final String prefix = "SUBSTRING(" + attemptColumn + ", 1, " + attempt.length() + ")";
+        final String where;
+        switch (match) {
+        case JOB:
+            where = prefix + " = " + quote(attempt);
+            break;
+        case OTHER_JOBS:
+            where = prefix + " <> " + quote(attempt);
+            break;
+        default:
+            where = attemptColumn + " = " + quote(attempt);
+        }
+        return "DELETE FROM " + config.getStagingTableName() + " WHERE " + where + ";";
+    }
+
+    /*
+     * Builds an ad hoc batch, which runs as one transaction, that copies the attempt's rows
+     * into the destination table, and then deletes them from the staging table
+     */
+    static String commitStatement(Config config, String [] staged, String [] target, String attemptId)
+            throws IOException {
+        checkStaged(config, staged);
+        if (staged.length != target.length + 1) {
+            throw new IOException("Staging table " + config.getStagingTableName()
+                    + " must have the columns of " + config.getTableName() + " followed by an attempt id column");
+        }
+        final String attemptColumn = staged[staged.length-1];
+        final String where = " WHERE " + attemptColumn + " = " + quote(attemptId);
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(config.isUpsert() ? "UPSERT INTO " : "INSERT INTO ").append(config.getTableName()).append(" (");
+        for (int i = 0; i < target.length; ++i) {
+            sb.append(i > 0 ? ", " : "").append(target[i]);
+        }
+        sb.append(") SELECT ");
+        for (int i = 0; i < target.length; ++i) {
+            sb.append(i > 0 ? ", " : "").append(staged[i]);
+        }
+        sb.append(" FROM ").append(config.getStagingTableName()).append(where).append(";\n");
+        sb.append("DELETE FROM ").append(config.getStagingTableName()).append(where).append(';');
+        return sb.toString();
+    }
+
+    private static void checkStaged(Config config, String [] staged) throws IOException {
+        if (staged.length < 2) {
+            throw new IOException("Staging table " + config.getStagingTableName() + " does not exist");
+        }
+    }
+
+    /*
+     * Task attempt ids of job_<cluster>_<job> have the attempt_<cluster>_<job>_ prefix
+     */
+    static String attemptPrefix(String jobId) {
+        return "attempt_" + (jobId.startsWith("job_") ? jobId.substring("job_".length()) : jobId) + "_";
+    }
+
+    static String quote(String literal) {
+        return "'" + literal.replace("'", "''") + "'";
+    }
+}
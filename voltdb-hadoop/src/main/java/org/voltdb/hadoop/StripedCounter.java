@@ -0,0 +1,82 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads increment without contending on the same cache line.
+ * Each thread adds to one of several cells, picked by its thread id, and cells are
+ * spaced one cache line apart. Reading the count sums all the cells
+ */
+final class StripedCounter {
+    /* longs per 64 byte cache line */
+    private final static int PAD = 8;
+
+    private final AtomicLongArray m_cells;
+    private final int m_mask;
+
+    StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes how many cells it spreads the count across. It is rounded up
+     *   to a power of two
+     */
+    StripedCounter(int stripes) {
+        int cells = 1;
+        while (cells < stripes) cells <<= 1;
+        m_mask = cells - 1;
+        /* the first line is left unused, so that no cell shares the array's header line */
+        m_cells = new AtomicLongArray((cells + 1) * PAD);
+    }
+
+    private int cell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & m_mask) * PAD + PAD;
+    }
+
+    void increment() {
+        m_cells.getAndIncrement(cell());
+    }
+
+    void add(long delta) {
+        m_cells.getAndAdd(cell(), delta);
+    }
+
+    /**
+     * @return the sum of all the cells. It is not an atomic snapshot while the
+     *   counter is being updated
+     */
+    long sum() {
+        long sum = 0L;
+        for (int i = PAD; i < m_cells.length(); i += PAD) {
+            sum += m_cells.get(i);
+        }
+        return sum;
+    }
+}
@@ -125,19 +125,26 @@ public class TextInputAdapter extends RecordAdapter<VoltRecord, Text, RuntimeExc
                 record == null || (record != null && record.size() == 0),
                 "given record is already initialized");
 
-        if (record == null) {
-            record = new VoltRecord();
-        }
-        int idx = 0;
-        for (String field: m_splitter.split(param.toString())) {
-            if (idx < m_adapters.length) {
-                m_adapters[idx].adapt(record, field);
+        final StageProfiler profiler = StageProfiler.current();
+        final long token = profiler.start(StageProfiler.Stage.PARSE);
+        try {
+            if (record == null) {
+                record = new VoltRecord();
             }
-            idx += 1;
-        }
-        if (idx != m_adapters.length) {
-            throw new IllegalArgumentException(
-                    "mismatched field counts: expected " + m_adapters.length + ", actual " + idx);
+            record.ensureCapacity(m_adapters.length);
+            int idx = 0;
+            for (String field: m_splitter.split(param.toString())) {
+                if (idx < m_adapters.length) {
+                    m_adapters[idx].adapt(record, field);
+                }
+                idx += 1;
+            }
+            if (idx != m_adapters.length) {
+                throw new IllegalArgumentException(
+                        "mismatched field counts: expected " + m_adapters.length + ", actual " + idx);
+            }
+        } finally {
+            profiler.stop(StageProfiler.Stage.PARSE, token);
         }
         return record;
     }
@@ -115,12 +115,26 @@ public class TextOutputAdapter extends RecordAdapter<Text, Text, RuntimeExceptio
         if (to == null) {
             to = new Text();
         }
-        StringBuilder sb = new StringBuilder(1024);
+        to.set(append(new StringBuilder(1024), rec).toString());
+        return to;
+    }
+
+    /**
+     * Use the pre-built field adapters to append the text form of a
+     * {@linkplain VoltRecord} to the given builder
+     *
+     * @param sb a {@linkplain StringBuilder}
+     * @param rec a VoltRecord
+     * @return the given builder
+     */
+    public StringBuilder append(StringBuilder sb, VoltRecord rec) throws RuntimeException {
+        if (rec == null || rec.size() != m_adapters.length) {
+            throw new RuntimeException("unmatched record field count");
+        }
         for (int i = 0; i < m_adapters.length; ++i) {
             m_adapters[i].adapt(sb, rec);
         }
-        to.set(sb.toString());
-        return to;
+        return sb;
     }
 
     public static abstract class StringBuilderFieldAdapter
@@ -0,0 +1,73 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop;
+
+import java.util.Map;
+
+/**
+ * Management interface of a pooled VoltDB client. Invocation statistics, and
+ * latencies are those of the interval between the last two readings, at least
+ * a second apart
+ */
+public interface VoltClientMXBean {
+
+    /**
+     * @return the configured hosts the client connected to
+     */
+    String getHosts();
+
+    int getLane();
+
+    /**
+     * @return how many writers, and lookups currently use the client
+     */
+    int getReferences();
+
+    boolean isBackpressure();
+
+    /**
+     * @return the cluster nodes the client is currently connected to
+     */
+    String [] getConnectedHosts();
+
+    long getInvocationsCompleted();
+
+    long getInvocationErrors();
+
+    long getInvocationAborts();
+
+    long getInvocationTimeouts();
+
+    long getTransactionsPerSecond();
+
+    /**
+     * @return average round trip latency, in milliseconds, by connected host
+     */
+    Map<String, Double> getHostAverageLatencyMillis();
+
+    /**
+     * @return 99th percentile round trip latency, in milliseconds, by connected host
+     */
+    Map<String, Double> getHostP99LatencyMillis();
+}
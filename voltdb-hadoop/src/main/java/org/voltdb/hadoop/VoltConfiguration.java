@@ -31,12 +31,21 @@ import static com.google_voltpatches.common.base.Predicates.not;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.List;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.JobConf;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
@@ -45,14 +54,20 @@ import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientImpl;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStatusListenerExt;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback;
 import org.voltdb.utils.BulkLoaderErrorHandler;
 import org.voltdb.utils.CSVBulkDataLoader;
+import org.voltdb.utils.CSVDataLoader;
 
 import com.google_voltpatches.common.base.Preconditions;
 import com.google_voltpatches.common.base.Predicate;
+import com.google_voltpatches.common.cache.Cache;
+import com.google_voltpatches.common.cache.CacheBuilder;
+import com.google_voltpatches.common.cache.CacheStats;
 import com.google_voltpatches.common.collect.FluentIterable;
-import com.google_voltpatches.common.collect.ImmutableMap;
+import com.google_voltpatches.common.util.concurrent.UncheckedExecutionException;
 
 /*
  * Helper class that reads/sets job configuration parameters and builds/caches
@@ -96,6 +111,151 @@ public class VoltConfiguration {
     /**Bulkloader in upsert mode  */
     public static final String BULKLOADER_UPSERT_PROP="mapred.voltdb.bulkloader.upsert";
 
+    /**
+     * Route partitioned rows on the client. When enabled the client sends each per
+     * partition batch straight to the partition's leader
+     */
+    public static final String CLIENT_AFFINITY_PROP = "mapred.voltdb.client.affinity";
+    /** Client affinity default */
+    public static final boolean CLIENT_AFFINITY_DFLT = true;
+    /**
+     * Whether clients learn the cluster topology from the configured hosts, connect to
+     * all of its nodes, and to the nodes that join the cluster during the load
+     */
+    public static final String TOPOLOGY_AWARE_PROP = "mapred.voltdb.topology.aware";
+    /** Topology awareness default */
+    public static final boolean TOPOLOGY_AWARE_DFLT = true;
+    /** How long, in seconds, looked up table column types are cached. Zero caches them until invalidated */
+    public static final String TYPE_CACHE_TTL_PROP = "mapred.voltdb.type.cache.ttl.seconds";
+    /** Column types cache time to live default */
+    public static final int    TYPE_CACHE_TTL_DFLT = 600;
+    /** Whether bulk loaded records are checked against the table's column constraints before they are batched */
+    public static final String VALIDATE_ROWS_PROP = "mapred.voltdb.validate.rows";
+    /** Row validation default */
+    public static final boolean VALIDATE_ROWS_DFLT = true;
+    /** Directory where each task writes the rows VoltDB rejected, in the table's text format */
+    public static final String REJECT_DIR_PROP = "mapred.voltdb.reject.dir";
+    /** How many rejected rows each task writes at most */
+    public static final String REJECT_MAX_ROWS_PROP = "mapred.voltdb.reject.max.rows";
+    /** Rejected rows maximum default */
+    public static final long   REJECT_MAX_ROWS_DFLT = 100000L;
+    /**
+     * Directory where each task writes its load statistics, and drivers write the job
+     * level {@linkplain LoadReport}. See {@link #configureReport(Configuration, String)}
+     */
+    public static final String REPORT_DIR_PROP = "mapred.voltdb.report.dir";
+
+    /** How many bulk loaders, each with its own client, a record writer stripes rows across */
+    public static final String LOADER_PARALLELISM_PROP = "mapred.voltdb.loader.parallelism";
+    /** Loader parallelism default */
+    public static final int    LOADER_PARALLELISM_DFLT = 1;
+    /** Stripe rows across loaders by the record key's hash instead of round robin */
+    public static final String LOADER_STRIPE_BY_KEY_PROP = "mapred.voltdb.loader.stripe.by.key";
+
+    /** How many seconds a pooled client, no longer used by any writer, stays connected */
+    public static final String CLIENT_IDLE_SECONDS_PROP = "mapred.voltdb.client.idle.seconds";
+    /** Pooled client idle time default */
+    public static final int    CLIENT_IDLE_SECONDS_DFLT = 30;
+
+    /**
+     * How often, in seconds, writers report progress to their task while their loaders
+     * feed, or complete rows. Zero disables heartbeats
+     */
+    public static final String HEARTBEAT_SECONDS_PROP = "mapred.voltdb.heartbeat.seconds";
+    /** Heartbeat interval default */
+    public static final int    HEARTBEAT_SECONDS_DFLT = 10;
+
+    /**
+     * Profile the load pipeline stages, timing one in every given number of events.
+     * Zero, the default, disables profiling. See {@linkplain StageProfiler}
+     */
+    public static final String PROFILE_SAMPLE_EVERY_PROP = "mapred.voltdb.profile.sample.every";
+
+    /** Feed rows to the loaders from a dedicated sender thread */
+    public static final String WRITER_ASYNC_PROP = "mapred.voltdb.writer.async";
+    /** How many records may await the sender thread before writers block */
+    public static final String WRITER_QUEUE_SIZE_PROP = "mapred.voltdb.writer.queue.size";
+    /** Writer queue size default */
+    public static final int    WRITER_QUEUE_SIZE_DFLT = 4096;
+
+    /** Adapt the number of rows fed to loaders between flushes to the observed latency and backpressure */
+    public static final String BATCH_ADAPTIVE_PROP = "mapred.voltdb.batch.adaptive";
+    /**
+     * Adaptive batch size lower bound. Adaptive batch sizes, their bounds, and target bytes
+     * apply to each batch sent to the server. Bulk loaders send one batch per partition, so
+     * writers flush them once they were fed that many rows times the partition count
+     */
+    public static final String BATCH_MIN_PROP = "mapred.voltdb.batch.min";
+    /** Adaptive batch size lower bound default */
+    public static final int    BATCH_MIN_DFLT = 25;
+    /** Adaptive batch size upper bound */
+    public static final String BATCH_MAX_PROP = "mapred.voltdb.batch.max";
+    /** Adaptive batch size upper bound default */
+    public static final int    BATCH_MAX_DFLT = 5000;
+    /** Adaptive batch round trip latency target in milliseconds */
+    public static final String BATCH_TARGET_LATENCY_PROP = "mapred.voltdb.batch.target.latency.ms";
+    /** Adaptive batch latency target default */
+    public static final int    BATCH_TARGET_LATENCY_DFLT = 50;
+    /** Adaptive batch target size in bytes, from which the initial batch size is derived */
+    public static final String BATCH_TARGET_BYTES_PROP = "mapred.voltdb.batch.target.bytes";
+    /** Adaptive batch target bytes default */
+    public static final int    BATCH_TARGET_BYTES_DFLT = 256 * 1024;
+    /**
+     * How many partition batches bulk loaders split the rows they are fed between flushes
+     * into. Zero, the default, takes the cluster's partition count. Loads into replicated
+     * tables, that bulk loaders send in a single batch, should set it to one
+     */
+    public static final String BATCH_PARTITIONS_PROP = "mapred.voltdb.batch.partitions";
+
+    /** Job wide rows per second budget. Zero, the default, is unlimited */
+    public static final String RATE_ROWS_PROP = "mapred.voltdb.rate.rows.per.second";
+    /** Job wide bytes per second budget. Zero, the default, is unlimited */
+    public static final String RATE_BYTES_PROP = "mapred.voltdb.rate.bytes.per.second";
+    /** Number of tasks the budget is split across. It defaults to the job's reduce, or map task count */
+    public static final String RATE_TASKS_PROP = "mapred.voltdb.rate.tasks";
+
+    /** Route records to the table named by their key, before the table named by the record */
+    public static final String ROUTE_BY_KEY_PROP = "mapred.voltdb.route.by.key";
+
+    /**
+     * How many times rows that failed with a retryable status are resubmitted. Zero disables retries.
+     * It defaults to {@link #RETRY_MAX_DFLT} for upserts, and to zero for inserts, as an insert whose
+     * response was lost may have been applied, and a retry would repeat it. That includes staged loads,
+     * which insert into the staging table, and would promote both copies of a repeated row
+     */
+    public static final String RETRY_MAX_PROP = "mapred.voltdb.retry.max";
+    /** Retry attempts default for upserts */
+    public static final int    RETRY_MAX_DFLT = 5;
+    /** Comma separated client response statuses, by name or number, that are retried */
+    public static final String RETRY_STATUSES_PROP = "mapred.voltdb.retry.statuses";
+    /** Retryable statuses default */
+    public static final String RETRY_STATUSES_DFLT = "CONNECTION_LOST,SERVER_UNAVAILABLE";
+    /** Milliseconds before the first retry. Later retries back off exponentially */
+    public static final String RETRY_BACKOFF_PROP = "mapred.voltdb.retry.backoff.ms";
+    /** Retry back off default */
+    public static final int    RETRY_BACKOFF_DFLT = 100;
+    /** Retry back off cap in milliseconds */
+    public static final String RETRY_BACKOFF_MAX_PROP = "mapred.voltdb.retry.backoff.max.ms";
+    /** Retry back off cap default */
+    public static final int    RETRY_BACKOFF_MAX_DFLT = 10000;
+    /** How many rows may wait for a retry at once, per writer */
+    public static final String RETRY_QUEUE_SIZE_PROP = "mapred.voltdb.retry.queue.size";
+    /** Retry queue size default */
+    public static final int    RETRY_QUEUE_SIZE_DFLT = 10000;
+
+    /** Prefix of the properties that ship a table's column types, resolved at job submission */
+    public static final String TABLE_SCHEMA_PROP_PREFIX = "mapred.voltdb.table.schema.";
+
+    /** Stored procedure invoked with batches of rows, instead of bulk loading them */
+    public static final String PROCEDURE_NAME_PROP = "mapred.voltdb.procedure.name";
+
+    /**
+     * Staging table that task attempts load into, before their rows are promoted into
+     * the destination table when the attempt commits. It must have the destination
+     * table's columns, in the same order, followed by a VARCHAR attempt id column
+     */
+    public static final String STAGING_TABLE_PROP = "mapred.voltdb.staging.table";
+
     /**
      * Property for speculative execution of MAP tasks
      */
@@ -109,7 +269,9 @@ public class VoltConfiguration {
     private final Config  m_config;
 
     /**
-     * Sets the job configuration properties that correspond to the given parameters
+     * Sets the job configuration properties that correspond to the given parameters.
+     * It disables speculative execution, unless the job is subsequently configured to
+     * load through a staging table with {@link #configureStaging(Configuration, String)}
      *
      * @param conf a {@linkplain Configuration}
      * @param hostNames an array of host names
@@ -132,6 +294,54 @@ public class VoltConfiguration {
         conf.set(TABLENAME_PROP, tableName);
     }
 
+    /**
+     * Sets the stored procedure that record writers invoke once per batch of rows.
+     * Each invocation gets a {@linkplain VoltTable} parameter, whose columns are
+     * typed after the destination table's columns
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param procedureName stored procedure name
+     */
+    public static void configureProcedure(Configuration conf, String procedureName) {
+        Preconditions.checkArgument(!isNullOrEmpty.apply(procedureName), "null or empty procedure name");
+        conf.set(PROCEDURE_NAME_PROP, procedureName);
+    }
+
+    /**
+     * Makes task attempts load into the given staging table, tagging each row with their
+     * attempt id. Committed attempts promote their rows into the destination table, and
+     * aborted ones discard them, so that it re-enables speculative execution. Each
+     * attempt's rows are promoted in one transaction, see {@linkplain StagingCommitter}.
+     * It must be invoked after {@code configureVoltDB}
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param stagingTable staging table name
+     */
+    public static void configureStaging(Configuration conf, String stagingTable) {
+        Preconditions.checkArgument(!isNullOrEmpty.apply(stagingTable), "null or empty staging table name");
+        conf.set(STAGING_TABLE_PROP, stagingTable);
+        conf.setBoolean(MAP_SPECULATIVE_EXEC, true);
+        conf.setBoolean(REDUCE_SPECULATIVE_EXEC, true);
+        conf.setClass("mapred.output.committer.class",
+                org.voltdb.hadoop.mapred.VoltOutputCommitter.class, org.apache.hadoop.mapred.OutputCommitter.class);
+    }
+
+    /**
+     * Sets the directory where tasks write their load statistics, and drivers write the
+     * job level {@linkplain LoadReport}. It also sets the output committer that marks
+     * committed attempts' statistics, so that the report skips those of failed, and
+     * duplicate speculative attempts
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param reportDir report directory
+     */
+    public static void configureReport(Configuration conf, String reportDir) {
+        Preconditions.checkArgument(!isNullOrEmpty.apply(reportDir), "null or empty report directory");
+        conf.set(REPORT_DIR_PROP, reportDir);
+        conf.setClass("mapred.output.committer.class",
+                org.voltdb.hadoop.mapred.VoltOutputCommitter.class, org.apache.hadoop.mapred.OutputCommitter.class);
+    }
+
     public static void loadVoltClientJar(Configuration conf) {
         String voltJar = ClientImpl.class
                 .getProtectionDomain()
@@ -196,89 +406,288 @@ public class VoltConfiguration {
     }
 
     /*
-     * Table column types cache consists of an immutable map that is replaced every times
-     * a new table is inserted into it. Updates are ignored
+     * Table columns cache, keyed by cluster and table name. Concurrent misses on
+     * the same key wait on a single catalog lookup. Entries are dropped when they are
+     * invalidated, or when they outlive the time to live of the configuration that
+     * looks them up
+     */
+    private final static Cache<String, CachedTypes> m_typeCache =
+            CacheBuilder.newBuilder().recordStats().build();
+
+    private final static class CachedTypes {
+        final RowValidator.Column [] m_columns;
+        final VoltType [] m_types;
+        final long m_loadedNanos = System.nanoTime();
+
+        CachedTypes(RowValidator.Column [] columns) {
+            m_columns = columns;
+            m_types = RowValidator.typesOf(columns);
+        }
+
+        boolean isOlderThan(int ttlSeconds) {
+            return ttlSeconds > 0 && System.nanoTime() - m_loadedNanos > TimeUnit.SECONDS.toNanos(ttlSeconds);
+        }
+    }
+
+    /*
+     * Cluster partition counts, keyed by cluster
      */
-    private static AtomicStampedReference<Map<String, VoltType[]>> m_typeCache =
-            new AtomicStampedReference<Map<String, VoltType[]>>(ImmutableMap.<String, VoltType[]>of(),0);
+    private final static ConcurrentMap<String, Integer> m_partitionCounts =
+            new ConcurrentHashMap<String, Integer>();
 
     /*
-     * Creates a new immutable map by copying the source's content and adding
-     * the new entry after
+     * Cluster key: the sorted cluster host names
      */
-    private static <K,V> ImmutableMap<K,V> addEntry(Map<K,V> src, K tn, V value) {
-        ImmutableMap.Builder<K,V> builder = ImmutableMap.builder();
-        builder.putAll(src);
-        builder.put(tn,value);
-        return builder.build();
+    static String clusterKeyFor(String [] hosts) {
+        String [] cluster = hosts == null ? new String[0] : hosts.clone();
+        for (int i = 0; i < cluster.length; ++i) {
+            cluster[i] = cluster[i].trim().toLowerCase();
+        }
+        Arrays.sort(cluster);
+        return Arrays.toString(cluster);
     }
 
     /*
-     * Does a cache lookup. If it is a miss it uses the remaining parameters
-     * to connect to voltdb and query the given table column types
+     * Types cache key: the cluster key, followed by the upper case table name
      */
-    private static VoltType[] typesFor(Config config) throws IOException
-    {
-        VoltType [] types = m_typeCache.getReference().get(config.getTableName());
-        if (types == null) {
+    static String typeKeyFor(String [] hosts, String tableName) {
+        return clusterKeyFor(hosts) + '|' + tableName.trim().toUpperCase();
+    }
 
-            int retryCount = 0;
-            while(retryCount < 10){
-                Client volt = getVoltDBClient(config);
-                try {
-                    types = getTableColumnTypes(volt, config.getTableName());
-                    retryCount = Integer.MAX_VALUE;
-                } catch (ProcCallException pe) {
-                    retryCount++;
-                    if(retryCount > 10){
-                        throw new IOException("Unable to check column meta data");
-                    }
-                    try { volt.close();} catch (InterruptedException ignoreIt) {};
-                    volt = null;
-                    backOff(retryCount);
-                } finally {
-                    if( volt != null){
-                        try { volt.close();} catch (InterruptedException ignoreIt) {};
-                    }
+    /*
+     * Does a cache lookup. If it is a miss, or the cached types are older than the
+     * configured time to live, it connects to voltdb and queries the given table columns.
+     * Only one of the threads that miss on the same table queries voltdb
+     */
+    static RowValidator.Column[] columnsFor(final Config config) throws IOException
+    {
+        final String key = typeKeyFor(config.getHosts(), config.getTableName());
+        CachedTypes cached = m_typeCache.asMap().get(key);
+        if (cached != null && cached.isOlderThan(config.getTypeCacheTtl())) {
+            m_typeCache.asMap().remove(key, cached);
+        }
+        try {
+            return m_typeCache.get(key, new Callable<CachedTypes>() {
+                @Override
+                public CachedTypes call() throws IOException {
+                    return new CachedTypes(loadColumns(config));
                 }
+            }).m_columns;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Unable to check column meta data", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
             }
-            if (types == null || types.length == 0) {
-                throw new IOException("Table " + config.getTableName() + " does not exist");
+            if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-            Map<String,VoltType[]> oldmap,newmap;
-            int [] stamp = new int[1];
-            do try {
-                oldmap = m_typeCache.get(stamp);
-                newmap = addEntry(oldmap, config.getTableName(), types);
-            } catch (IllegalArgumentException ignoreDuplicates) {
-                break;
-            } while (!m_typeCache.compareAndSet(oldmap, newmap, stamp[0], stamp[0]+1));
+    private static RowValidator.Column[] loadColumns(Config config) throws IOException
+    {
+        RowValidator.Column [] columns = null;
+        int retryCount = 0;
+        while(retryCount < 10){
+            ClientImpl volt = ClientPool.acquire(config, 0);
+            try {
+                columns = getTableColumns(volt, config.getTableName());
+                retryCount = Integer.MAX_VALUE;
+            } catch (ProcCallException pe) {
+                retryCount++;
+                if(retryCount > 10){
+                    throw new IOException("Unable to check column meta data");
+                }
+                ClientPool.invalidate(volt);
+                ClientPool.release(volt);
+                volt = null;
+                backOff(retryCount);
+            } finally {
+                if( volt != null){
+                    ClientPool.release(volt);
+                }
+            }
         }
-        return types;
+        if (columns == null || columns.length == 0) {
+            throw new IOException("Table " + config.getTableName() + " does not exist");
+        }
+        return columns;
     }
 
     /**
      * Does a cache lookup. If it is a miss it uses the given array of column
-     * types to seed the cache for the given table name
+     * types to seed the cache for the given cluster and table name
      *
+     * @param hosts cluster host names
      * @param tableName
      * @param columnTypes
      * @return the tables column types
      */
-    static VoltType[] typesFor(String tableName, VoltType[] columnTypes) {
-        VoltType [] types = m_typeCache.getReference().get(tableName);
-        if (types == null && columnTypes != null && columnTypes.length > 0) {
-            Map<String,VoltType[]> oldmap,newmap;
-            int [] stamp = new int[1];
-            do try {
-                oldmap = m_typeCache.get(stamp);
-                newmap = addEntry(oldmap, tableName, columnTypes);
-            } catch (IllegalArgumentException ignoreDuplicates) {
-                break;
-            } while (!m_typeCache.compareAndSet(oldmap, newmap, stamp[0], stamp[0]+1));
+    static VoltType[] typesFor(String [] hosts, String tableName, VoltType[] columnTypes) {
+        final String key = typeKeyFor(hosts, tableName);
+        CachedTypes cached = m_typeCache.asMap().get(key);
+        if (cached == null && columnTypes != null && columnTypes.length > 0) {
+            m_typeCache.asMap().putIfAbsent(key, new CachedTypes(RowValidator.columnsFor(columnTypes)));
         }
-        return types;
+        return cached != null ? cached.m_types : null;
+    }
+
+    /**
+     * Drops the cached column types for the given cluster and table, so that they
+     * are queried again on their next lookup, as when the table is altered
+     *
+     * @param hosts cluster host names
+     * @param tableName table name
+     */
+    public static void invalidateTableTypes(String [] hosts, String tableName) {
+        m_typeCache.invalidate(typeKeyFor(hosts, tableName));
+    }
+
+    /**
+     * Drops all the cached table column types
+     */
+    public static void invalidateTableTypes() {
+        m_typeCache.invalidateAll();
+    }
+
+    /**
+     * @return hit, miss, and catalog lookup statistics for the table column types cache
+     */
+    public static CacheStats getTypeCacheStats() {
+        return m_typeCache.stats();
+    }
+
+    /**
+     * @return how many tables have their column types cached
+     */
+    public static long getTypeCacheSize() {
+        return m_typeCache.size();
+    }
+
+    /**
+     * Returns how many partition batches loaders split the rows they are fed between
+     * flushes into. Procedure loaders send them in a single batch. Unless configured,
+     * bulk loaders take the cluster's partition count, that is queried once per cluster.
+     * If the query fails, rows are taken to go in a single batch
+     *
+     * @return the partition batch count
+     * @throws IOException when it fails to acquire a client
+     */
+    public int getBatchPartitions() throws IOException {
+        if (m_config.getProcedureName() != null) {
+            return 1;
+        }
+        if (m_config.getBatchPartitions() > 0) {
+            return m_config.getBatchPartitions();
+        }
+        final String key = clusterKeyFor(m_config.getHosts());
+        Integer partitions = m_partitionCounts.get(key);
+        if (partitions != null) {
+            return partitions;
+        }
+        ClientImpl volt = ClientPool.acquire(m_config, 0);
+        try {
+            partitions = getPartitionCount(volt);
+        } catch (ProcCallException e) {
+            ClientPool.invalidateOnConnectionFailure(volt, e);
+            LOG.warn("Unable to query the partition count, batches are sized as if unpartitioned", e);
+            return 1;
+        } finally {
+            ClientPool.release(volt);
+        }
+        m_partitionCounts.putIfAbsent(key, partitions);
+        return partitions;
+    }
+
+    /**
+     * Ships the given table's column types in the given job configuration, so that
+     * tasks read them without querying VoltDB
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param tableName table name
+     * @param types the table's column types
+     */
+    public static void configureSchema(Configuration conf, String tableName, VoltType [] types) {
+        configureColumns(conf, tableName, RowValidator.columnsFor(types));
+    }
+
+    /**
+     * Ships the given table's columns, and their constraints, in the given job
+     * configuration. Bulk loaders check them against the table's live columns when
+     * they are opened, so that schema changes since job submission fail the tasks.
+     * Procedure loaders do not learn the table's columns, and leave it to the
+     * procedure to fail on rows that no longer fit its table
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param tableName table name
+     * @param columns the table's columns
+     */
+    public static void configureColumns(Configuration conf, String tableName, RowValidator.Column [] columns) {
+        StringBuilder sb = new StringBuilder(columns.length * 16);
+        for (RowValidator.Column column: columns) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(column);
+        }
+        final String table = tableName.trim().toUpperCase();
+        conf.set(TABLE_SCHEMA_PROP_PREFIX + table, sb.toString());
+    }
+
+    /**
+     * Reads the given table's column types shipped with {@link #configureSchema(Configuration, String, VoltType[])}
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param tableName table name
+     * @return the shipped column types, or null if none were shipped, or they are
+     *   unreadable
+     */
+    public static VoltType [] schemaFrom(Configuration conf, String tableName) {
+        RowValidator.Column [] columns = columnsFrom(conf, tableName);
+        return columns == null ? null : RowValidator.typesOf(columns);
+    }
+
+    /**
+     * Reads the given table's columns shipped with {@link #configureColumns(Configuration, String, RowValidator.Column[])}
+     *
+     * @param conf a {@linkplain Configuration}
+     * @param tableName table name
+     * @return the shipped columns, or null if none were shipped, or they are unreadable
+     */
+    public static RowValidator.Column [] columnsFrom(Configuration conf, String tableName) {
+        if (isNullOrEmpty.apply(tableName)) return null;
+        final String table = tableName.trim().toUpperCase();
+        final String schema = conf.get(TABLE_SCHEMA_PROP_PREFIX + table);
+        if (isNullOrEmpty.apply(schema)) return null;
+
+        String [] specs = schema.split(",");
+        RowValidator.Column [] columns = new RowValidator.Column[specs.length];
+        try {
+            for (int i = 0; i < specs.length; ++i) {
+                columns[i] = RowValidator.Column.valueOf(specs[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Ignoring unreadable shipped schema for table " + table + ": " + schema);
+            return null;
+        }
+        return columns;
+    }
+
+    /**
+     * Resolves the destination table's columns, and ships them in the given job
+     * configuration. Output formats, and storers call it at job submission
+     *
+     * @param conf the job configuration
+     * @return the table's column types
+     * @throws IOException when it fails to communicate with the VoltDB cluster
+     */
+    public VoltType [] shipSchema(Configuration conf) throws IOException {
+        RowValidator.Column [] columns = getTableColumns();
+        configureColumns(conf, m_config.getTableName(), columns);
+        return RowValidator.typesOf(columns);
     }
 
     /**
@@ -288,14 +697,91 @@ public class VoltConfiguration {
      * @param conf job configuration
      */
     public VoltConfiguration(Configuration conf) {
-        this( new Config(conf.get(TABLENAME_PROP),
+        this(conf, conf.get(TABLENAME_PROP));
+    }
+
+    /**
+     * Reads volt specific configuration parameters from the given
+     * {@linkplain JobConf} job configuration, but for the given destination table
+     *
+     * @param conf job configuration
+     * @param tableName destination table name
+     */
+    public VoltConfiguration(Configuration conf, String tableName) {
+        this(configFrom(conf, tableName));
+    }
+
+    /**
+     * Reads volt specific configuration parameters from the given job configuration
+     *
+     * @param conf job configuration
+     * @param tableName destination table name
+     * @return a {@linkplain Config}
+     */
+    static Config configFrom(Configuration conf, String tableName) {
+        return builderFrom(conf, tableName).build();
+    }
+
+    /**
+     * Reads volt specific configuration parameters from the given job configuration,
+     * into a builder callers may adjust before they build the {@linkplain Config}
+     *
+     * @param conf job configuration
+     * @param tableName destination table name
+     * @return a {@linkplain Config.Builder}
+     */
+    static Config.Builder builderFrom(Configuration conf, String tableName) {
+        boolean upsert = conf.getBoolean(BULKLOADER_UPSERT_PROP, false);
+        String stagingTableName = conf.get(STAGING_TABLE_PROP);
+        int retryDflt = upsert ? RETRY_MAX_DFLT : 0;
+        return new Config.Builder(tableName,
                 conf.getStrings(HOSTNAMES_PROP, new String[]{}),
                 conf.get(USERNAME_PROP),
                 conf.get(PASSWORD_PROP),
                 conf.getInt(BATCHSIZE_PROP, BATCHSIZE_DFLT),
                 conf.getLong(CLIENT_TIMEOUT_PROP, TIMEOUT_DFLT),
                 conf.getInt(BULKLOADER_MAX_ERRORS_PROP, FaultCollector.MAXFAULTS),
-                conf.getBoolean(BULKLOADER_UPSERT_PROP, false)));
+                upsert)
+                .setFlushInterval(conf.getInt(FLUSHDELAY_PROP, FLUSHDELAY_DFLT), conf.getInt(FLUSHSECONDS_PROP, FLUSHSECONDS_DFLT))
+                .setClientAffinity(conf.getBoolean(CLIENT_AFFINITY_PROP, CLIENT_AFFINITY_DFLT))
+                .setTopologyAware(conf.getBoolean(TOPOLOGY_AWARE_PROP, TOPOLOGY_AWARE_DFLT))
+                .setTypeCacheTtl(conf.getInt(TYPE_CACHE_TTL_PROP, TYPE_CACHE_TTL_DFLT))
+                .setValidateRows(conf.getBoolean(VALIDATE_ROWS_PROP, VALIDATE_ROWS_DFLT))
+                .setRejects(conf.get(REJECT_DIR_PROP), conf.getLong(REJECT_MAX_ROWS_PROP, REJECT_MAX_ROWS_DFLT))
+                .setLoaderParallelism(conf.getInt(LOADER_PARALLELISM_PROP, LOADER_PARALLELISM_DFLT))
+                .setStripeByKey(conf.getBoolean(LOADER_STRIPE_BY_KEY_PROP, false))
+                .setClientIdleSeconds(conf.getInt(CLIENT_IDLE_SECONDS_PROP, CLIENT_IDLE_SECONDS_DFLT))
+                .setHeartbeatSeconds(conf.getInt(HEARTBEAT_SECONDS_PROP, HEARTBEAT_SECONDS_DFLT))
+                .setAsyncWriter(conf.getBoolean(WRITER_ASYNC_PROP, false))
+                .setWriterQueueSize(conf.getInt(WRITER_QUEUE_SIZE_PROP, WRITER_QUEUE_SIZE_DFLT))
+                .setAdaptiveBatch(conf.getBoolean(BATCH_ADAPTIVE_PROP, false))
+                .setBatchBounds(conf.getInt(BATCH_MIN_PROP, BATCH_MIN_DFLT), conf.getInt(BATCH_MAX_PROP, BATCH_MAX_DFLT))
+                .setBatchTargets(conf.getInt(BATCH_TARGET_LATENCY_PROP, BATCH_TARGET_LATENCY_DFLT),
+                        conf.getInt(BATCH_TARGET_BYTES_PROP, BATCH_TARGET_BYTES_DFLT))
+                .setBatchPartitions(conf.getInt(BATCH_PARTITIONS_PROP, 0))
+                .setRateLimits(conf.getLong(RATE_ROWS_PROP, 0L), conf.getLong(RATE_BYTES_PROP, 0L), taskCount(conf))
+                .setJobId(conf.get("mapreduce.job.id", conf.get("mapred.job.id")))
+                .setProcedureName(conf.get(PROCEDURE_NAME_PROP))
+                .setStagingTableName(stagingTableName)
+                .setAttemptId(conf.get("mapreduce.task.attempt.id", conf.get("mapred.task.id")))
+                .setColumns(columnsFrom(conf, tableName))
+                .setRetries(conf.getInt(RETRY_MAX_PROP, retryDflt), conf.getLong(RETRY_BACKOFF_PROP, RETRY_BACKOFF_DFLT),
+                        conf.getLong(RETRY_BACKOFF_MAX_PROP, RETRY_BACKOFF_MAX_DFLT), conf.getInt(RETRY_QUEUE_SIZE_PROP, RETRY_QUEUE_SIZE_DFLT))
+                .setRetryStatuses(conf.getStrings(RETRY_STATUSES_PROP, RETRY_STATUSES_DFLT.split(",")));
+    }
+
+    /*
+     * Number of tasks that write to VoltDB: reducers, unless it is a map only job
+     */
+    private static int taskCount(Configuration conf) {
+        int tasks = conf.getInt(RATE_TASKS_PROP, 0);
+        if (tasks <= 0) {
+            tasks = conf.getInt("mapreduce.job.reduces", conf.getInt("mapred.reduce.tasks", 0));
+        }
+        if (tasks <= 0) {
+            tasks = conf.getInt("mapreduce.job.maps", conf.getInt("mapred.map.tasks", 0));
+        }
+        return Math.max(1, tasks);
     }
 
     /**
@@ -353,93 +839,308 @@ public class VoltConfiguration {
     };
 
     /*
-     * It creates a VoltDB client from the given parameters.
+     * It creates, and connects a VoltDB client from the given parameters. Clients
+     * are normally acquired through the {@linkplain ClientPool} instead. With client affinity
+     * the bulk loader hashes each row's partitioning column with the client's
+     * hashinator, batches rows per partition, and sends each batch to the
+     * partition's leader. Topology awareness makes the client connect to every
+     * cluster node, so that leaders are reachable even when only a few of the
+     * nodes are listed in the configured host names, and it keeps connecting to
+     * nodes that join the cluster during the load.
+     * <p>
+     * It connects to all the configured hosts in parallel, and returns as soon as
+     * any of them accepts the connection, while the others keep connecting in the
+     * background. Unreachable hosts therefore do not delay the task's startup
      */
-    private static ClientImpl getVoltDBClient(Config config) throws IOException {
+    static ClientImpl connect(Config config) throws IOException {
+        return connect(config, null);
+    }
 
-        ClientConfig cf = new ClientConfig(config.getUserName(),config.getPassword());
+    static ClientImpl connect(Config config, ClientStatusListenerExt listener) throws IOException {
+
+        ClientConfig cf = new ClientConfig(config.getUserName(),config.getPassword(), listener);
         cf.setConnectionResponseTimeout(config.getClientTimeout());
         cf.setReconnectOnConnectionLoss(true);
+        cf.setClientAffinity(config.isClientAffinity());
+        cf.setTopologyChangeAware(config.isTopologyAware());
 
         if (config.getHosts().length == 0 || FluentIterable.of(config.getHosts()).allMatch(isNullOrEmpty)) {
             throw new IOException("Hosts are improperly specified");
         }
-        ClientImpl client = (ClientImpl)ClientFactory.createClient(cf);
-
-        int failCount = 0, attemptCount = 0;
-        for (String hostName: FluentIterable.of(config.getHosts()).filter(not(isNullOrEmpty))) try {
-            attemptCount += 1;
-            client.createConnection(hostName);
-        } catch (IOException e) {
-            failCount += 1;
-            LOG.error("Failed to connect to host " + hostName, e);
+        final ClientImpl client = (ClientImpl)ClientFactory.createClient(cf);
+
+        List<String> hostNames = FluentIterable.of(config.getHosts()).filter(not(isNullOrEmpty)).toList();
+        CompletionService<String> connections = new ExecutorCompletionService<String>(LoaderThreads.blocking());
+        for (final String hostName: hostNames) {
+            connections.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    try {
+                        client.createConnection(hostName);
+                    } catch (IOException e) {
+                        LOG.error("Failed to connect to host " + hostName, e);
+                        throw e;
+                    }
+                    return hostName;
+                }
+            });
         }
 
-        if (failCount == attemptCount) {
-            throw new IOException("Failed to connect to hosts " + Arrays.toString(config.getHosts()));
+        for (int i = 0; i < hostNames.size(); ++i) try {
+            String hostName = connections.take().get();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Connected to host " + hostName + " first of " + hostNames);
+            }
+            return client;
+        } catch (ExecutionException failedToConnect) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(client);
+            throw new IOException("Interrupted while connecting to hosts " + hostNames, e);
         }
 
-        return client;
+        closeQuietly(client);
+        throw new IOException("Failed to connect to hosts " + Arrays.toString(config.getHosts()));
+    }
+
+    private static void closeQuietly(Client client) {
+        try {
+            client.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Close client interrupted.", e);
+        }
     }
 
     /*
-     * Calls to the @SystemInformation system procedure to determine the given table
-     * column types
+     * Calls to the @SystemCatalog system procedure to determine the given table
+     * column names, in their ordinal order
      */
-    private static VoltType[] getTableColumnTypes(Client volt, String tableName) throws ProcCallException, IOException {
+    static String[] getTableColumnNames(Client volt, String tableName) throws ProcCallException, IOException {
         ClientResponse cr = volt.callProcedure("@SystemCatalog", "COLUMNS");
-        Map<Long, VoltType> columns = new TreeMap<Long, VoltType>();
+        Map<Long, String> columns = new TreeMap<Long, String>();
         VoltTable res = cr.getResults()[0];
         while (res.advanceRow()) {
             if (res.getString("TABLE_NAME").equalsIgnoreCase(tableName)) {
-                columns.put(res.getLong("ORDINAL_POSITION"), VoltType.typeFromString(res.getString("TYPE_NAME")));
+                columns.put(res.getLong("ORDINAL_POSITION"), res.getString("COLUMN_NAME"));
             }
         }
-        return columns.values().toArray(new VoltType[0]);
+        return columns.values().toArray(new String[0]);
     }
 
-    private ClientImpl getVoltDBClient() throws IOException {
-        return getVoltDBClient(m_config);
+    /*
+     * Calls to the @GetPartitionKeys system procedure, which returns a row per partition
+     */
+    static int getPartitionCount(Client volt) throws ProcCallException, IOException {
+        ClientResponse cr = volt.callProcedure("@GetPartitionKeys", "INTEGER");
+        return Math.max(1, cr.getResults()[0].getRowCount());
+    }
+
+    /*
+     * Calls to the @SystemCatalog system procedure to determine the given table
+     * columns, their types, sizes, and nullability
+     */
+    private static RowValidator.Column[] getTableColumns(Client volt, String tableName) throws ProcCallException, IOException {
+        ClientResponse cr = volt.callProcedure("@SystemCatalog", "COLUMNS");
+        Map<Long, RowValidator.Column> columns = new TreeMap<Long, RowValidator.Column>();
+        VoltTable res = cr.getResults()[0];
+        while (res.advanceRow()) {
+            if (res.getString("TABLE_NAME").equalsIgnoreCase(tableName)) {
+                long size = res.getLong("COLUMN_SIZE");
+                if (res.wasNull() || size > Integer.MAX_VALUE) size = 0L;
+                columns.put(res.getLong("ORDINAL_POSITION"), new RowValidator.Column(
+                        VoltType.typeFromString(res.getString("TYPE_NAME")), (int)size,
+                        !"NO".equalsIgnoreCase(res.getString("IS_NULLABLE"))));
+            }
+        }
+        return columns.values().toArray(new RowValidator.Column[0]);
     }
 
     /**
      * Returns the column types for the configures destination table name. It also primes
-     * the table column type, and table adapters caches
+     * the table column type, and table adapters caches. Column types shipped in the
+     * job configuration are returned without querying VoltDB
      *
      * @return an array of volt types representing the tables configured table column types
      * @throws IOException when it fails to communicate with the VoltDB cluster
      */
     public VoltType[] getTableColumnTypes() throws IOException {
-        VoltType [] types = typesFor(m_config);
+        final Object event = FlightEvents.begin(FlightEvents.Type.CATALOG_LOOKUP);
+        VoltType [] types = m_config.getSchema();
+        final boolean configured = types != null;
+        if (types == null) {
+            types = RowValidator.typesOf(columnsFor(m_config));
+        }
         DataAdapters.adaptersFor(m_config.getTableName(), types);
+        FlightEvents.commit(event, m_config.getTableName(), types.length, configured);
         return types;
     }
 
     /**
-     * Returns a VoltDB bulk loader
+     * Returns the configured destination table's columns, and their constraints
+     *
+     * @return the table's columns
+     * @throws IOException when it fails to communicate with the VoltDB cluster
+     */
+    public RowValidator.Column[] getTableColumns() throws IOException {
+        RowValidator.Column [] columns = m_config.getColumns();
+        if (columns == null) {
+            columns = columnsFor(m_config);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns a sink for the rows VoltDB rejects, if a reject directory is configured.
+     * Files are named after the table, and the task attempt
+     *
+     * @param conf the job configuration
+     * @return a {@linkplain RejectSink}, or null if rejected rows are only logged
+     * @throws IOException when it fails to look up the table's column types
+     */
+    public RejectSink getRejectSink(Configuration conf) throws IOException {
+        if (m_config.getRejectDir() == null) {
+            return null;
+        }
+        final String attemptId = m_config.getAttemptId() != null
+                ? m_config.getAttemptId() : "task-" + UUID.randomUUID();
+        return new RejectSink(conf, new Path(m_config.getRejectDir()), m_config.getTableName(), attemptId,
+                new TextOutputAdapter(getTableColumnTypes()), m_config.getMaxRejects());
+    }
+
+    /**
+     * Returns a validator that checks records against the destination table's
+     * column constraints, or null if rows are not validated, as with procedure loads
+     *
+     * @return a {@linkplain RowValidator}, or null
+     * @throws IOException when it fails to communicate with the VoltDB cluster
+     */
+    public RowValidator getRowValidator() throws IOException {
+        if (!m_config.isValidateRows() || m_config.getProcedureName() != null) {
+            return null;
+        }
+        return new RowValidator(m_config.getTableName(), getTableColumns());
+    }
+
+    /**
+     * Returns a {@linkplain ProcedureLoader} if a stored procedure is configured,
+     * or a bulk loader otherwise
+     *
+     * @param errorHandler an asynchronous loader error handler
+     * @param successCallback an optional asynchronous loader success callback
+     * @param lane the client lane. Loaders opened on different lanes use different clients
+     * @return a VoltDB loader
+     * @throws IOException
+     */
+    public CSVDataLoader getLoader(BulkLoaderErrorHandler errorHandler,
+            BulkLoaderSuccessCallback successCallback, int lane) throws IOException {
+        if (isNullOrEmpty.apply(m_config.getProcedureName())) {
+            return getBulkLoader(errorHandler, successCallback, lane);
+        }
+        return getProcedureLoader(errorHandler, successCallback, lane);
+    }
+
+    /**
+     * Returns a loader that invokes the configured stored procedure once per batch,
+     * opened on a client acquired from the JVM wide {@linkplain ClientPool}. Closing
+     * the loader hands its client back to the pool
+     *
+     * @param errorHandler an asynchronous loader error handler
+     * @param successCallback an optional asynchronous loader success callback
+     * @param lane the client lane. Loaders opened on different lanes use different clients
+     * @return a procedure loader
+     * @throws IOException
+     */
+    public ProcedureLoader getProcedureLoader(BulkLoaderErrorHandler errorHandler,
+            BulkLoaderSuccessCallback successCallback, int lane) throws IOException {
+        if (isNullOrEmpty.apply(m_config.getProcedureName())) {
+            throw new IOException("Property " + PROCEDURE_NAME_PROP + " is not specified");
+        }
+        final VoltType [] types = getTableColumnTypes();
+        final int batchSize = m_config.isAdaptiveBatch() ? m_config.getMaxBatchSize() : m_config.getBatchSize();
+
+        ClientImpl client = ClientPool.acquire(m_config, lane);
+        try {
+            ProcedureLoader loader = new PooledProcedureLoader(client, m_config.getProcedureName(), types, batchSize,
+                    errorHandler, successCallback);
+            if (m_config.isTimedFlush()) {
+                loader.setFlushInterval(m_config.getFlushDelay(), m_config.getFlushSeconds());
+            }
+            return loader;
+        } catch (RuntimeException e) {
+            ClientPool.release(client);
+            throw new IOException("Unable to instantiate a VoltDB procedure loader.Configuration:" + m_config.toString(), e);
+        }
+    }
+
+    /*
+     * A procedure loader that hands its client back to the pool when it is closed
+     */
+    private static class PooledProcedureLoader extends ProcedureLoader {
+        private final ClientPool.Loan m_loan;
+
+        PooledProcedureLoader(ClientImpl client, String procedureName, VoltType [] types, int batchSize,
+                BulkLoaderErrorHandler errorHandler, BulkLoaderSuccessCallback successCallback) {
+            super(client, procedureName, types, batchSize, errorHandler, successCallback);
+            m_loan = new ClientPool.Loan(client, successCallback);
+        }
+
+        @Override
+        protected boolean isBackpressure() {
+            return m_loan.isBackpressure();
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (!m_loan.close()) return;
+            try {
+                super.close();
+            } finally {
+                m_loan.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a VoltDB bulk loader opened on the first lane's pooled client
      * @param errorHandler an asynchronous loader error handler
      * @return a VoltDB bulk loader
      * @throws IOException
      */
     public CSVBulkDataLoader getBulkLoader(BulkLoaderErrorHandler errorHandler) throws IOException {
+        return getBulkLoader(errorHandler, null, 0);
+    }
+
+    /**
+     * Returns a VoltDB bulk loader opened on a client acquired from the JVM wide
+     * {@linkplain ClientPool}. Closing the loader hands its client back to the pool.
+     * If the given success callback is also a {@linkplain ClientStatusListenerExt}, it
+     * receives the client's status events for as long as the loader is open
+     *
+     * @param errorHandler an asynchronous loader error handler
+     * @param successCallback an optional asynchronous loader success callback
+     * @param lane the client lane. Loaders opened on different lanes use different clients
+     * @return a VoltDB bulk loader
+     * @throws IOException
+     */
+    public CSVBulkDataLoader getBulkLoader(BulkLoaderErrorHandler errorHandler,
+            BulkLoaderSuccessCallback successCallback, int lane) throws IOException {
         if (isNullOrEmpty.apply(m_config.getTableName())) {
             throw new IOException("Property " + TABLENAME_PROP + " is not specified");
         }
+        final int batchSize = m_config.isAdaptiveBatch() ? m_config.getMaxBatchSize() : m_config.getBatchSize();
 
         CSVBulkDataLoader loader = null;
         int retryCount = 0;
         while(loader == null){
-            ClientImpl client = getVoltDBClient();
+            ClientImpl client = ClientPool.acquire(m_config, lane);
             try {
-                loader = new CSVBulkDataLoader(client, m_config.getTableName(), m_config.getBatchSize(), m_config.isUpsert(), errorHandler);
+                loader = new PooledBulkLoader(client, m_config.getLoadTableName(), batchSize,
+                        m_config.isUpsert() && !m_config.isStaged(),
+                        errorHandler, successCallback);
             } catch (ProcCallException pe){
-                if(client != null){
-                    try {
-                        client.close();
-                    } catch (InterruptedException e) {
-                        LOG.error("Close client interrupted.", e);
-                    }
-                }
+                ClientPool.invalidate(client);
+                ClientPool.release(client);
                 retryCount++;
                 if(retryCount > 10){
                     throw new IOException("Unable to instantiate a VoltDB bulk loader after retry");
@@ -447,17 +1148,72 @@ public class VoltConfiguration {
 
                 backOff(retryCount);
             } catch (Exception e) {
+                ClientPool.release(client);
                 throw new IOException("Unable to instantiate a VoltDB bulk loader.Configuration:" + m_config.toString(), e);
             }
         }
+        if (m_config.getSchema() != null) try {
+            checkSchema(loader.getColumnTypes());
+        } catch (IOException e) {
+            try {
+                loader.close();
+            } catch (Exception ignore) {
+            }
+            throw e;
+        }
+        if (m_config.isTimedFlush()) {
+            loader.setFlushInterval(m_config.getFlushDelay(), m_config.getFlushSeconds());
+        }
         return loader;
     }
 
+    /*
+     * Compares the column types of the table a bulk loader learned when it was opened
+     * with the ones shipped at job submission. Staging tables have one more column
+     */
+    void checkSchema(VoltType [] loaded) throws IOException {
+        final VoltType [] shipped = m_config.getSchema();
+        final int expected = shipped.length + (m_config.isStaged() ? 1 : 0);
+        boolean drifted = loaded == null || loaded.length != expected;
+        for (int i = 0; !drifted && i < shipped.length; ++i) {
+            drifted = shipped[i] != loaded[i];
+        }
+        if (drifted) {
+            invalidateTableTypes(m_config.getHosts(), m_config.getTableName());
+            throw new IOException("Table " + m_config.getLoadTableName() + " schema changed since job submission, from "
+                    + Arrays.toString(shipped) + " to " + Arrays.toString(loaded));
+        }
+    }
+
+    /*
+     * A bulk loader that hands its client back to the pool when it is closed
+     */
+    private static class PooledBulkLoader extends CSVBulkDataLoader {
+        private final ClientPool.Loan m_loan;
+
+        PooledBulkLoader(ClientImpl client, String tableName, int batchSize, boolean upsert,
+                BulkLoaderErrorHandler errorHandler, BulkLoaderSuccessCallback successCallback) throws Exception {
+            super(client, tableName, batchSize, upsert, errorHandler, successCallback);
+            m_loan = new ClientPool.Loan(client, successCallback);
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (!m_loan.close()) return;
+            try {
+                super.close();
+            } finally {
+                m_loan.release();
+            }
+        }
+    }
+
     private static void backOff(int retryCount) throws IOException{
 
         try {
-            Thread.sleep(200 * retryCount);
+            Thread.sleep(RetryQueue.backoffMillis(retryCount, 200, 5000));
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             LOG.error("Retry interrupted.", e);
         }
     }
@@ -480,6 +1236,40 @@ public class VoltConfiguration {
         private final long m_clientTimeout;
         private final int m_maxBulkLoaderErrors;
         private final boolean m_upsert;
+        private final boolean m_clientAffinity;
+        private final boolean m_topologyAware;
+        private final int m_typeCacheTtl;
+        private final int m_loaderParallelism;
+        private final boolean m_stripeByKey;
+        private final int m_clientIdleSeconds;
+        private final int m_heartbeatSeconds;
+        private final boolean m_asyncWriter;
+        private final int m_writerQueueSize;
+        private final boolean m_adaptiveBatch;
+        private final int m_minBatchSize;
+        private final int m_maxBatchSize;
+        private final int m_batchTargetLatency;
+        private final int m_batchTargetBytes;
+        private final int m_batchPartitions;
+        private final long m_rowsPerSecond;
+        private final long m_bytesPerSecond;
+        private final int m_rateTasks;
+        private final String m_jobId;
+        private final String m_procedureName;
+        private final String m_stagingTableName;
+        private final String m_attemptId;
+        private final int m_flushDelay;
+        private final VoltType [] m_schema;
+        private final RowValidator.Column [] m_columns;
+        private final boolean m_validateRows;
+        private final String m_rejectDir;
+        private final long m_maxRejects;
+        private final int m_flushSeconds;
+        private final int m_retryAttempts;
+        private final String [] m_retryStatuses;
+        private final long m_retryBackoff;
+        private final long m_retryBackoffMax;
+        private final int m_retryQueueSize;
 
         /**
          * @param tableName destination table name
@@ -493,25 +1283,455 @@ public class VoltConfiguration {
          */
         public Config(String tableName, String[] hosts, String userName, String password,
                 int batchSize, long clientTimeout, int bulkLoaderMaxErrors, boolean upsert){
-            m_tableName = tableName;
-            m_hosts = hosts;
-            m_userName = userName;
-            m_password = password;
-            m_batchSize = batchSize;
-            m_clientTimeout = clientTimeout;
-            m_maxBulkLoaderErrors = bulkLoaderMaxErrors;
-            m_upsert = upsert;
+            this(new Builder(tableName, hosts, userName, password, batchSize, clientTimeout, bulkLoaderMaxErrors, upsert));
+        }
+
+        private Config(Builder builder) {
+            m_tableName = builder.m_tableName;
+            m_hosts = builder.m_hosts != null ? builder.m_hosts.clone() : null;
+            m_userName = builder.m_userName;
+            m_password = builder.m_password;
+            m_batchSize = builder.m_batchSize;
+            m_clientTimeout = builder.m_clientTimeout;
+            m_maxBulkLoaderErrors = builder.m_maxBulkLoaderErrors;
+            m_upsert = builder.m_upsert;
+            m_clientAffinity = builder.m_clientAffinity;
+            m_topologyAware = builder.m_topologyAware;
+            m_typeCacheTtl = builder.m_typeCacheTtl;
+            m_loaderParallelism = builder.m_loaderParallelism;
+            m_stripeByKey = builder.m_stripeByKey;
+            m_clientIdleSeconds = builder.m_clientIdleSeconds;
+            m_heartbeatSeconds = builder.m_heartbeatSeconds;
+            m_asyncWriter = builder.m_asyncWriter;
+            m_writerQueueSize = builder.m_writerQueueSize;
+            m_adaptiveBatch = builder.m_adaptiveBatch;
+            m_minBatchSize = builder.m_minBatchSize;
+            m_maxBatchSize = builder.m_maxBatchSize;
+            m_batchTargetLatency = builder.m_batchTargetLatency;
+            m_batchTargetBytes = builder.m_batchTargetBytes;
+            m_batchPartitions = builder.m_batchPartitions;
+            m_rowsPerSecond = builder.m_rowsPerSecond;
+            m_bytesPerSecond = builder.m_bytesPerSecond;
+            m_rateTasks = builder.m_rateTasks;
+            m_jobId = builder.m_jobId;
+            m_procedureName = builder.m_procedureName;
+            m_stagingTableName = builder.m_stagingTableName;
+            m_attemptId = builder.m_attemptId;
+            m_flushDelay = builder.m_flushDelay;
+            m_schema = builder.m_schema;
+            m_columns = builder.m_columns;
+            m_validateRows = builder.m_validateRows;
+            m_rejectDir = builder.m_rejectDir;
+            m_maxRejects = builder.m_maxRejects;
+            m_flushSeconds = builder.m_flushSeconds;
+            m_retryAttempts = builder.m_retryAttempts;
+            m_retryStatuses = builder.m_retryStatuses;
+            m_retryBackoff = builder.m_retryBackoff;
+            m_retryBackoffMax = builder.m_retryBackoffMax;
+            m_retryQueueSize = builder.m_retryQueueSize;
+        }
+
+        /**
+         * Collects configuration properties, and builds the immutable {@linkplain Config}
+         * they describe
+         */
+        public static class Builder {
+
+            private final String m_tableName;
+            private final String [] m_hosts;
+            private final String m_userName;
+            private final String m_password;
+            private final int m_batchSize;
+            private final long m_clientTimeout;
+            private final int m_maxBulkLoaderErrors;
+            private final boolean m_upsert;
+            private boolean m_clientAffinity = CLIENT_AFFINITY_DFLT;
+            private boolean m_topologyAware = TOPOLOGY_AWARE_DFLT;
+            private int m_typeCacheTtl = TYPE_CACHE_TTL_DFLT;
+            private int m_loaderParallelism = LOADER_PARALLELISM_DFLT;
+            private boolean m_stripeByKey = false;
+            private int m_clientIdleSeconds = CLIENT_IDLE_SECONDS_DFLT;
+            private int m_heartbeatSeconds = HEARTBEAT_SECONDS_DFLT;
+            private boolean m_asyncWriter = false;
+            private int m_writerQueueSize = WRITER_QUEUE_SIZE_DFLT;
+            private boolean m_adaptiveBatch = false;
+            private int m_minBatchSize = BATCH_MIN_DFLT;
+            private int m_maxBatchSize = BATCH_MAX_DFLT;
+            private int m_batchTargetLatency = BATCH_TARGET_LATENCY_DFLT;
+            private int m_batchTargetBytes = BATCH_TARGET_BYTES_DFLT;
+            private int m_batchPartitions = 0;
+            private long m_rowsPerSecond = 0L;
+            private long m_bytesPerSecond = 0L;
+            private int m_rateTasks = 1;
+            private String m_jobId = null;
+            private String m_procedureName = null;
+            private String m_stagingTableName = null;
+            private String m_attemptId = null;
+            private int m_flushDelay = FLUSHDELAY_DFLT;
+            private VoltType [] m_schema = null;
+            private RowValidator.Column [] m_columns = null;
+            private boolean m_validateRows = VALIDATE_ROWS_DFLT;
+            private String m_rejectDir = null;
+            private long m_maxRejects = REJECT_MAX_ROWS_DFLT;
+            private int m_flushSeconds = FLUSHSECONDS_DFLT;
+            private int m_retryAttempts;
+            private String [] m_retryStatuses = RETRY_STATUSES_DFLT.split(",");
+            private long m_retryBackoff = RETRY_BACKOFF_DFLT;
+            private long m_retryBackoffMax = RETRY_BACKOFF_MAX_DFLT;
+            private int m_retryQueueSize = RETRY_QUEUE_SIZE_DFLT;
+
+            /**
+             * @param tableName destination table name
+             * @param hosts an array of host names
+             * @param userName The user name for client connection
+             * @param password The password  for client connection
+             * @param batchSize The batch size for CSVBulkLoader
+             * @param clientTimeOut The client timeout in milliseconds
+             * @param bulkLoaderMaxErrors The maximal number of errors before CSVBulkLoader stops processing input
+             * @param upsert To upsert data or not.
+             */
+            public Builder(String tableName, String[] hosts, String userName, String password,
+                    int batchSize, long clientTimeout, int bulkLoaderMaxErrors, boolean upsert){
+                m_tableName = tableName;
+                m_hosts = hosts;
+                m_userName = userName;
+                m_password = password;
+                m_batchSize = batchSize;
+                m_clientTimeout = clientTimeout;
+                m_maxBulkLoaderErrors = bulkLoaderMaxErrors;
+                m_upsert = upsert;
+                m_retryAttempts = upsert ? RETRY_MAX_DFLT : 0;
+            }
+
+            /**
+             * Sets whether or not the client routes partitioned rows to their
+             * partition leaders
+             *
+             * @param clientAffinity client affinity flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setClientAffinity(boolean clientAffinity) {
+                m_clientAffinity = clientAffinity;
+                return this;
+            }
+
+            /**
+             * Sets whether or not clients discover the cluster's nodes from the configured
+             * hosts, and connect to nodes that join the cluster during the load
+             *
+             * @param topologyAware topology awareness flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setTopologyAware(boolean topologyAware) {
+                m_topologyAware = topologyAware;
+                return this;
+            }
+
+            /**
+             * Sets how long cached table column types are used before they are looked up again
+             *
+             * @param seconds time to live in seconds. Zero uses them until they are invalidated
+             * @return itself for chained setter invocations
+             */
+            public Builder setTypeCacheTtl(int seconds) {
+                m_typeCacheTtl = Math.max(0, seconds);
+                return this;
+            }
+
+            /**
+             * Sets how many bulk loaders a record writer stripes rows across
+             *
+             * @param loaderParallelism number of loaders. Values less than one are read as one
+             * @return itself for chained setter invocations
+             */
+            public Builder setLoaderParallelism(int loaderParallelism) {
+                m_loaderParallelism = Math.max(1, loaderParallelism);
+                return this;
+            }
+
+            /**
+             * Sets whether rows are striped across loaders by their record key's hash,
+             * or round robin
+             *
+             * @param stripeByKey stripe by key flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setStripeByKey(boolean stripeByKey) {
+                m_stripeByKey = stripeByKey;
+                return this;
+            }
+
+            /**
+             * Sets how long pooled clients stay connected after their last user releases them
+             *
+             * @param clientIdleSeconds idle time in seconds. Zero, or less, closes them at once
+             * @return itself for chained setter invocations
+             */
+            public Builder setClientIdleSeconds(int clientIdleSeconds) {
+                m_clientIdleSeconds = clientIdleSeconds;
+                return this;
+            }
+
+            /**
+             * Sets how often writers report progress to their task while their loaders
+             * feed, or complete rows
+             *
+             * @param heartbeatSeconds heartbeat interval in seconds. Zero disables heartbeats
+             * @return itself for chained setter invocations
+             */
+            public Builder setHeartbeatSeconds(int heartbeatSeconds) {
+                m_heartbeatSeconds = Math.max(0, heartbeatSeconds);
+                return this;
+            }
+
+            /**
+             * Sets whether record writers hand rows to a sender thread, that feeds them
+             * to the loaders, instead of feeding them on the task thread
+             *
+             * @param asyncWriter asynchronous writer flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setAsyncWriter(boolean asyncWriter) {
+                m_asyncWriter = asyncWriter;
+                return this;
+            }
+
+            /**
+             * Sets how many records may await the sender thread before the writer blocks
+             *
+             * @param writerQueueSize queue size. Values less than one are read as the default
+             * @return itself for chained setter invocations
+             */
+            public Builder setWriterQueueSize(int writerQueueSize) {
+                m_writerQueueSize = writerQueueSize > 0 ? writerQueueSize : WRITER_QUEUE_SIZE_DFLT;
+                return this;
+            }
+
+            /**
+             * Sets whether record writers adapt the number of rows they feed to loaders
+             * between flushes, instead of relying on the fixed batch size
+             *
+             * @param adaptiveBatch adaptive batch flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setAdaptiveBatch(boolean adaptiveBatch) {
+                m_adaptiveBatch = adaptiveBatch;
+                return this;
+            }
+
+            /**
+             * Sets the adaptive batch size bounds. Non positive values are read as their defaults
+             *
+             * @param minBatchSize lower bound
+             * @param maxBatchSize upper bound. It is raised to the lower bound if less than it
+             * @return itself for chained setter invocations
+             */
+            public Builder setBatchBounds(int minBatchSize, int maxBatchSize) {
+                m_minBatchSize = minBatchSize > 0 ? minBatchSize : BATCH_MIN_DFLT;
+                m_maxBatchSize = Math.max(m_minBatchSize, maxBatchSize > 0 ? maxBatchSize : BATCH_MAX_DFLT);
+                return this;
+            }
+
+            /**
+             * Sets the adaptive batch targets. Non positive values are read as their defaults
+             *
+             * @param targetLatencyMillis batch round trip latency target in milliseconds
+             * @param targetBytes batch size target in bytes
+             * @return itself for chained setter invocations
+             */
+            public Builder setBatchTargets(int targetLatencyMillis, int targetBytes) {
+                m_batchTargetLatency = targetLatencyMillis > 0 ? targetLatencyMillis : BATCH_TARGET_LATENCY_DFLT;
+                m_batchTargetBytes = targetBytes > 0 ? targetBytes : BATCH_TARGET_BYTES_DFLT;
+                return this;
+            }
+
+            /**
+             * Sets how many partition batches bulk loaders split the rows they are fed
+             * between flushes into
+             *
+             * @param partitions partition batch count. Zero, or less, takes the cluster's partition count
+             * @return itself for chained setter invocations
+             */
+            public Builder setBatchPartitions(int partitions) {
+                m_batchPartitions = Math.max(0, partitions);
+                return this;
+            }
+
+            /**
+             * Sets the job wide ingest budget
+             *
+             * @param rowsPerSecond job wide rows per second. Zero, or less, is unlimited
+             * @param bytesPerSecond job wide bytes per second. Zero, or less, is unlimited
+             * @param tasks number of tasks the budget is split across. Values less than one are read as one
+             * @return itself for chained setter invocations
+             */
+            public Builder setRateLimits(long rowsPerSecond, long bytesPerSecond, int tasks) {
+                m_rowsPerSecond = Math.max(0L, rowsPerSecond);
+                m_bytesPerSecond = Math.max(0L, bytesPerSecond);
+                m_rateTasks = Math.max(1, tasks);
+                return this;
+            }
+
+            /**
+             * Sets the id of the job writers run in. Writers of the same job share their rate limit
+             *
+             * @param jobId job id
+             * @return itself for chained setter invocations
+             */
+            public Builder setJobId(String jobId) {
+                m_jobId = jobId;
+                return this;
+            }
+
+            /**
+             * Sets the stored procedure invoked with batches of rows. When it is not
+             * set rows are bulk loaded into the destination table
+             *
+             * @param procedureName stored procedure name
+             * @return itself for chained setter invocations
+             */
+            public Builder setProcedureName(String procedureName) {
+                m_procedureName = procedureName;
+                return this;
+            }
+
+            /**
+             * Sets the staging table task attempts load into
+             *
+             * @param stagingTableName staging table name
+             * @return itself for chained setter invocations
+             */
+            public Builder setStagingTableName(String stagingTableName) {
+                m_stagingTableName = stagingTableName;
+                return this;
+            }
+
+            /**
+             * Sets the id of the task attempt writers run in
+             *
+             * @param attemptId task attempt id
+             * @return itself for chained setter invocations
+             */
+            public Builder setAttemptId(String attemptId) {
+                m_attemptId = attemptId;
+                return this;
+            }
+
+            /**
+             * Sets the destination table's column types, as resolved at job submission
+             *
+             * @param schema column types, or null if they must be queried from VoltDB
+             * @return itself for chained setter invocations
+             */
+            public Builder setSchema(VoltType [] schema) {
+                m_schema = schema;
+                m_columns = schema == null ? null : RowValidator.columnsFor(schema);
+                return this;
+            }
+
+            /**
+             * Sets the destination table's columns, and their constraints, as resolved at
+             * job submission
+             *
+             * @param columns table columns, or null if they must be queried from VoltDB
+             * @return itself for chained setter invocations
+             */
+            public Builder setColumns(RowValidator.Column [] columns) {
+                m_columns = columns;
+                m_schema = columns == null ? null : RowValidator.typesOf(columns);
+                return this;
+            }
+
+            /**
+             * Sets whether bulk loaded records are checked against the destination table's
+             * column constraints before they are batched
+             *
+             * @param validateRows row validation flag
+             * @return itself for chained setter invocations
+             */
+            public Builder setValidateRows(boolean validateRows) {
+                m_validateRows = validateRows;
+                return this;
+            }
+
+            /**
+             * Sets where, and how many, rows rejected by VoltDB each task writes
+             *
+             * @param rejectDir reject files directory, or null to only log rejected rows
+             * @param maxRejects how many rejected rows each task writes at most
+             * @return itself for chained setter invocations
+             */
+            public Builder setRejects(String rejectDir, long maxRejects) {
+                m_rejectDir = rejectDir != null && !rejectDir.trim().isEmpty() ? rejectDir.trim() : null;
+                m_maxRejects = maxRejects > 0L ? maxRejects : REJECT_MAX_ROWS_DFLT;
+                return this;
+            }
+
+            /**
+             * Sets how often loaders flush their pending batches, so that rows fed by slow
+             * writers reach VoltDB with a bounded delay
+             *
+             * @param delay seconds before the first flush
+             * @param seconds seconds between flushes. Zero, or less, disables timed flushes
+             * @return itself for chained setter invocations
+             */
+            public Builder setFlushInterval(int delay, int seconds) {
+                m_flushDelay = Math.max(0, delay);
+                m_flushSeconds = Math.max(0, seconds);
+                return this;
+            }
+
+            /**
+             * Sets how rows that failed with a transient status are retried
+             *
+             * @param attempts how many times a row is retried. Zero, or less, disables retries
+             * @param backoffMillis milliseconds before the first retry
+             * @param backoffMaxMillis retry back off cap
+             * @param queueSize how many rows may wait for a retry at once
+             * @return itself for chained setter invocations
+             */
+            public Builder setRetries(int attempts, long backoffMillis, long backoffMaxMillis, int queueSize) {
+                m_retryAttempts = Math.max(0, attempts);
+                m_retryBackoff = Math.max(1L, backoffMillis);
+                m_retryBackoffMax = Math.max(m_retryBackoff, backoffMaxMillis);
+                m_retryQueueSize = Math.max(1, queueSize);
+                return this;
+            }
+
+            /**
+             * Sets the client response statuses that are retried
+             *
+             * @param statuses status names, like CONNECTION_LOST, or numbers. None keeps the current ones
+             * @return itself for chained setter invocations
+             */
+            public Builder setRetryStatuses(String... statuses) {
+                if (statuses == null || statuses.length == 0) {
+                    return this;
+                }
+                for (String status: statuses) {
+                    RetryQueue.statusFor(status);
+                }
+                m_retryStatuses = statuses;
+                return this;
+            }
+
+            /**
+             * @return the configuration collected so far
+             */
+            public Config build() {
+                return new Config(this);
+            }
         }
 
         public String getUserName() {
             return m_userName;
         }
 
-        private String getPassword() {
+        String getPassword() {
             return m_password;
         }
 
-        private String [] getHosts() {
+        String [] getHosts() {
             return m_hosts;
         }
 
@@ -535,10 +1755,187 @@ public class VoltConfiguration {
             return m_upsert;
         }
 
+        public boolean isClientAffinity() {
+            return m_clientAffinity;
+        }
+
+        public boolean isTopologyAware() {
+            return m_topologyAware;
+        }
+
+        public int getTypeCacheTtl() {
+            return m_typeCacheTtl;
+        }
+
+        public int getLoaderParallelism() {
+            return m_loaderParallelism;
+        }
+
+        public boolean isStripeByKey() {
+            return m_stripeByKey;
+        }
+
+        public int getClientIdleSeconds() {
+            return m_clientIdleSeconds;
+        }
+
+        public int getHeartbeatSeconds() {
+            return m_heartbeatSeconds;
+        }
+
+        public boolean isAsyncWriter() {
+            return m_asyncWriter;
+        }
+
+        public int getWriterQueueSize() {
+            return m_writerQueueSize;
+        }
+
+        public boolean isAdaptiveBatch() {
+            return m_adaptiveBatch;
+        }
+
+        public int getMinBatchSize() {
+            return m_minBatchSize;
+        }
+
+        public int getMaxBatchSize() {
+            return m_maxBatchSize;
+        }
+
+        public int getBatchTargetLatency() {
+            return m_batchTargetLatency;
+        }
+
+        public int getBatchTargetBytes() {
+            return m_batchTargetBytes;
+        }
+
+        /**
+         * @return the configured partition batch count, or zero to take the cluster's partition count
+         */
+        public int getBatchPartitions() {
+            return m_batchPartitions;
+        }
+
+        public long getRowsPerSecond() {
+            return m_rowsPerSecond;
+        }
+
+        public long getBytesPerSecond() {
+            return m_bytesPerSecond;
+        }
+
+        public int getRateTasks() {
+            return m_rateTasks;
+        }
+
+        /**
+         * @return whether the job has a rows, or bytes per second budget
+         */
+        public boolean isRateLimited() {
+            return m_rowsPerSecond > 0L || m_bytesPerSecond > 0L;
+        }
+
+        public String getJobId() {
+            return m_jobId;
+        }
+
+        public String getProcedureName() {
+            return m_procedureName;
+        }
+
+        public String getStagingTableName() {
+            return m_stagingTableName;
+        }
+
+        /**
+         * @return whether task attempts load into a staging table
+         */
+        public boolean isStaged() {
+            return !isNullOrEmpty.apply(m_stagingTableName);
+        }
+
+        /**
+         * @return the table loaders insert rows into: the staging table, if any, or
+         *   the destination table
+         */
+        public String getLoadTableName() {
+            return isStaged() ? m_stagingTableName : m_tableName;
+        }
+
+        public String getAttemptId() {
+            return m_attemptId;
+        }
+
+        public VoltType [] getSchema() {
+            return m_schema;
+        }
+
+        public RowValidator.Column [] getColumns() {
+            return m_columns;
+        }
+
+        public boolean isValidateRows() {
+            return m_validateRows;
+        }
+
+        public String getRejectDir() {
+            return m_rejectDir;
+        }
+
+        public long getMaxRejects() {
+            return m_maxRejects;
+        }
+
+        public int getFlushDelay() {
+            return m_flushDelay;
+        }
+
+        public int getFlushSeconds() {
+            return m_flushSeconds;
+        }
+
+        /**
+         * @return whether loaders flush their pending batches periodically
+         */
+        public boolean isTimedFlush() {
+            return m_flushSeconds > 0;
+        }
+
+        public int getRetryAttempts() {
+            return m_retryAttempts;
+        }
+
+        public String [] getRetryStatuses() {
+            return m_retryStatuses;
+        }
+
+        public long getRetryBackoff() {
+            return m_retryBackoff;
+        }
+
+        public long getRetryBackoffMax() {
+            return m_retryBackoffMax;
+        }
+
+        public int getRetryQueueSize() {
+            return m_retryQueueSize;
+        }
+
+        /**
+         * @return the retry policy, or null if retries are disabled
+         */
+        public RetryQueue.Policy getRetryPolicy() {
+            if (m_retryAttempts <= 0) return null;
+            return new RetryQueue.Policy(m_retryStatuses, m_retryAttempts, m_retryBackoff, m_retryBackoffMax, m_retryQueueSize);
+        }
+
         @Override
         public String toString() {
-            return String.format("Table: %s, User: %s, Password: %s, Servers: %s, Batch Size: %d, Client Timeout: %d, Max errors: %d, upsert: %s",
-                    m_tableName, m_userName, m_password, Arrays.toString(m_hosts), m_batchSize, m_clientTimeout, m_maxBulkLoaderErrors, Boolean.toString(m_upsert));
+            return String.format("Table: %s, User: %s, Password: %s, Servers: %s, Batch Size: %d, Client Timeout: %d, Max errors: %d, upsert: %s, client affinity: %s, loader parallelism: %d, flush delay: %d, flush seconds: %d",
+                    m_tableName, m_userName, m_password, Arrays.toString(m_hosts), m_batchSize, m_clientTimeout, m_maxBulkLoaderErrors, Boolean.toString(m_upsert),
+                    Boolean.toString(m_clientAffinity), m_loaderParallelism, m_flushDelay, m_flushSeconds);
         }
     }
 }
\ No newline at end of file
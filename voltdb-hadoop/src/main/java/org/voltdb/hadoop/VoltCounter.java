@@ -0,0 +1,59 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+/**
+ * Hadoop counters reported by the VoltDB record writers
+ */
+public enum VoltCounter {
+    /** Rows fed to the loaders, including resubmitted ones */
+    ROWS_SUBMITTED,
+    /** Rows VoltDB acknowledged as loaded */
+    ROWS_ACKNOWLEDGED,
+    /** Rows that failed to load, and were handed to the fault collector, not counting rejected records */
+    ROWS_FAILED,
+    /** Estimated serialized size, in bytes, of the rows fed to the loaders */
+    BYTES_SUBMITTED,
+    /** Batches VoltDB acknowledged */
+    BATCHES,
+    /** Milliseconds the loaders' clients signaled backpressure, summed across clients */
+    BACKPRESSURE_MILLIS,
+    /** Median batch round trip latency in microseconds. Job totals add up the tasks' medians */
+    BATCH_LATENCY_P50_MICROS,
+    /** 99th percentile batch round trip latency in microseconds. Job totals add up the tasks' percentiles */
+    BATCH_LATENCY_P99_MICROS,
+    /** 99.9th percentile batch round trip latency in microseconds. Job totals add up the tasks' percentiles */
+    BATCH_LATENCY_P999_MICROS,
+    /** Longest batch round trip latency in microseconds. Job totals add up the tasks' maximums */
+    BATCH_LATENCY_MAX_MICROS,
+    /** Milliseconds writers waited for the job's rate limit */
+    THROTTLED_MILLIS,
+    /** Rows resubmitted after they failed with a retryable status */
+    RETRIES,
+    /** Rows that failed with a retryable status, but ran out of attempts, or retry queue room */
+    RETRIES_EXHAUSTED,
+    /** Records rejected before they were batched, because they violate their table's column constraints */
+    ROWS_REJECTED
+}
@@ -26,24 +26,30 @@ package org.voltdb.hadoop;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
-import org.voltdb.utils.CSVBulkDataLoader;
+import org.voltdb.utils.CSVDataLoader;
 import org.voltdb.utils.RowWithMetaData;
 
-import com.google_voltpatches.common.collect.FluentIterable;
 
 /**
- * A {@link Writable} wrapper around a {@linkplain List} of object values that
+ * A {@link Writable} wrapper around a list of object values that
  * represent the field contents of a Volt table row
+ * <p>
+ * Field values are held in an array that is handed over to loaders as is, when
+ * its length matches the number of fields. Once handed over the record moves to
+ * a new array when it is next written, or cleared, so that records may be safely
+ * reused at the cost of one array per row
  */
 public class VoltRecord implements Writable, Iterable<Object> {
-    private final List<Object> m_fields = new ArrayList<Object>(64);
+    private final static Object [] EMPTY = new Object[0];
+
+    private Object [] m_fields = EMPTY;
+    private int m_size = 0;
+    private boolean m_shared = false;
     private String m_table;
 
     /*
@@ -72,7 +78,7 @@ public class VoltRecord implements Writable, Iterable<Object> {
      */
     public VoltRecord(String tableName, Object...fields) {
         this(tableName);
-        FluentIterable.of(fields).copyInto(m_fields);
+        addAll(fields);
     }
 
     /**
@@ -84,7 +90,7 @@ public class VoltRecord implements Writable, Iterable<Object> {
      */
     public VoltRecord(String tableName, Iterable<Object> fields) {
         this(tableName);
-        FluentIterable.from(fields).copyInto(m_fields);
+        addAll(fields);
     }
 
     /**
@@ -100,13 +106,21 @@ public class VoltRecord implements Writable, Iterable<Object> {
         return this;
     }
 
+    /**
+     * @return the name of the table associated with the record's fields, if any
+     */
+    public String getTableName() {
+        return m_table;
+    }
+
     /**
      * Gets the object value for the given index into the underlying list
      * @param atIdx index
      * @return the object value at the given index
      */
     public Object get(int atIdx) {
-        return m_fields.get(atIdx);
+        checkIndex(atIdx);
+        return m_fields[atIdx];
     }
 
     /**
@@ -117,7 +131,37 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return itself for chained setter invocations
      */
     public VoltRecord set(int atIdx, Object value) {
-        m_fields.set(atIdx, value);
+        checkIndex(atIdx);
+        unshare(m_fields.length);
+        m_fields[atIdx] = value;
+        return this;
+    }
+
+    private void checkIndex(int atIdx) {
+        if (atIdx < 0 || atIdx >= m_size) {
+            throw new IndexOutOfBoundsException("Index: " + atIdx + ", Size: " + m_size);
+        }
+    }
+
+    /*
+     * Makes sure it owns a fields array with at least the given capacity
+     */
+    private void unshare(int capacity) {
+        if (m_shared || capacity > m_fields.length) {
+            m_fields = Arrays.copyOf(m_fields, Math.max(capacity, m_fields.length));
+            m_shared = false;
+        }
+    }
+
+    /**
+     * Makes room for the given number of fields, so that a record of exactly that
+     * many fields is handed over to loaders without copying its fields
+     *
+     * @param capacity expected number of fields
+     * @return itself for chained setter invocations
+     */
+    public VoltRecord ensureCapacity(int capacity) {
+        unshare(capacity);
         return this;
     }
 
@@ -128,7 +172,10 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return itself for chained setter invocations
      */
     public VoltRecord add(Object field) {
-        m_fields.add(field);
+        if (m_shared || m_size == m_fields.length) {
+            unshare(m_size == m_fields.length ? Math.max(8, m_size + (m_size >> 1)) : m_fields.length);
+        }
+        m_fields[m_size++] = field;
         return this;
     }
 
@@ -139,7 +186,9 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return itself for chained setter invocations
      */
     public VoltRecord addAll(Object [] fields) {
-        FluentIterable.of(fields).copyInto(m_fields);
+        unshare(m_size + fields.length);
+        System.arraycopy(fields, 0, m_fields, m_size, fields.length);
+        m_size += fields.length;
         return this;
     }
 
@@ -150,7 +199,9 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return itself for chained setter invocations
      */
     public VoltRecord addAll(Iterable<Object> fields) {
-        FluentIterable.from(fields).copyInto(m_fields);
+        for (Object field: fields) {
+            add(field);
+        }
         return this;
     }
 
@@ -171,7 +222,7 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return how many values contained wherein
      */
     public int size() {
-        return m_fields.size();
+        return m_size;
     }
 
     /**
@@ -180,16 +231,54 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return itself for chained setter invocations
      */
     public VoltRecord clear() {
-        m_fields.clear();
+        if (m_shared) {
+            m_fields = new Object[m_fields.length];
+            m_shared = false;
+        } else {
+            Arrays.fill(m_fields, 0, m_size, null);
+        }
+        m_size = 0;
         return this;
     }
 
+    /**
+     * @return a snapshot of the underlying list of field values
+     */
+    public Object [] toArray() {
+        return Arrays.copyOf(m_fields, m_size);
+    }
+
+    /**
+     * @param suffix a value appended to the returned array
+     * @return a copy of the underlying list of field values, followed by the given suffix
+     */
+    Object [] toArray(Object suffix) {
+        Object [] fields = Arrays.copyOf(m_fields, m_size + 1);
+        fields[m_size] = suffix;
+        return fields;
+    }
+
+    /**
+     * Hands over its field values array to a loader. It does not copy them when the
+     * array is as long as the number of fields, and after that it copies the array
+     * on its next write
+     *
+     * @return an array of field values as long as the number of fields
+     */
+    Object [] share() {
+        if (m_size != m_fields.length) {
+            m_fields = Arrays.copyOf(m_fields, m_size);
+        }
+        m_shared = true;
+        return m_fields;
+    }
+
     /**
      * @return an {@linkplain Iterator} to the underlying list of field values
      */
     @Override
     public Iterator<Object> iterator() {
-        return m_fields.iterator();
+        return Arrays.asList(m_fields).subList(0, m_size).iterator();
     }
 
     /**
@@ -197,7 +286,7 @@ public class VoltRecord implements Writable, Iterable<Object> {
      * @return true if it is empty. false if it is not
      */
     public boolean isEmpty() {
-        return m_fields.isEmpty();
+        return m_size == 0;
     }
 
     /**
@@ -211,8 +300,14 @@ public class VoltRecord implements Writable, Iterable<Object> {
         if (adapters == null) {
             throw new IOException("no adapters configured for table " + m_table);
         }
-        Text.writeString(out, m_table);
-        adapters.forOutput().adapt(out, this);
+        final StageProfiler profiler = StageProfiler.current();
+        final long token = profiler.start(StageProfiler.Stage.SERIALIZE);
+        try {
+            Text.writeString(out, m_table);
+            adapters.forOutput().adapt(out, this);
+        } finally {
+            profiler.stop(StageProfiler.Stage.SERIALIZE, token);
+        }
     }
 
     /**
@@ -222,12 +317,18 @@ public class VoltRecord implements Writable, Iterable<Object> {
      */
     @Override
     public void readFields(DataInput in) throws IOException {
-        setTableName(Text.readString(in, 512));
-        DataAdapters adapters = DataAdapters.adaptersFor(m_table, null);
-        if (adapters == null) {
-            throw new IOException("no adapters configured for table " + m_table);
+        final StageProfiler profiler = StageProfiler.current();
+        final long token = profiler.start(StageProfiler.Stage.SERIALIZE);
+        try {
+            setTableName(Text.readString(in, 512));
+            DataAdapters adapters = DataAdapters.adaptersFor(m_table, null);
+            if (adapters == null) {
+                throw new IOException("no adapters configured for table " + m_table);
+            }
+            adapters.forInput().adapt(in, this);
+        } finally {
+            profiler.stop(StageProfiler.Stage.SERIALIZE, token);
         }
-        adapters.forInput().adapt(in, this);
     }
 
     /**
@@ -236,11 +337,25 @@ public class VoltRecord implements Writable, Iterable<Object> {
      *
      * @throws IOException
      */
-    public void write(CSVBulkDataLoader loader) throws IOException {
-        RowWithMetaData meta = new RowWithMetaData(new WeakReference<VoltRecord>(this), -1);
+    public void write(CSVDataLoader loader) throws IOException {
+        write(loader, share());
+    }
+
+    /**
+     * Feeds the given snapshot of its field values to the given loader. The snapshot
+     * is also the row handle passed to the loader's callbacks, as the record may be
+     * reused by the time they are called
+     * @param loader a volt loader
+     * @param fields field values, as returned by {@link #share()}
+     *
+     * @throws IOException
+     */
+    void write(CSVDataLoader loader, Object [] fields) throws IOException {
+        RowWithMetaData meta = new RowWithMetaData(fields, -1);
         try {
-            loader.insertRow(meta, m_fields.toArray(new Object[m_fields.size()]));
+            loader.insertRow(meta, fields);
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new IOException("interrupted loader insert", e);
         }
     }
@@ -249,8 +364,11 @@ public class VoltRecord implements Writable, Iterable<Object> {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result
-                + ((m_fields == null) ? 0 : m_fields.hashCode());
+        int fieldsHash = 1;
+        for (int i = 0; i < m_size; ++i) {
+            fieldsHash = prime * fieldsHash + (m_fields[i] == null ? 0 : m_fields[i].hashCode());
+        }
+        result = prime * result + fieldsHash;
         result = prime * result + ((m_table == null) ? 0 : m_table.hashCode());
         return result;
     }
@@ -264,11 +382,13 @@ public class VoltRecord implements Writable, Iterable<Object> {
         if (getClass() != obj.getClass())
             return false;
         VoltRecord other = (VoltRecord) obj;
-        if (m_fields == null) {
-            if (other.m_fields != null)
-                return false;
-        } else if (!m_fields.equals(other.m_fields))
+        if (m_size != other.m_size)
             return false;
+        for (int i = 0; i < m_size; ++i) {
+            Object field = m_fields[i];
+            if (field == null ? other.m_fields[i] != null : !field.equals(other.m_fields[i]))
+                return false;
+        }
         if (m_table == null) {
             if (other.m_table != null)
                 return false;
@@ -279,7 +399,7 @@ public class VoltRecord implements Writable, Iterable<Object> {
 
     @Override
     public String toString() {
-        return "VoltRecord [m_fields=" + m_fields + ", m_table=" + m_table
+        return "VoltRecord [m_fields=" + Arrays.asList(m_fields).subList(0, m_size) + ", m_table=" + m_table
                 + "]";
     }
 
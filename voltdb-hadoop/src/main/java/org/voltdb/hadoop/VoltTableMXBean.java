@@ -0,0 +1,83 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop;
+
+/**
+ * Management interface of the record writers that load a VoltDB table of one cluster
+ * in this JVM. Row counts include the writers that were already closed. Batch counts,
+ * latencies, and backpressure times are sampled at most once a second
+ */
+public interface VoltTableMXBean {
+
+    String getTableName();
+
+    /**
+     * @return the loaded cluster's sorted host names
+     */
+    String getCluster();
+
+    /**
+     * @return how many writers currently load the table
+     */
+    int getOpenWriters();
+
+    long getRowsSubmitted();
+
+    long getRowsAcknowledged();
+
+    /**
+     * @return rows that failed to load, not counting rejected records
+     */
+    long getRowsFailed();
+
+    /**
+     * @return records rejected for violating the table's column constraints
+     */
+    long getRowsRejected();
+
+    /**
+     * @return rows the open writers submitted, that are neither acknowledged, nor failed
+     */
+    long getRowsOutstanding();
+
+    /**
+     * @return acknowledged rows per second, since the previous reading at least a second ago
+     */
+    double getRowsPerSecond();
+
+    /**
+     * @return whether any of the open writers' clients signals backpressure
+     */
+    boolean isBackpressure();
+
+    long getBackpressureMillis();
+
+    long getBatches();
+
+    long getBatchLatencyP50Micros();
+
+    long getBatchLatencyP99Micros();
+
+    long getBatchLatencyMaxMicros();
+}
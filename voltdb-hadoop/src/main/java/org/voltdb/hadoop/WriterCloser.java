@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * The close sequence shared by the mapred, and mapreduce record writers. It closes
+ * the writer's loaders, and checks its faults. Then, whether or not they failed, it
+ * stops the writer's heartbeat, drains, and releases the writer's stage profiler,
+ * writes the task's load statistics, and adds the loaders' counters, and stage times
+ * to the task's counters.
+ * <p>
+ * Reporting never fails the close: its errors are logged, so that they cannot hide
+ * a loader failure, or a reached fault limit.
+ */
+public class WriterCloser {
+
+    private final static Log LOG = LogFactory.getLog("org.voltdb.hadoop");
+
+    private WriterCloser() {
+    }
+
+    /**
+     * @param job job configuration
+     * @param heartbeat the writer's {@linkplain Heartbeat}
+     * @param profiler the writer's {@linkplain StageProfiler}
+     * @param loader what the writer closes: a {@linkplain RecordLoader}, or a {@linkplain MultiTableLoader}
+     * @param faults the fault collector checked once the loader is closed, or null if
+     *   the loader checks its own faults
+     * @param loaders the {@linkplain RecordLoader}s reported on
+     * @param counters the counter sink: a mapred {@linkplain Reporter}, or a mapreduce
+     *   {@linkplain TaskAttemptContext}. It may be null
+     * @throws IOException when the loader failed to close, or the faults reached their limit
+     */
+    public static void close(Configuration job, Heartbeat heartbeat, StageProfiler profiler, Closeable loader,
+            FaultCollector faults, List<RecordLoader> loaders, Progressable counters) throws IOException {
+        heartbeat.reportTo(counters);
+        try {
+            loader.close();
+        } finally {
+            heartbeat.stop();
+            try {
+                if (faults != null) try {
+                    faults.check(true);
+                } finally {
+                    faults.close();
+                }
+            } finally {
+                try {
+                    report(job, profiler, loaders, counters);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to report VoltDB load statistics", e);
+                }
+            }
+        }
+    }
+
+    private static void report(Configuration job, StageProfiler profiler, List<RecordLoader> loaders,
+            Progressable counters) {
+        profiler.release();
+        final Map<String, Long> stages = profiler.drain();
+        LoadReport.writeTaskStats(job, loaders);
+        if (counters == null) return;
+        for (Map.Entry<VoltCounter, Long> counter: RecordLoader.countersOf(loaders).entrySet()) {
+            increment(counters, counter.getKey(), counter.getValue());
+        }
+        for (Map.Entry<String, Long> stage: stages.entrySet()) {
+            increment(counters, StageProfiler.GROUP, stage.getKey(), stage.getValue());
+        }
+    }
+
+    private static void increment(Progressable counters, Enum<?> counter, long amount) {
+        if (counters instanceof Reporter) {
+            ((Reporter)counters).incrCounter(counter, amount);
+        } else if (counters instanceof TaskAttemptContext) {
+            ((TaskAttemptContext)counters).getCounter(counter).increment(amount);
+        }
+    }
+
+    private static void increment(Progressable counters, String group, String counter, long amount) {
+        if (counters instanceof Reporter) {
+            ((Reporter)counters).incrCounter(group, counter, amount);
+        } else if (counters instanceof TaskAttemptContext) {
+            ((TaskAttemptContext)counters).getCounter(group, counter).increment(amount);
+        }
+    }
+}
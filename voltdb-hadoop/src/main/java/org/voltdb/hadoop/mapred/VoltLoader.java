@@ -24,7 +24,9 @@
 package org.voltdb.hadoop.mapred;
 
 import java.io.IOException;
+import java.util.Map;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobClient;
@@ -33,8 +35,9 @@ import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reporter;
-import org.apache.hadoop.mapred.lib.IdentityReducer;
+import org.voltdb.hadoop.LoadReport;
 import org.voltdb.hadoop.LoaderOpts;
+import org.voltdb.hadoop.StageProfiler;
 import org.voltdb.hadoop.TextInputAdapter;
 import org.voltdb.hadoop.VoltConfiguration;
 import org.voltdb.hadoop.VoltRecord;
@@ -48,12 +51,17 @@ public class VoltLoader {
 
         private VoltConfiguration m_conf;
         private TextInputAdapter m_adapter;
+        private Text m_key;
         private String m_table;
+        private Reporter m_reporter;
+        private StageProfiler m_profiler;
 
         @Override
         public void configure(JobConf job) {
+            m_profiler = StageProfiler.open(job);
             m_conf = new VoltConfiguration(job);
             m_table = m_conf.getConfig().getTableName();
+            m_key = new Text(m_table);
             try {
                 m_adapter = new TextInputAdapter(m_conf.getTableColumnTypes());
             } catch (IOException e) {
@@ -65,8 +73,22 @@ public class VoltLoader {
         public void map(LongWritable key, Text value,
                 OutputCollector<Text, VoltRecord> output, Reporter reporter)
                 throws IOException {
+            m_reporter = reporter;
             VoltRecord rec = m_adapter.adapt(value, null).setTableName(m_table);
-            output.collect(new Text(m_table), rec);
+            output.collect(m_key, rec);
+        }
+
+        /**
+         * Publishes the profiled parse times, if any
+         */
+        @Override
+        public void close() throws IOException {
+            m_profiler.release();
+            for (Map.Entry<String, Long> stage: m_profiler.drain().entrySet()) {
+                if (m_reporter != null) {
+                    m_reporter.incrCounter(StageProfiler.GROUP, stage.getKey(), stage.getValue());
+                }
+            }
         }
 
     }
@@ -84,12 +106,16 @@ public class VoltLoader {
         conf.setOutputFormat(VoltOutputFormat.class);
 
         conf.setMapperClass(LoadMapper.class);
-        conf.setReducerClass(IdentityReducer.class);
-        conf.setCombinerClass(IdentityReducer.class);
 
         client.setConf(conf);
         try {
             JobClient.runJob(conf);
+            final String reportDir = conf.get(VoltConfiguration.REPORT_DIR_PROP);
+            if (reportDir != null && !reportDir.trim().isEmpty()) {
+                final LoadReport report = LoadReport.read(conf, new Path(reportDir.trim()));
+                report.write(conf, new Path(reportDir.trim()));
+                System.out.print(report);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
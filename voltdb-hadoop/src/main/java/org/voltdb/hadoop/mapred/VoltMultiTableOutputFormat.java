@@ -0,0 +1,99 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop.mapred;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import org.voltdb.hadoop.Heartbeat;
+import org.voltdb.hadoop.MultiTableLoader;
+import org.voltdb.hadoop.StageProfiler;
+import org.voltdb.hadoop.VoltConfiguration;
+import org.voltdb.hadoop.VoltRecord;
+import org.voltdb.hadoop.WriterCloser;
+
+/**
+ * An output format that routes each record to the VoltDB table named by its key, or
+ * by its {@linkplain VoltRecord#getTableName()} when the key is empty, so that a single
+ * pass over the input may feed several tables. Routing by key is disabled by setting
+ * {@link VoltConfiguration#ROUTE_BY_KEY_PROP} to false.
+ */
+public class VoltMultiTableOutputFormat implements OutputFormat<Text,VoltRecord> {
+
+    public static class VoltMultiTableWriter implements RecordWriter<Text, VoltRecord> {
+        protected final MultiTableLoader m_loader;
+        protected final Heartbeat m_heartbeat;
+        protected final StageProfiler m_profiler;
+        protected final JobConf m_job;
+
+        public VoltMultiTableWriter(JobConf job) throws IOException  {
+            this(job, null);
+        }
+
+        /**
+         * @param job job configuration
+         * @param progress the task's progress reporter, to which it sends heartbeats
+         *   while its loaders make progress
+         * @throws IOException when it is configured for procedure, or staged loads
+         */
+        public VoltMultiTableWriter(JobConf job, Progressable progress) throws IOException  {
+            m_job = job;
+            m_profiler = StageProfiler.open(job);
+            m_loader = new MultiTableLoader(job, m_profiler);
+            m_heartbeat = new Heartbeat("tables", m_loader, progress,
+                    job.getInt(VoltConfiguration.HEARTBEAT_SECONDS_PROP, VoltConfiguration.HEARTBEAT_SECONDS_DFLT));
+        }
+
+        @Override
+        public void write(Text key, VoltRecord record) throws IOException {
+            m_loader.write(key, record);
+        }
+
+        @Override
+        public void close(Reporter reporter) throws IOException {
+            WriterCloser.close(m_job, m_heartbeat, m_profiler, m_loader, null, m_loader.getLoaders(), reporter);
+        }
+    }
+
+    @Override
+    public RecordWriter<Text, VoltRecord> getRecordWriter(FileSystem ignored,
+            JobConf job, String name, Progressable progress) throws IOException {
+        return new VoltMultiTableWriter(job, progress);
+    }
+
+    @Override
+    public void checkOutputSpecs(FileSystem ignored, JobConf job)
+            throws IOException {
+        if (job.getStrings(VoltConfiguration.HOSTNAMES_PROP, new String[]{}).length == 0) {
+            throw new IOException("Property " + VoltConfiguration.HOSTNAMES_PROP + " must be defined");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop.mapred;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.JobContext;
+import org.apache.hadoop.mapred.OutputCommitter;
+import org.apache.hadoop.mapred.TaskAttemptContext;
+import org.voltdb.hadoop.LoadReport;
+import org.voltdb.hadoop.StagingCommitter;
+import org.voltdb.hadoop.VoltConfiguration;
+
+/**
+ * It commits, and aborts task attempts that load into a staging table, and
+ * discards the rows of uncommitted attempts when the job ends, and those finished jobs
+ * left behind when it is set up. It also marks committed
+ * attempts' load statistics, when a report directory is configured. It does nothing otherwise.
+ * {@link VoltConfiguration#configureStaging(org.apache.hadoop.conf.Configuration, String)}, and
+ * {@link VoltConfiguration#configureReport(org.apache.hadoop.conf.Configuration, String)}
+ * set it as the job's output committer
+ */
+public class VoltOutputCommitter extends OutputCommitter {
+
+    @Override
+    public void setupJob(JobContext jobContext) throws IOException {
+        if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+            stagingFor(jobContext).setupJob(jobContext.getJobID().toString());
+        }
+    }
+
+    @Override
+    public void setupTask(TaskAttemptContext taskContext) throws IOException {
+    }
+
+    @Override
+    public boolean needsTaskCommit(TaskAttemptContext taskContext) throws IOException {
+        return StagingCommitter.isStaged(taskContext.getConfiguration())
+                || LoadReport.isReported(taskContext.getConfiguration());
+    }
+
+    @Override
+    public void commitTask(TaskAttemptContext taskContext) throws IOException {
+        if (StagingCommitter.isStaged(taskContext.getConfiguration())) {
+            stagingFor(taskContext).commit(taskContext.getTaskAttemptID().toString());
+        }
+        LoadReport.commitTaskStats(taskContext.getConfiguration(), taskContext.getTaskAttemptID().toString());
+    }
+
+    @Override
+    public void abortTask(TaskAttemptContext taskContext) throws IOException {
+        if (StagingCommitter.isStaged(taskContext.getConfiguration())) {
+            stagingFor(taskContext).abort(taskContext.getTaskAttemptID().toString());
+        }
+    }
+
+    @Override
+    public void commitJob(JobContext jobContext) throws IOException {
+        if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+            stagingFor(jobContext).commitJob(jobContext.getJobID().toString());
+        }
+    }
+
+    @Override
+    public void abortJob(JobContext jobContext, int runState) throws IOException {
+        if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+            stagingFor(jobContext).abortJob(jobContext.getJobID().toString());
+        }
+    }
+
+    private StagingCommitter stagingFor(org.apache.hadoop.mapreduce.JobContext context) {
+        return new StagingCommitter(new VoltConfiguration(context.getConfiguration()));
+    }
+}
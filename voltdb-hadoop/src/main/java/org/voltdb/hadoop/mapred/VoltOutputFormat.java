@@ -24,6 +24,7 @@
 package org.voltdb.hadoop.mapred;
 
 import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.Text;
@@ -33,49 +34,70 @@ import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.Progressable;
 import org.voltdb.hadoop.FaultCollector;
+import org.voltdb.hadoop.Heartbeat;
+import org.voltdb.hadoop.RecordLoader;
+import org.voltdb.hadoop.StageProfiler;
 import org.voltdb.hadoop.TextOutputAdapter;
 import org.voltdb.hadoop.VoltConfiguration;
 import org.voltdb.hadoop.VoltRecord;
-import org.voltdb.utils.CSVBulkDataLoader;
+import org.voltdb.hadoop.WriterCloser;
 
 public class VoltOutputFormat implements OutputFormat<Text,VoltRecord> {
 
     public static class VoltWriter implements RecordWriter<Text, VoltRecord> {
         protected final FaultCollector m_faultCollector;
-        protected final CSVBulkDataLoader m_loader;
+        protected final RecordLoader m_loader;
+        protected final Heartbeat m_heartbeat;
+        protected final StageProfiler m_profiler;
+        protected final JobConf m_job;
 
         public VoltWriter(JobConf job) throws IOException  {
+            this(job, null);
+        }
+
+        /**
+         * @param job job configuration
+         * @param progress the task's progress reporter, to which it sends heartbeats
+         *   while its loaders make progress
+         * @throws IOException when it fails to open its loaders
+         */
+        public VoltWriter(JobConf job, Progressable progress) throws IOException  {
+            m_job = job;
+            m_profiler = StageProfiler.open(job);
             VoltConfiguration conf = new VoltConfiguration(job);
             TextOutputAdapter adapter = new TextOutputAdapter(conf.getTableColumnTypes(),"|");
 
-            m_faultCollector = new FaultCollector(adapter, conf.getConfig().getMaxBulkLoaderErrors());
-            m_loader = conf.getBulkLoader(m_faultCollector);
+            m_faultCollector = new FaultCollector(adapter, conf.getConfig().getMaxBulkLoaderErrors(),
+                    conf.getRejectSink(job));
+            m_loader = new RecordLoader(conf, m_faultCollector, m_profiler);
+            m_heartbeat = new Heartbeat(conf.getConfig().getTableName(), m_loader, progress,
+                    conf.getConfig().getHeartbeatSeconds());
         }
 
         @Override
         public void write(Text key, VoltRecord record) throws IOException {
-            record.write(m_loader);
+            m_loader.write(key, record);
             m_faultCollector.check(false);
         }
 
         @Override
         public void close(Reporter reporter) throws IOException {
-            try {
-                m_faultCollector.check(true);
-            } finally {
-                try {m_loader.close();} catch (Exception ignoreIt) {}
-            }
+            WriterCloser.close(m_job, m_heartbeat, m_profiler, m_loader, m_faultCollector,
+                    Collections.singletonList(m_loader), reporter);
         }
     }
 
     @Override
     public RecordWriter<Text, VoltRecord> getRecordWriter(FileSystem ignored,
             JobConf job, String name, Progressable progress) throws IOException {
-        return new VoltWriter(job);
+        return new VoltWriter(job, progress);
     }
 
     @Override
     public void checkOutputSpecs(FileSystem ignored, JobConf job)
             throws IOException {
+        VoltConfiguration conf = new VoltConfiguration(job);
+        conf.isMinimallyConfigured();
+        conf.shipSchema(job);
     }
 }
@@ -0,0 +1,109 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.Progressable;
+import org.voltdb.hadoop.Heartbeat;
+import org.voltdb.hadoop.MultiTableLoader;
+import org.voltdb.hadoop.StageProfiler;
+import org.voltdb.hadoop.VoltConfiguration;
+import org.voltdb.hadoop.VoltRecord;
+import org.voltdb.hadoop.WriterCloser;
+
+/**
+ * An output format that routes each record to the VoltDB table named by its key, or
+ * by its {@linkplain VoltRecord#getTableName()} when the key is empty, so that a single
+ * pass over the input may feed several tables. Routing by key is disabled by setting
+ * {@link VoltConfiguration#ROUTE_BY_KEY_PROP} to false.
+ */
+public class VoltMultiTableOutputFormat extends OutputFormat<Text, VoltRecord> {
+
+    @Override
+    public RecordWriter<Text, VoltRecord> getRecordWriter(
+            TaskAttemptContext context) throws IOException,
+            InterruptedException {
+        return new VoltMultiTableRecordWriter(context.getConfiguration(), context);
+    }
+
+    @Override
+    public void checkOutputSpecs(JobContext context) throws IOException,
+            InterruptedException {
+        if (context.getConfiguration().getStrings(VoltConfiguration.HOSTNAMES_PROP, new String[]{}).length == 0) {
+            throw new IOException("Property " + VoltConfiguration.HOSTNAMES_PROP + " must be defined");
+        }
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(TaskAttemptContext context)
+            throws IOException, InterruptedException {
+        return new VoltOutputFormat.VoltOutputComitter();
+    }
+
+    public static class VoltMultiTableRecordWriter extends RecordWriter<Text, VoltRecord> {
+        protected final MultiTableLoader m_loader;
+        protected final Heartbeat m_heartbeat;
+        protected final StageProfiler m_profiler;
+        protected final Configuration m_job;
+
+        public VoltMultiTableRecordWriter(Configuration jobConf) throws IOException {
+            this(jobConf, null);
+        }
+
+        /**
+         * @param jobConf job configuration
+         * @param progress the task's progress reporter, to which it sends heartbeats
+         *   while its loaders make progress
+         * @throws IOException when it is configured for procedure, or staged loads
+         */
+        public VoltMultiTableRecordWriter(Configuration jobConf, Progressable progress) throws IOException {
+            m_job = jobConf;
+            m_profiler = StageProfiler.open(jobConf);
+            m_loader = new MultiTableLoader(jobConf, m_profiler);
+            m_heartbeat = new Heartbeat("tables", m_loader, progress,
+                    jobConf.getInt(VoltConfiguration.HEARTBEAT_SECONDS_PROP, VoltConfiguration.HEARTBEAT_SECONDS_DFLT));
+        }
+
+        @Override
+        public void write(Text key, VoltRecord record) throws IOException,
+                InterruptedException {
+            m_loader.write(key, record);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException,
+                InterruptedException {
+            WriterCloser.close(m_job, m_heartbeat, m_profiler, m_loader, null, m_loader.getLoaders(), context);
+        }
+    }
+}
@@ -24,19 +24,27 @@
 package org.voltdb.hadoop.mapreduce;
 
 import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobStatus.State;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.Progressable;
 import org.voltdb.hadoop.FaultCollector;
+import org.voltdb.hadoop.Heartbeat;
+import org.voltdb.hadoop.LoadReport;
+import org.voltdb.hadoop.RecordLoader;
+import org.voltdb.hadoop.StageProfiler;
+import org.voltdb.hadoop.StagingCommitter;
 import org.voltdb.hadoop.TextOutputAdapter;
 import org.voltdb.hadoop.VoltConfiguration;
 import org.voltdb.hadoop.VoltRecord;
-import org.voltdb.utils.CSVBulkDataLoader;
+import org.voltdb.hadoop.WriterCloser;
 
 public class VoltOutputFormat extends OutputFormat<Text, VoltRecord> {
 
@@ -44,7 +52,7 @@ public class VoltOutputFormat extends OutputFormat<Text, VoltRecord> {
     public RecordWriter<Text, VoltRecord> getRecordWriter(
             TaskAttemptContext context) throws IOException,
             InterruptedException {
-        return new VoltRecordWriter(context.getConfiguration());
+        return new VoltRecordWriter(context.getConfiguration(), context);
     }
 
     @Override
@@ -52,6 +60,7 @@ public class VoltOutputFormat extends OutputFormat<Text, VoltRecord> {
             InterruptedException {
         VoltConfiguration conf = new VoltConfiguration(context.getConfiguration());
         conf.isMinimallyConfigured();
+        conf.shipSchema(context.getConfiguration());
     }
 
     @Override
@@ -62,37 +71,61 @@ public class VoltOutputFormat extends OutputFormat<Text, VoltRecord> {
 
     public static class VoltRecordWriter extends RecordWriter<Text, VoltRecord> {
         protected final FaultCollector m_faultCollector;
-        protected final CSVBulkDataLoader m_loader;
+        protected final RecordLoader m_loader;
+        protected final Heartbeat m_heartbeat;
+        protected final StageProfiler m_profiler;
+        protected final Configuration m_job;
 
         public VoltRecordWriter(Configuration jobConf) throws IOException {
+            this(jobConf, null);
+        }
+
+        /**
+         * @param jobConf job configuration
+         * @param progress the task's progress reporter, to which it sends heartbeats
+         *   while its loaders make progress
+         * @throws IOException when it fails to open its loaders
+         */
+        public VoltRecordWriter(Configuration jobConf, Progressable progress) throws IOException {
+            m_job = jobConf;
+            m_profiler = StageProfiler.open(jobConf);
             VoltConfiguration conf = new VoltConfiguration(jobConf);
             TextOutputAdapter adapter = new TextOutputAdapter(conf.getTableColumnTypes(),"|");
 
-            m_faultCollector = new FaultCollector(adapter, conf.getConfig().getMaxBulkLoaderErrors());
-            m_loader = conf.getBulkLoader(m_faultCollector);
+            m_faultCollector = new FaultCollector(adapter, conf.getConfig().getMaxBulkLoaderErrors(),
+                    conf.getRejectSink(jobConf));
+            m_loader = new RecordLoader(conf, m_faultCollector, m_profiler);
+            m_heartbeat = new Heartbeat(conf.getConfig().getTableName(), m_loader, progress,
+                    conf.getConfig().getHeartbeatSeconds());
         }
 
         @Override
         public void write(Text key, VoltRecord record) throws IOException,
                 InterruptedException {
-            record.write(m_loader);
+            m_loader.write(key, record);
             m_faultCollector.check(false);
         }
 
         @Override
         public void close(TaskAttemptContext context) throws IOException,
                 InterruptedException {
-            try {
-                m_faultCollector.check(true);
-            } finally {
-                try {m_loader.close();} catch (Exception ignoreIt) {}
-            }
+            WriterCloser.close(m_job, m_heartbeat, m_profiler, m_loader, m_faultCollector,
+                    Collections.singletonList(m_loader), context);
         }
     }
 
+    /**
+     * It commits, and aborts task attempts that load into a staging table, and
+     * discards the rows of uncommitted attempts when the job ends, and those finished jobs
+     * left behind when it is set up. It also marks committed
+     * attempts' load statistics, when a report directory is configured. It does nothing otherwise
+     */
     public static class VoltOutputComitter extends OutputCommitter {
         @Override
         public void setupJob(JobContext jobContext) throws IOException {
+            if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+                stagingFor(jobContext).setupJob(jobContext.getJobID().toString());
+            }
         }
         @Override
         public void setupTask(TaskAttemptContext taskContext)
@@ -101,15 +134,39 @@ public class VoltOutputFormat extends OutputFormat<Text, VoltRecord> {
         @Override
         public boolean needsTaskCommit(TaskAttemptContext taskContext)
                 throws IOException {
-            return false;
+            return StagingCommitter.isStaged(taskContext.getConfiguration())
+                    || LoadReport.isReported(taskContext.getConfiguration());
         }
         @Override
         public void commitTask(TaskAttemptContext taskContext)
                 throws IOException {
+            if (StagingCommitter.isStaged(taskContext.getConfiguration())) {
+                stagingFor(taskContext).commit(taskContext.getTaskAttemptID().toString());
+            }
+            LoadReport.commitTaskStats(taskContext.getConfiguration(), taskContext.getTaskAttemptID().toString());
         }
         @Override
         public void abortTask(TaskAttemptContext taskContext)
                 throws IOException {
+            if (StagingCommitter.isStaged(taskContext.getConfiguration())) {
+                stagingFor(taskContext).abort(taskContext.getTaskAttemptID().toString());
+            }
+        }
+        @Override
+        public void commitJob(JobContext jobContext) throws IOException {
+            if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+                stagingFor(jobContext).commitJob(jobContext.getJobID().toString());
+            }
+        }
+        @Override
+        public void abortJob(JobContext jobContext, State state)
+                throws IOException {
+            if (StagingCommitter.isStaged(jobContext.getConfiguration())) {
+                stagingFor(jobContext).abortJob(jobContext.getJobID().toString());
+            }
+        }
+        private StagingCommitter stagingFor(JobContext context) {
+            return new StagingCommitter(new VoltConfiguration(context.getConfiguration()));
         }
     }
 }
@@ -0,0 +1,49 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.JobContext;
+import org.voltdb.hadoop.VoltConfiguration;
+
+/**
+ * An output format that collects records into batches, and invokes the stored
+ * procedure set with {@link VoltConfiguration#configureProcedure(org.apache.hadoop.conf.Configuration, String)}
+ * once per batch, with a {@linkplain org.voltdb.VoltTable} parameter that holds the
+ * batch's rows.
+ */
+public class VoltProcedureOutputFormat extends VoltOutputFormat {
+
+    @Override
+    public void checkOutputSpecs(JobContext context) throws IOException,
+            InterruptedException {
+        String procedureName = context.getConfiguration().get(VoltConfiguration.PROCEDURE_NAME_PROP);
+        if (procedureName == null || procedureName.trim().isEmpty()) {
+            throw new IOException("Property " + VoltConfiguration.PROCEDURE_NAME_PROP + " must be defined");
+        }
+        super.checkOutputSpecs(context);
+    }
+}
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import static org.voltdb.VoltType.*
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.hadoop.io.Text
+import org.voltdb.VoltType
+import org.voltdb.client.ClientResponse
+import org.voltdb.utils.CSVDataLoader
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class BatchSizerSpec extends Specification {
+
+    static VoltType [] NARROW = [INTEGER, BIGINT, FLOAT]
+    static VoltType [] WIDE = [INTEGER, VARBINARY, VARBINARY, STRING]
+
+    def ms(long millis) {
+        TimeUnit.MILLISECONDS.toNanos(millis)
+    }
+
+    def "narrow tables start with larger batches than wide ones"() {
+        given:
+            def narrow = new BatchSizer("NARROW", NARROW, 10, 100000, 50, 64 * 1024)
+            def wide = new BatchSizer("WIDE", WIDE, 10, 100000, 50, 64 * 1024)
+        expect:
+            narrow.rowWidth == 20
+            narrow.size == 64 * 1024 / 20 as int
+            wide.size < narrow.size
+    }
+
+    def "sizes each partition's batch, and flushes loaders after a batch per partition"() {
+        given:
+            def single = new BatchSizer("NARROW", NARROW, 10, 100000, 50, 64 * 1024)
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 100000, 50, 64 * 1024, 8)
+        expect:
+            sizer.size == single.size
+            sizer.maxSize == single.maxSize
+            single.flushRows == single.size
+            sizer.flushRows == 8 * sizer.size
+    }
+
+    def "grows while latency is low, and never beyond its bounds"() {
+        given:
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 1000, 50, 4000)
+            def initial = sizer.size
+        when:
+            BatchSizer.WINDOW.times { sizer.sample(ms(5)) }
+        then:
+            sizer.size > initial
+        when:
+            (BatchSizer.WINDOW * 50).times { sizer.sample(ms(5)) }
+        then:
+            sizer.maxSize == 4 * 4000 / 20 as int
+            sizer.size == sizer.maxSize
+    }
+
+    def "shrinks on high latency, and halves on backpressure"() {
+        given:
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 1000, 50, 16000)
+            def initial = sizer.size
+        when:
+            BatchSizer.WINDOW.times { sizer.sample(ms(500)) }
+        then:
+            sizer.size == initial - initial / 4 as int
+        when:
+            def before = sizer.size
+            sizer.backpressure(true)
+            sizer.backpressure(false)
+            BatchSizer.WINDOW.times { sizer.sample(ms(50)) }
+        then:
+            sizer.size == before / 2 as int
+        when:
+            (BatchSizer.WINDOW * 50).times { sizer.sample(ms(5000)) }
+        then:
+            sizer.size == 10
+    }
+
+    def "samples only the first row of each batch response"() {
+        given:
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 1000, 50, 16000)
+            def initial = sizer.size
+            def response = Mock(ClientResponse) { getClientRoundtripNanos() >> ms(500) }
+        when:
+            (BatchSizer.WINDOW * 10).times { sizer.success(it, response) }
+        then:
+            sizer.size == initial
+    }
+
+    def "record loader flushes a stripe once it is fed the adaptive batch size"() {
+        given:
+            def loader = Mock(CSVDataLoader)
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 1000, 50, 200)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false, 0, sizer)
+        when:
+            25.times { rl.write(new Text("K"), new VoltRecord("NARROW", it, it as long, it as double)) }
+        then:
+            sizer.size == 10
+            25 * loader.insertRow(_ as RowWithMetaData, _)
+            2 * loader.flush()
+    }
+
+    def "record loader flushes a partitioned stripe once it is fed a batch per partition"() {
+        given:
+            def loader = Mock(CSVDataLoader)
+            def sizer = new BatchSizer("NARROW", NARROW, 10, 1000, 50, 200, 4)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false, 0, sizer)
+        when:
+            85.times { rl.write(new Text("K"), new VoltRecord("NARROW", it, it as long, it as double)) }
+        then:
+            85 * loader.insertRow(_ as RowWithMetaData, _)
+            2 * loader.flush()
+    }
+}
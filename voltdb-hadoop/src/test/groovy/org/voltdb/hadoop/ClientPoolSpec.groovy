@@ -0,0 +1,58 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.hadoop
+
+import spock.lang.*
+
+class ClientPoolSpec extends Specification {
+
+    def "pool keys depend on lanes and connection parameters only"() {
+        given:
+        def uno = new VoltConfiguration.Config('THING', ['b','a'] as String[], 'user', 'pass', 300, 1000L, 0, false)
+        def due = new VoltConfiguration.Config('OTHER', ['a','b'] as String[], 'user', 'pass', 300, 1000L, 0, true)
+        def tre = new VoltConfiguration.Config('THING', ['a','b'] as String[], 'user', 'word', 300, 1000L, 0, false)
+
+        expect:
+        ClientPool.keyFor(uno, 0) == ClientPool.keyFor(due, 0)
+        ClientPool.keyFor(uno, 0) != ClientPool.keyFor(uno, 1)
+        ClientPool.keyFor(uno, 0) != ClientPool.keyFor(tre, 0)
+        !ClientPool.keyFor(uno, 0).contains('pass')
+        ClientPool.keyFor(uno, 0) != ClientPool.keyFor(
+                new VoltConfiguration.Config.Builder('THING', ['a','b'] as String[], 'user', 'pass', 300, 1000L, 0, false)
+                        .setTopologyAware(false).build(), 0)
+    }
+
+    def "fails to connect only once all the hosts fail"() {
+        given:
+        def config = new VoltConfiguration.Config('THING', ['127.0.0.1:1','127.0.0.1:2','127.0.0.1:3'] as String[],
+                null, null, 300, 1000L, 0, false)
+
+        when:
+        VoltConfiguration.connect(config)
+
+        then:
+        IOException e = thrown()
+        e.message.startsWith("Failed to connect to hosts")
+    }
+}
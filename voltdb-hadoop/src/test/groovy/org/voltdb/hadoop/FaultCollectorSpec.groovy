@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import static org.voltdb.VoltType.*
+
+import java.util.concurrent.CountDownLatch
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.voltdb.VoltType
+import org.voltdb.client.ClientResponse
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class FaultCollectorSpec extends Specification {
+
+    static String THINGS = "THINGS"
+    static VoltType [] COLUMNTYPES = [INTEGER,STRING] as VoltType[]
+
+    def "counts faults reported concurrently"() {
+        given:
+            def fc = new FaultCollector(new TextOutputAdapter(COLUMNTYPES), 100000)
+            def start = new CountDownLatch(1)
+            def threads = (0..<8).collect { t ->
+                Thread.start {
+                    start.await()
+                    1000.times { fc.handleError(new RowWithMetaData([t, "row $it".toString()] as Object[], -1), null, 'boom') }
+                }
+            }
+        when:
+            start.countDown()
+            threads*.join()
+        then:
+            fc.faultCount == 8000
+            !fc.hasReachedErrorLimit()
+    }
+
+    def "streams rejected rows, and their statuses, to reject files"() {
+        given:
+            def dir = File.createTempFile('rejects', '')
+            dir.delete()
+            def sink = new RejectSink(new Configuration(), new Path(dir.toURI()), 'things', 'attempt_1', new TextOutputAdapter(COLUMNTYPES), 2)
+            def fc = new FaultCollector(new TextOutputAdapter(COLUMNTYPES, '|'), 10, sink)
+            def response = Mock(ClientResponse)
+            response.getStatusString() >> 'constraint\nviolation'
+        when:
+            fc.handleError(new RowWithMetaData([1, 'one'] as Object[], -1), response, null)
+            fc.handleError(new RowWithMetaData([2, 'two', 'attempt_1'] as Object[], RetryQueue.tagFor(0, 1)), null, 'lost')
+            fc.handleError(new RowWithMetaData([3, 'three'] as Object[], -1), null, 'third')
+            fc.check(true)
+            fc.close()
+        then:
+            new File(dir, 'THINGS-attempt_1.rejects').readLines() == ['1\tone', '2\ttwo']
+            new File(dir, 'THINGS-attempt_1.status').readLines() == ['constraint violation', 'lost']
+            sink.written == 2
+        cleanup:
+            dir.deleteDir()
+    }
+
+    def "drops faults once its slots are full, unless it has a reject sink"() {
+        given:
+            def fc = new FaultCollector(null, 4)
+        when:
+            6.times { fc.handleError(new RowWithMetaData([it, 'x'] as Object[], -1), null, 'boom') }
+            fc.check(true)
+        then:
+            def e = thrown(IOException)
+            e.message.contains('fault count:6')
+            fc.faultsByStatus == [boom: 4L, DROPPED: 2L]
+        when:
+            3.times { fc.handleError(new RowWithMetaData([it, 'y'] as Object[], -1), null, 'boom') }
+        then:
+            fc.faultCount == 9
+    }
+
+    def "writes every rejected row to its reject sink, even once its slots are full"() {
+        given:
+            def dir = File.createTempFile('rejects', '')
+            dir.delete()
+            def sink = new RejectSink(new Configuration(), new Path(dir.toURI()), 'things', 'attempt_1', new TextOutputAdapter(COLUMNTYPES), 100)
+            def fc = new FaultCollector(new TextOutputAdapter(COLUMNTYPES, '|'), 4, sink)
+        when:
+            6.times { fc.handleError(new RowWithMetaData([it, 'x'] as Object[], -1), null, 'boom') }
+            fc.close()
+        then:
+            new File(dir, 'THINGS-attempt_1.rejects').readLines().sort() == (0..5).collect { "$it\tx".toString() }
+            new File(dir, 'THINGS-attempt_1.status').readLines() == ['boom'] * 6
+            fc.faultsByStatus == [boom: 6L]
+        cleanup:
+            dir.deleteDir()
+    }
+}
@@ -0,0 +1,82 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+class FlightEventsSpec extends Specification {
+
+    static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName('jdk.jfr.EventFactory')
+            return true
+        } catch (ClassNotFoundException e) {
+            return false
+        }
+    }
+
+    def "emits nothing unless a recording runs"() {
+        expect:
+            !FlightEvents.isRecording()
+            FlightEvents.begin(FlightEvents.Type.BACKPRESSURE) == null
+        when:
+            FlightEvents.commit(null, 1)
+            FlightEvents.emit(FlightEvents.Type.FAULT_RECORDED, 'GRACEFUL_FAILURE', 0, 1, false)
+        then:
+            notThrown(Exception)
+    }
+
+    @IgnoreIf({ !FlightEventsSpec.isFlightRecorderAvailable() })
+    def "emits events with their fields while a recording runs"() {
+        given:
+            def recording = Class.forName('jdk.jfr.Recording').newInstance()
+            def dump = File.createTempFile('voltdb-flight', '.jfr')
+        when:
+            recording.start()
+            def recording_started = FlightEvents.isRecording()
+            FlightEvents.emit(FlightEvents.Type.FAULT_RECORDED, 'GRACEFUL_FAILURE', 2, 1, false)
+            def event = FlightEvents.begin(FlightEvents.Type.CATALOG_LOOKUP)
+            FlightEvents.commit(event, 'THINGS', 3, true)
+            recording.stop()
+            recording.dump(dump.toPath())
+            def events = Class.forName('jdk.jfr.consumer.RecordingFile').readAllEvents(dump.toPath()).findAll {
+                it.eventType.name.startsWith('org.voltdb.hadoop.')
+            }
+        then:
+            recording_started
+            !FlightEvents.isRecording()
+            events.size() == 2
+            events[0].eventType.name == 'org.voltdb.hadoop.FaultRecorded'
+            events[0].getString('status') == 'GRACEFUL_FAILURE'
+            events[0].getInt('stripe') == 2
+            events[1].getString('table') == 'THINGS'
+            events[1].getInt('columns') == 3
+        cleanup:
+            recording?.close()
+            dump.delete()
+    }
+}
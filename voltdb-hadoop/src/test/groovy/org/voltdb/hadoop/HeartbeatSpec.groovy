@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import org.apache.hadoop.mapred.Reporter
+import org.apache.hadoop.mapreduce.TaskAttemptContext
+import org.apache.hadoop.util.Progressable
+
+import spock.lang.Specification
+
+class HeartbeatSpec extends Specification {
+
+    def counts = [0L, 0L, 0L]
+    def batches = -1L
+
+    def source = [
+        getSubmitted: { counts[0] },
+        getAcknowledged: { counts[1] },
+        getFailed: { counts[2] },
+        getInFlightBatches: { batches }
+    ] as Heartbeat.Source
+
+    def "reports progress only when rows were fed, or completed since the last beat"() {
+        given:
+            def reporter = Mock(Reporter)
+            def heartbeat = new Heartbeat("THINGS", source, reporter, 0)
+        when:
+            counts = [10L, 4L, 1L]
+            def first = heartbeat.beat(false)
+            def stalled = heartbeat.beat(false)
+        then:
+            1 * reporter.progress()
+            1 * reporter.setStatus("VoltDB THINGS: 4 of 10 submitted rows acknowledged, 5 outstanding, 1 failed")
+            first && !stalled
+        when:
+            counts = [10L, 9L, 1L]
+            heartbeat.stop()
+        then:
+            1 * reporter.progress()
+            1 * reporter.setStatus("VoltDB THINGS: 9 of 10 submitted rows acknowledged, 0 outstanding, 1 failed")
+    }
+
+    def "reports in flight batches when the loaders track them"() {
+        given:
+            def reporter = Mock(Reporter)
+            def heartbeat = new Heartbeat("THINGS", source, reporter, 0)
+        when:
+            counts = [10L, 4L, 1L]
+            batches = 2L
+            heartbeat.beat(false)
+        then:
+            1 * reporter.setStatus("VoltDB THINGS: 4 of 10 submitted rows acknowledged, 2 batches in flight, 1 failed")
+        when:
+            counts = [10L, 8L, 1L]
+            batches = 1L
+            heartbeat.beat(false)
+        then:
+            1 * reporter.setStatus("VoltDB THINGS: 8 of 10 submitted rows acknowledged, 1 batch in flight, 1 failed")
+    }
+
+    def "switches to the reporter it is given on close"() {
+        given:
+            def progress = Mock(Progressable)
+            def context = Mock(TaskAttemptContext)
+            def heartbeat = new Heartbeat("THINGS", source, progress, 0)
+        when:
+            counts = [1L, 0L, 0L]
+            heartbeat.beat(false)
+        then:
+            1 * progress.progress()
+        when:
+            heartbeat.reportTo(null)
+            heartbeat.reportTo(context)
+            heartbeat.stop()
+        then:
+            0 * progress.progress()
+            1 * context.progress()
+            1 * context.setStatus(_)
+    }
+
+    def "sends heartbeats from its own thread until it is stopped"() {
+        given:
+            def progress = Mock(Progressable)
+            def heartbeat = new Heartbeat("THINGS", source, progress, 1)
+        when:
+            counts = [1L, 1L, 0L]
+            Thread.sleep(1500)
+            heartbeat.stop()
+        then:
+            2 * progress.progress()
+    }
+}
@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import static org.voltdb.VoltType.*
+
+import java.util.concurrent.TimeUnit
+
+import org.voltdb.VoltType
+import org.voltdb.client.ClientResponse
+
+import spock.lang.Specification
+
+class LoadMetricsSpec extends Specification {
+
+    static VoltType [] NARROW = [INTEGER, BIGINT, FLOAT]
+
+    def response(long millis) {
+        Mock(ClientResponse) { getClientRoundtripNanos() >> TimeUnit.MILLISECONDS.toNanos(millis) }
+    }
+
+    def "samples each batch response once, and relays callbacks to the batch sizer"() {
+        given:
+            def sizer = Spy(BatchSizer, constructorArgs: ["NARROW", NARROW, 10, 1000, 50, 4000])
+            def metrics = new LoadMetrics(sizer)
+            def lane = metrics.newLane()
+            def first = response(2)
+            def second = response(4)
+        when:
+            3.times { lane.success(it, first) }
+            2.times { lane.success(it, second) }
+        then:
+            5 * sizer.success(_, _)
+            metrics.batches == 2
+            Math.abs(metrics.maxLatencyMicros - 4000) <= 40
+    }
+
+    def "computes latency percentiles, and merges them"() {
+        given:
+            def metrics = new LoadMetrics(null)
+            def other = new LoadMetrics(null)
+        when:
+            (1..100).each { metrics.sample(TimeUnit.MILLISECONDS.toNanos(it)) }
+            other.sample(TimeUnit.HOURS.toNanos(1))
+        then:
+            metrics.getLatencyMicros(50D) >= 49000 && metrics.getLatencyMicros(50D) <= 51000
+            metrics.getLatencyMicros(99D) >= 98000 && metrics.getLatencyMicros(99D) <= 100000
+            other.maxLatencyMicros >= LoadMetrics.LATENCY_MAX_MICROS * 0.99
+        when:
+            metrics.add(other)
+        then:
+            metrics.batches == 101
+            metrics.maxLatencyMicros == other.maxLatencyMicros
+            new LoadMetrics(null).getLatencyMicros(99D) == 0
+    }
+
+    def "accumulates the time lanes spend in backpressure"() {
+        given:
+            def metrics = new LoadMetrics(null)
+            def lane = metrics.newLane()
+        when:
+            lane.backpressure(true)
+            lane.backpressure(true)
+            Thread.sleep(20)
+            lane.backpressure(false)
+            lane.backpressure(false)
+        then:
+            metrics.backpressureMillis >= 20
+            metrics.backpressureMillis < 1000
+    }
+}
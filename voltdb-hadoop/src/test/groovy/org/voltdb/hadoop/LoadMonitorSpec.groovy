@@ -0,0 +1,112 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import java.lang.management.ManagementFactory
+
+import org.apache.hadoop.io.Text
+import org.voltdb.utils.CSVDataLoader
+
+import spock.lang.Specification
+
+class LoadMonitorSpec extends Specification {
+
+    def server = ManagementFactory.platformMBeanServer
+    def cluster = VoltConfiguration.clusterKeyFor(['uno','due'] as String[])
+
+    def "aggregates the open, and closed loaders of a table in its registered bean"() {
+        given:
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def first = new RecordLoader([loaders[0]] as CSVDataLoader[], false)
+            def second = new RecordLoader([loaders[1]] as CSVDataLoader[], false)
+            loaders[0].processedRows >> 3
+            loaders[1].processedRows >> 1
+            def name = LoadMonitor.nameFor("Table", cluster, "MONITORED")
+        when:
+            LoadMonitor.opened(cluster, "monitored", first)
+            LoadMonitor.opened(cluster, "MONITORED", second)
+            3.times { first.write(new Text(), new VoltRecord("MONITORED", it)) }
+            2.times { second.write(new Text(), new VoltRecord("MONITORED", it)) }
+            def bean = LoadMonitor.tableBean(['Due','uno'] as String[], "monitored")
+        then:
+            server.isRegistered(name)
+            server.getAttribute(name, "Cluster") == cluster
+            server.getAttribute(name, "OpenWriters") == 2
+            server.getAttribute(name, "RowsSubmitted") == 5L
+            bean.rowsAcknowledged == 4
+            bean.rowsOutstanding == 1
+            !bean.backpressure
+        when:
+            first.close()
+            LoadMonitor.closed(cluster, "MONITORED", first)
+        then:
+            bean.openWriters == 1
+            bean.rowsSubmitted == 5
+            bean.rowsAcknowledged == 4
+            bean.rowsOutstanding == 1
+    }
+
+    def "registers one bean per cluster that loads the same table"() {
+        given:
+            def other = VoltConfiguration.clusterKeyFor(['tre'] as String[])
+            def loader = new RecordLoader([Mock(CSVDataLoader)] as CSVDataLoader[], false)
+        when:
+            LoadMonitor.opened(cluster, "SHARED", loader)
+            LoadMonitor.opened(other, "SHARED", new RecordLoader([Mock(CSVDataLoader)] as CSVDataLoader[], false))
+        then:
+            server.isRegistered(LoadMonitor.nameFor("Table", cluster, "SHARED"))
+            server.isRegistered(LoadMonitor.nameFor("Table", other, "SHARED"))
+            LoadMonitor.tableBean(['tre'] as String[], "shared").cluster == other
+            !LoadMonitor.tableBean(['tre'] as String[], "shared").is(LoadMonitor.tableBean(['uno','due'] as String[], "shared"))
+    }
+
+    def "merges the loaders' metrics at most once a second"() {
+        given:
+            def loader = new RecordLoader([Mock(CSVDataLoader)] as CSVDataLoader[], false)
+            LoadMonitor.opened(cluster, "SAMPLED", loader)
+            def bean = LoadMonitor.tableBean(['uno','due'] as String[], "SAMPLED")
+        when:
+            def batches = bean.batches
+            loader.metrics.sample(1000L)
+        then:
+            bean.metrics().is(bean.metrics())
+            bean.batches == batches
+        when:
+            bean.m_sampledNanos -= java.util.concurrent.TimeUnit.SECONDS.toNanos(1)
+        then:
+            bean.batches == batches + 1
+    }
+
+    def "registers the caches bean"() {
+        given:
+            LoadMonitor.opened(cluster, "CACHED", new RecordLoader([Mock(CSVDataLoader)] as CSVDataLoader[], false))
+            def name = LoadMonitor.nameFor("Caches", "caches")
+        expect:
+            server.isRegistered(name)
+            server.getAttribute(name, "TypeCacheSize") == VoltConfiguration.typeCacheSize
+            server.getAttribute(name, "AdapterCacheSize") == DataAdapters.cacheSize
+    }
+}
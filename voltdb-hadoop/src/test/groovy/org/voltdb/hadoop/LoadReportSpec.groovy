@@ -0,0 +1,148 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import groovy.json.JsonOutput
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.io.Text
+import org.json_voltpatches.JSONObject
+import org.voltdb.utils.CSVDataLoader
+
+import spock.lang.Specification
+
+class LoadReportSpec extends Specification {
+
+    static final String THINGS = "THINGS"
+
+    def dir = File.createTempFile('voltdb-report', '')
+
+    def setup() {
+        dir.delete()
+        dir.mkdirs()
+    }
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    def task(String attempt, long start, long elapsed, long rows, long p99, Map faults, Map hosts) {
+        JsonOutput.toJson([
+            task: attempt,
+            startMillis: start,
+            endMillis: start + elapsed,
+            elapsedMillis: elapsed,
+            rowsPerSecond: rows * 1000D / elapsed,
+            counters: [ROWS_SUBMITTED: rows, ROWS_ACKNOWLEDGED: rows, BATCH_LATENCY_P50_MICROS: p99 >> 1,
+                BATCH_LATENCY_P99_MICROS: p99, BATCH_LATENCY_MAX_MICROS: p99 * 2],
+            faults: faults,
+            hosts: hosts.collectEntries { host, time -> [host, [invocations: 10, timeMillis: time]] }
+        ])
+    }
+
+    def "writes each task's statistics to the report directory"() {
+        given:
+            def conf = new Configuration(false)
+            conf.set(VoltConfiguration.REPORT_DIR_PROP, dir.path)
+            conf.set('mapred.task.id', 'attempt_1_0001_m_000000_0')
+            def loader = Mock(CSVDataLoader)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false)
+        when:
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 1, 'one'))
+            rl.close()
+            LoadReport.writeTaskStats(conf, [rl])
+            def stats = new JSONObject(new File(dir, 'attempt_1_0001_m_000000_0' + LoadReport.STATS_SUFFIX).text)
+        then:
+            _ * loader.processedRows >> 1
+            stats.getString('task') == 'attempt_1_0001_m_000000_0'
+            stats.getJSONObject('counters').getLong('ROWS_SUBMITTED') == 1
+            stats.getJSONObject('counters').getLong('ROWS_ACKNOWLEDGED') == 1
+            stats.getLong('elapsedMillis') >= 1
+    }
+
+    def "aggregates the committed attempt of each task over any later one"() {
+        given:
+            def conf = new Configuration(false)
+            VoltConfiguration.configureReport(conf, dir.path)
+            new File(dir, 'a0.stats.json').text = task('attempt_1_0001_m_000000_0', 1000, 1000, 100, 800, [:], [h1: 100])
+            new File(dir, 'a1.stats.json').text = task('attempt_1_0001_m_000000_1', 1000, 3000, 40, 900, [OOPS: 2], [h1: 10])
+        when:
+            LoadReport.commitTaskStats(conf, 'attempt_1_0001_m_000000_0')
+            def report = LoadReport.read(conf, new Path(dir.path))
+        then:
+            new File(dir, 'attempt_1_0001_m_000000_0' + LoadReport.COMMITTED_SUFFIX).exists()
+            report.tasks.size() == 1
+            report.tasks[0].getString('task') == 'attempt_1_0001_m_000000_0'
+            conf.get('mapred.output.committer.class') == org.voltdb.hadoop.mapred.VoltOutputCommitter.name
+    }
+
+    def "aggregates the latest attempt of each task, and points out skew"() {
+        given:
+            new File(dir, 'a0.stats.json').text = task('attempt_1_0001_m_000000_0', 1000, 1000, 100, 800, [:], [h1: 100])
+            new File(dir, 'a1.stats.json').text = task('attempt_1_0001_m_000001_0', 1000, 4000, 50, 900, [OOPS: 2], [h1: 10])
+            new File(dir, 'a2.stats.json').text = task('attempt_1_0001_m_000001_1', 1000, 2000, 100, 700,
+                    [CONSTRAINT_VIOLATION: 3], [h1: 200, h2: 600])
+            new File(dir, 'ignored.txt').text = 'not statistics'
+        when:
+            def report = LoadReport.read(new Configuration(false), new Path(dir.path))
+            def json = report.toJSON()
+            def skew = json.getJSONObject('skew')
+            def text = report.toString()
+        then:
+            report.tasks.size() == 2
+            json.getInt('tasks') == 2
+            json.getLong('elapsedMillis') == 2000
+            json.getJSONObject('totals').getLong('ROWS_ACKNOWLEDGED') == 200
+            json.getJSONObject('latencyMicros').getLong('worstTaskP99') == 800
+            json.getJSONObject('faults').getLong('CONSTRAINT_VIOLATION') == 3
+            !json.getJSONObject('faults').has('OOPS')
+            skew.getLong('maxTaskElapsedMillis') == 2000
+            skew.getDouble('elapsedSkew') == 2D
+            skew.getJSONArray('slowestTasks').getJSONObject(0).getString('task') == 'attempt_1_0001_m_000001_1'
+            skew.getJSONArray('hottestHosts').getJSONObject(0).getString('host') == 'h2'
+            Math.abs(skew.getJSONArray('hottestHosts').getJSONObject(0).getDouble('share') - 2D / 3D) < 1e-6
+            text.startsWith('VoltDB load report: 2 tasks, 200 of 200 submitted rows acknowledged')
+            text.contains('Faults: CONSTRAINT_VIOLATION 3')
+            text.contains('h2  66.7% of client time, 1.33x the mean, 10 invocations')
+        when:
+            report.write(new Configuration(false), new Path(dir.path))
+        then:
+            new File(dir, LoadReport.REPORT_NAME + '.json').exists()
+            new File(dir, LoadReport.REPORT_NAME + '.txt').text == text
+    }
+
+    def "reports an empty report directory as a load of no rows"() {
+        when:
+            def report = LoadReport.read(new Configuration(false), new Path(dir.path))
+            def json = report.toJSON()
+        then:
+            report.tasks.isEmpty()
+            json.getInt('tasks') == 0
+            json.getDouble('rowsPerSecond') == 0D
+            report.toString().startsWith('VoltDB load report: 0 tasks, 0 of 0 submitted rows acknowledged')
+    }
+}
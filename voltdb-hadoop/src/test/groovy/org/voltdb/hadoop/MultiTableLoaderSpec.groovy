@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.io.Text
+import org.voltdb.utils.CSVDataLoader
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class MultiTableLoaderSpec extends Specification {
+
+    def opened = [:]
+
+    def loaderFor(Configuration conf, Map loaders = [:]) {
+        new MultiTableLoader(conf) {
+            @Override
+            MultiTableLoader.Route open(String tableName) {
+                opened[tableName] = (opened[tableName] ?: 0) + 1
+                def loader = loaders[tableName]
+                new MultiTableLoader.Route(new RecordLoader([loader] as CSVDataLoader[], false),
+                        new FaultCollector(null, 10))
+            }
+        }
+    }
+
+    def conf(Map props) {
+        def conf = new Configuration(false)
+        props.each { k, v -> conf.set(k, v) }
+        conf
+    }
+
+    def "routes records by key, then by record table name, then to the default table"() {
+        given:
+            def mtl = loaderFor(conf([(VoltConfiguration.TABLENAME_PROP): "FALLBACK"]))
+        expect:
+            mtl.tableFor(new Text("BYKEY"), new VoltRecord("RECORD", 1)) == "BYKEY"
+            mtl.tableFor(new Text(""), new VoltRecord("RECORD", 1)) == "RECORD"
+            mtl.tableFor(null, new VoltRecord().add(1)) == "FALLBACK"
+    }
+
+    def "routes by the record table name when routing by key is disabled"() {
+        given:
+            def mtl = loaderFor(conf([(VoltConfiguration.ROUTE_BY_KEY_PROP): "false"]))
+        expect:
+            mtl.tableFor(new Text("BYKEY"), new VoltRecord("RECORD", 1)) == "RECORD"
+    }
+
+    def "fails records that name no table"() {
+        given:
+            def mtl = loaderFor(conf([:]))
+        when:
+            mtl.tableFor(new Text(""), new VoltRecord().add(1))
+        then:
+            thrown(IOException)
+    }
+
+    def "opens one loader per table lazily, regardless of the table name case"() {
+        given:
+            def loaders = [ALPHA: Mock(CSVDataLoader), BETA: Mock(CSVDataLoader)]
+            def mtl = loaderFor(conf([:]), loaders)
+        when:
+            mtl.write(new Text("alpha"), new VoltRecord("X", 1))
+            mtl.write(new Text("ALPHA"), new VoltRecord("X", 2))
+            mtl.write(new Text("Beta"), new VoltRecord("X", 3))
+        then:
+            opened == [ALPHA: 1, BETA: 1]
+            mtl.tableCount == 2
+        when:
+            mtl.close()
+        then:
+            1 * loaders.ALPHA.close()
+            1 * loaders.BETA.close()
+    }
+
+    def "feeds each table's records to its own loader"() {
+        given:
+            def loaders = [ALPHA: Mock(CSVDataLoader), BETA: Mock(CSVDataLoader)]
+            def mtl = loaderFor(conf([:]), loaders)
+        when:
+            mtl.write(new Text("ALPHA"), new VoltRecord("X", 1))
+            mtl.write(new Text(""), new VoltRecord("BETA", 2))
+        then:
+            1 * loaders.ALPHA.insertRow(_ as RowWithMetaData, [1] as Object[])
+            1 * loaders.BETA.insertRow(_ as RowWithMetaData, [2] as Object[])
+    }
+
+    def "rejects procedure, and staged loads"() {
+        when:
+            new MultiTableLoader(conf([(prop): "THING"]))
+        then:
+            thrown(IOException)
+        where:
+            prop << [VoltConfiguration.PROCEDURE_NAME_PROP, VoltConfiguration.STAGING_TABLE_PROP]
+    }
+}
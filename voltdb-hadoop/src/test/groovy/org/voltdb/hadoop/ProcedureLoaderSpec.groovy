@@ -0,0 +1,207 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import static org.voltdb.VoltType.*
+
+
+import org.voltdb.VoltTable
+import org.voltdb.VoltType
+import org.voltdb.client.Client
+import org.voltdb.client.ClientResponse
+import org.voltdb.client.ProcedureCallback
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback
+import org.voltdb.utils.BulkLoaderErrorHandler
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class ProcedureLoaderSpec extends Specification {
+
+    static VoltType [] TYPES = [INTEGER, STRING]
+
+    def client = Mock(Client)
+    def errors = Mock(BulkLoaderErrorHandler)
+    def callbacks = []
+    def tables = []
+    def rows = []
+
+    def meta(VoltRecord record) {
+        new RowWithMetaData(record.toArray(), RetryQueue.tagFor(0, 1))
+    }
+
+    def response(byte status) {
+        Mock(ClientResponse) {
+            getStatus() >> status
+            getStatusString() >> "status $status"
+        }
+    }
+
+    def "timed flushes send partially filled batches"() {
+        given:
+            def sent = new java.util.concurrent.CountDownLatch(1)
+            client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                rows << params[0].rowCount
+                sent.countDown()
+                true
+            }
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 10, errors, null)
+            loader.setFlushInterval(1, 1)
+        when:
+            2.times { loader.insertRow(meta(new VoltRecord("T", it, "$it")), [it, "$it"] as Object[]) }
+        then:
+            sent.await(5, java.util.concurrent.TimeUnit.SECONDS)
+            rows == [2]
+        cleanup:
+            loader.setFlushInterval(0, 0)
+    }
+
+    def "invokes the procedure once per full batch, and with the remainder on close"() {
+        given:
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 3, errors, null)
+        when:
+            7.times { loader.insertRow(meta(new VoltRecord("T", it, "$it")), [it, "$it"] as Object[]) }
+        then:
+            2 * client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                callbacks << cb
+                tables << params[0]
+                rows << params[0].rowCount
+                true
+            }
+            rows == [3, 3]
+            !tables[0].is(tables[1])
+            tables[0].rowCount == 3
+            tables[0].columnCount == 2
+            tables[0].getColumnName(0) == "C1"
+        when:
+            callbacks.each { it.clientCallback(response(ClientResponse.SUCCESS)) }
+            callbacks.clear()
+            Thread.start {
+                while (callbacks.isEmpty()) Thread.sleep(5)
+                callbacks[0].clientCallback(response(ClientResponse.SUCCESS))
+            }
+            loader.close()
+        then:
+            1 * client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                rows << params[0].rowCount
+                callbacks << cb
+                true
+            }
+            rows == [3, 3, 1]
+            loader.processedRows == 7
+            loader.failedRows == 0
+    }
+
+    def "reports every row of a failed batch, and counts them all as failed"() {
+        given:
+            def success = Mock(BulkLoaderSuccessCallback)
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 2, errors, success)
+            client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                callbacks << cb
+                true
+            }
+        when:
+            4.times { loader.insertRow(meta(new VoltRecord("T", it, "$it")), [it, "$it"] as Object[]) }
+            def outstanding = loader.outstandingBatches
+            callbacks[0].clientCallback(response(ClientResponse.GRACEFUL_FAILURE))
+            callbacks[1].clientCallback(response(ClientResponse.SUCCESS))
+        then:
+            outstanding == 2
+            loader.outstandingBatches == 0
+            2 * errors.handleError({ it.rawLine[0] in [0, 1] } as RowWithMetaData, _ as ClientResponse, "status ${ClientResponse.GRACEFUL_FAILURE}")
+            0 * errors.handleError(*_)
+            1 * success.success(_, _ as ClientResponse)
+            loader.failedRows == 2
+            loader.processedRows == 2
+    }
+
+    def "reports every row of a batch that could not be queued"() {
+        given:
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 3, errors, null)
+            client.callProcedure(_ as ProcedureCallback, "Merge", _) >> false
+        when:
+            3.times { loader.insertRow(meta(new VoltRecord("T", it, "$it")), [it, "$it"] as Object[]) }
+        then:
+            3 * errors.handleError(_ as RowWithMetaData, null, "procedure Merge invocation was not queued")
+            loader.failedRows == 3
+            loader.processedRows == 0
+    }
+
+    def "does not hold the loader while an invocation blocks on backpressure"() {
+        given:
+            def blocked = new java.util.concurrent.CountDownLatch(1)
+            def release = new java.util.concurrent.CountDownLatch(1)
+            client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                blocked.countDown()
+                release.await()
+                true
+            }
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 1, errors, null)
+        when:
+            def sender = Thread.start { loader.insertRow(meta(new VoltRecord("T", 0, "0")), [0, "0"] as Object[]) }
+            blocked.await(5, java.util.concurrent.TimeUnit.SECONDS)
+            def filler = Thread.start {
+                synchronized (loader) {
+                    loader.getColumnTypes()
+                }
+            }
+            filler.join(5000)
+        then:
+            !filler.alive
+        cleanup:
+            release.countDown()
+            sender?.join(5000)
+    }
+
+    def "retries every row of a batch that failed with a retryable status"() {
+        given:
+            def rq = new RetryQueue(new RetryQueue.Policy(["CONNECTION_LOST"] as String[], 3, 1, 1, 10), errors)
+            def loader = new ProcedureLoader(client, "Merge", TYPES, 3, rq, null)
+            client.callProcedure(_ as ProcedureCallback, "Merge", _) >> { ProcedureCallback cb, String name, Object[] params ->
+                callbacks << cb
+                tables << params[0]
+                true
+            }
+        when:
+            3.times { loader.insertRow(meta(new VoltRecord("T", it, it.toString())), [it, it.toString()] as Object[]) }
+            callbacks[0].clientCallback(response(ClientResponse.CONNECTION_LOST))
+            Thread.sleep(5)
+            def retried = []
+            for (def row = rq.poll(); row != null; row = rq.poll()) {
+                retried << row
+                loader.insertRow(new RowWithMetaData(row.m_fields, RetryQueue.tagFor(row.m_stripe, row.m_attempt)), row.m_fields)
+            }
+            callbacks[1].clientCallback(response(ClientResponse.SUCCESS))
+        then:
+            0 * errors.handleError(*_)
+            retried.collect { it.m_fields[0] }.sort() == [0, 1, 2]
+            retried.every { it.m_attempt == 2 }
+            tables[1].rowCount == 3
+            rq.retries == 3
+            rq.empty
+            loader.failedRows == 3
+            loader.processedRows == 3
+    }
+}
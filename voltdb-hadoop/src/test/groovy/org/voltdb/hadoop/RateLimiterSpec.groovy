@@ -0,0 +1,81 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import spock.lang.Specification
+
+class RateLimiterSpec extends Specification {
+
+    static long SECOND = 1000000000L
+
+    def "bucket makes callers wait once they exhaust their tokens"() {
+        given:
+            def bucket = new RateLimiter.Bucket()
+            bucket.addRate(100, 0L)
+        expect:
+            bucket.take(1, 0L) == SECOND / 100 as long
+            bucket.take(99, SECOND) == 0L
+            bucket.take(100, SECOND) == SECOND
+    }
+
+    def "idle buckets accumulate a limited burst"() {
+        given:
+            def bucket = new RateLimiter.Bucket()
+            bucket.addRate(100, 0L)
+        expect:
+            bucket.take(100 * RateLimiter.BURST_SECONDS, 60 * SECOND) == 0L
+            bucket.take(50, 60 * SECOND) == SECOND / 2 as long
+    }
+
+    def "unlimited buckets never wait"() {
+        expect:
+            new RateLimiter.Bucket().take(1000000, 0L) == 0L
+    }
+
+    def "writers of the same job pool their shares"() {
+        when:
+            def uno = RateLimiter.lease("job_1", 100, 0)
+            def due = RateLimiter.lease("job_1", 100, 0)
+            def limiter = uno.m_limiter
+        then:
+            due.m_limiter.is(limiter)
+            limiter.m_rows.rate == 200D
+            limiter.m_bytes.rate == 0D
+        when:
+            uno.release()
+            uno.release()
+        then:
+            limiter.m_rows.rate == 100D
+        when:
+            due.release()
+        then:
+            !RateLimiter.lease("job_1", 1, 1).m_limiter.is(limiter)
+    }
+
+    def "estimates row bytes from field values"() {
+        expect:
+            RateLimiter.estimateBytes([1, 2L, null, "abc", "xy".bytes] as Object[]) == 8 + 8 + 1 + 7 + 6
+    }
+}
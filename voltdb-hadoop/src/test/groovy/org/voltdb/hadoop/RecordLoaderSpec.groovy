@@ -0,0 +1,196 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import org.apache.hadoop.io.Text
+import org.voltdb.VoltType
+import org.voltdb.client.ClientResponse
+import org.voltdb.hadoop.RowValidator.Column
+import org.voltdb.utils.BulkLoaderErrorHandler
+import org.voltdb.utils.CSVDataLoader
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class RecordLoaderSpec extends Specification {
+
+    static String THINGS = "THINGS"
+
+    def "stripes records round robin across loaders"() {
+        given:
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], false)
+        when:
+            6.times { rl.write(new Text(THINGS), new VoltRecord(THINGS, it)) }
+        then:
+            loaders.each { 2 * it.insertRow(_ as RowWithMetaData, _) }
+    }
+
+    def "stripes records with equal keys to the same loader"() {
+        given:
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], true)
+            def key = new Text("key")
+            def stripe = rl.stripeFor(key)
+        when:
+            5.times { rl.write(new Text("key"), new VoltRecord(THINGS, it)) }
+        then:
+            5 * loaders[stripe].insertRow(_ as RowWithMetaData, _)
+            0 * loaders[(stripe + 1) % 3].insertRow(_, _)
+            0 * loaders[(stripe + 2) % 3].insertRow(_, _)
+    }
+
+    def "flushes all loaders before it closes any, and fails if any flush failed"() {
+        given:
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], false)
+        when:
+            rl.close()
+        then:
+            1 * loaders[0].flush()
+            1 * loaders[1].flush() >> { throw new IllegalStateException("boom") }
+        then:
+            1 * loaders[0].close()
+            1 * loaders[1].close()
+            IOException e = thrown()
+            e.cause.message == "boom"
+    }
+
+    def "sender thread feeds all queued records in order before it closes"() {
+        given:
+            def fed = Collections.synchronizedList([])
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], false, 4, null)
+        when:
+            100.times { rl.write(new Text(THINGS), new VoltRecord(THINGS, it)) }
+            rl.close()
+        then:
+            100 * _.insertRow(_ as RowWithMetaData, _) >> { rmd, fields -> fed << fields[0] }
+        then:
+            loaders.each { 1 * it.close() }
+            fed == (0..<100).collect { it }
+    }
+
+    def "writes fail once the sender fails"() {
+        given:
+            def loader = Mock(CSVDataLoader)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false, 2, null)
+            loader.insertRow(_, _) >> { throw new IllegalStateException("boom") }
+        when:
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 1))
+            rl.flush()
+        then:
+            IOException e = thrown()
+            e.cause.message == "boom"
+        cleanup:
+            try {
+                rl.close()
+            } catch (IOException ignored) {
+            }
+    }
+
+    def "counts the records the sender discards after it fails, and fails to close"() {
+        given:
+            def failing = new java.util.concurrent.CountDownLatch(1)
+            def loader = Mock(CSVDataLoader)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false, 4, null)
+            loader.insertRow(_, _) >> {
+                failing.await()
+                throw new IllegalStateException("boom")
+            }
+        when:
+            3.times { rl.write(new Text(THINGS), new VoltRecord(THINGS, it)) }
+            failing.countDown()
+            rl.close()
+        then:
+            IOException e = thrown()
+            e.cause.message == "boom"
+            rl.discarded == 3
+            1 * loader.close()
+    }
+
+    def "resubmits rows that failed with a retryable status to their stripe before it closes"() {
+        given:
+            def lost = Mock(ClientResponse) { getStatus() >> ClientResponse.CONNECTION_LOST }
+            def faults = Mock(BulkLoaderErrorHandler)
+            def retries = new RetryQueue(new RetryQueue.Policy(["CONNECTION_LOST"] as String[], 3, 1, 1, 10), faults)
+            def loaders = [Mock(CSVDataLoader), Mock(CSVDataLoader)]
+            def attempts = 0
+            def completed = [0L, 0L]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], false)
+            rl.setRetries(retries)
+        when:
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 1))
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 2))
+            rl.close()
+        then:
+            _ * loaders[0].processedRows >> { completed[0] }
+            _ * loaders[1].processedRows >> { completed[1] }
+            3 * loaders[0].insertRow(_ as RowWithMetaData, [1] as Object[]) >> { RowWithMetaData rmd, fields ->
+                completed[0]++
+                if (++attempts < 3) retries.handleError(rmd, lost, "lost")
+            }
+            1 * loaders[1].insertRow(_ as RowWithMetaData, [2] as Object[]) >> { completed[1]++ }
+            0 * faults.handleError(*_)
+            rl.retries == 2
+    }
+
+    def "counts submitted, and acknowledged rows, and bytes"() {
+        given:
+            def loaders = [Mock(CSVDataLoader), Mock(ProcedureLoader)]
+            def rl = new RecordLoader(loaders as CSVDataLoader[], false)
+        when:
+            4.times { rl.write(new Text(THINGS), new VoltRecord(THINGS, it, 'ab')) }
+            def counters = rl.counters
+        then:
+            _ * loaders[0].processedRows >> 2
+            _ * loaders[0].failedRows >> 1
+            _ * loaders[1].processedRows >> 2
+            counters[VoltCounter.ROWS_SUBMITTED] == 4
+            counters[VoltCounter.ROWS_ACKNOWLEDGED] == 3
+            counters[VoltCounter.ROWS_FAILED] == 0
+            counters[VoltCounter.BYTES_SUBMITTED] == 4 * (8 + 6)
+            counters[VoltCounter.BATCHES] == 0
+            counters.size() == VoltCounter.values().length
+    }
+
+    def "rejects records that violate column constraints before they are batched"() {
+        given:
+            def loader = Mock(CSVDataLoader)
+            def rejects = Mock(BulkLoaderErrorHandler)
+            def rl = new RecordLoader([loader] as CSVDataLoader[], false)
+            rl.setValidator(new RowValidator(THINGS, [
+                new Column(VoltType.INTEGER, 0, false),
+                new Column(VoltType.STRING, 3, true)] as Column[]), rejects)
+        when:
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 1, 'one'))
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, null, 'two'))
+            rl.write(new Text(THINGS), new VoltRecord(THINGS, 3, 'three'))
+        then:
+            1 * loader.insertRow(_ as RowWithMetaData, _)
+            2 * rejects.handleError(_ as RowWithMetaData, { it.status == ClientResponse.GRACEFUL_FAILURE }, _ as String)
+            rl.rejected == 2
+    }
+}
@@ -0,0 +1,152 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import org.voltdb.client.ClientResponse
+import org.voltdb.utils.BulkLoaderErrorHandler
+import org.voltdb.utils.RowWithMetaData
+
+import spock.lang.Specification
+
+class RetryQueueSpec extends Specification {
+
+    def faults = Mock(BulkLoaderErrorHandler)
+
+    def response(byte status) {
+        Mock(ClientResponse) { getStatus() >> status }
+    }
+
+    def meta(int attempt) {
+        new RowWithMetaData([1] as Object[], RetryQueue.tagFor(0, attempt))
+    }
+
+    def queue(int attempts, int size) {
+        new RetryQueue(new RetryQueue.Policy(["CONNECTION_LOST", "-5"] as String[], attempts, 1, 1, size), faults)
+    }
+
+    def "queues rows that failed with retryable statuses, and hands the others to the delegate"() {
+        given:
+            def rq = queue(3, 10)
+        when:
+            rq.handleError(meta(1), response(ClientResponse.CONNECTION_LOST), "lost")
+            rq.handleError(meta(1), response(ClientResponse.SERVER_UNAVAILABLE), "unavailable")
+            rq.handleError(meta(1), response(ClientResponse.GRACEFUL_FAILURE), "constraint")
+            rq.handleError(meta(1), null, "conversion")
+        then:
+            1 * faults.handleError(_, { it?.status == ClientResponse.GRACEFUL_FAILURE }, "constraint")
+            1 * faults.handleError(_, null, "conversion")
+            !rq.empty
+        when:
+            Thread.sleep(5)
+            def rows = [rq.poll(), rq.poll(), rq.poll()]
+        then:
+            rows[0].m_attempt == 2
+            rows[1].m_attempt == 2
+            rows[2] == null
+            rq.retries == 2
+            rq.empty
+    }
+
+    def "hands rows over to the delegate once they run out of attempts, or queue room"() {
+        given:
+            def rq = queue(2, 1)
+        when:
+            rq.handleError(meta(2), response(ClientResponse.CONNECTION_LOST), "lost")
+            rq.handleError(meta(1), response(ClientResponse.CONNECTION_LOST), "lost")
+            rq.handleError(meta(1), response(ClientResponse.CONNECTION_LOST), "lost")
+        then:
+            2 * faults.handleError(_, _, "lost")
+            rq.exhausted == 2
+    }
+
+    def "does not hand out rows before their back off elapses"() {
+        given:
+            def rq = new RetryQueue(new RetryQueue.Policy(["CONNECTION_LOST"] as String[], 3, 60000, 60000, 10), faults)
+        when:
+            rq.handleError(meta(1), response(ClientResponse.CONNECTION_LOST), "lost")
+        then:
+            rq.poll() == null
+            !rq.empty
+    }
+
+    def "drains rows still waiting for a retry into the delegate, as exhausted"() {
+        given:
+            def rq = new RetryQueue(new RetryQueue.Policy(["CONNECTION_LOST"] as String[], 3, 60000, 60000, 10), faults)
+            2.times { rq.handleError(meta(1), response(ClientResponse.CONNECTION_LOST), "lost") }
+        when:
+            def drained = rq.drain("gave up")
+        then:
+            2 * faults.handleError({ RetryQueue.attemptOf(it.lineNumber) == 2 }, null, "gave up")
+            drained == 2
+            rq.exhausted == 2
+            rq.retries == 0
+            rq.empty
+            rq.poll() == null
+    }
+
+    def "recovers the stripe, attempt, and fields of failed rows from their handles"() {
+        given:
+            def rq = queue(3, 10)
+            def fields = [7, 'seven'] as Object[]
+        when:
+            rq.handleError(new RowWithMetaData(fields, RetryQueue.tagFor(5, 2)), response(ClientResponse.CONNECTION_LOST), "lost")
+            rq.handleError(new RowWithMetaData(fields, -1), response(ClientResponse.CONNECTION_LOST), "lost")
+            Thread.sleep(5)
+            def row = rq.poll()
+        then:
+            1 * faults.handleError({ it.lineNumber == -1 }, _, "lost")
+            row.m_stripe == 5
+            row.m_attempt == 3
+            row.m_fields.is(fields)
+            rq.poll() == null
+    }
+
+    def "back off grows exponentially with jitter up to its cap"() {
+        expect:
+            (1..50).every {
+                def backoff = RetryQueue.backoffMillis(attempt, 100, 1000)
+                backoff >= ceiling / 2 && backoff <= ceiling
+            }
+        where:
+            attempt | ceiling
+            1       | 100
+            2       | 200
+            3       | 400
+            4       | 800
+            5       | 1000
+            30      | 1000
+    }
+
+    def "reads statuses by name, or number"() {
+        expect:
+            RetryQueue.statusFor(" connection_lost ") == ClientResponse.CONNECTION_LOST
+            RetryQueue.statusFor("-5") == ClientResponse.SERVER_UNAVAILABLE
+        when:
+            RetryQueue.statusFor("BOGUS")
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,85 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import static org.voltdb.VoltType.*
+
+import org.voltdb.hadoop.RowValidator.Column
+
+import spock.lang.Specification
+
+class RowValidatorSpec extends Specification {
+
+    static String THINGS = "THINGS"
+
+    def validator = new RowValidator(THINGS, [
+        new Column(TINYINT, 0, true),
+        new Column(INTEGER, 0, false),
+        new Column(STRING, 5, true),
+        new Column(VARBINARY, 2, true),
+        new Column(DECIMAL, 0, true)] as Column[])
+
+    def "accepts records within column constraints"() {
+        expect:
+            validator.validate(new VoltRecord(THINGS, fields as Object[])) == null
+        where:
+            fields << [
+                [127 as byte, 1, 'five', [1, 2] as byte[], 1.5G],
+                [null, -2147483647, null, null, null],
+                [-127, 0L, '12345', [] as byte[], 12345678901234567890123456.123456789012G],
+                [1, 1, 123456, 'ABCDEF', 1.5D]
+            ]
+    }
+
+    def "rejects records that violate column constraints"() {
+        when:
+            def violation = validator.validate(new VoltRecord(THINGS, fields as Object[]))
+        then:
+            violation != null
+            violation.contains(expected)
+        where:
+            fields                                                       | expected
+            [1, 1, 'a', null]                                            | 'has 5 columns'
+            [1, null, 'a', null, null]                                   | 'Column 2 of table THINGS does not accept NULL'
+            [-128, 1, 'a', null, null]                                   | 'out of range'
+            [1, Integer.MIN_VALUE, 'a', null, null]                      | 'out of range'
+            [1, 2147483648L, 'a', null, null]                            | 'out of range'
+            [1, 1, 'sixsix', null, null]                                 | '6 characters long'
+            [1, 1, 'a', [1, 2, 3] as byte[], null]                       | '3 bytes long'
+            [1, 1, 'a', null, 123456789012345678901234567.5G]            | 'integer digits'
+    }
+
+    def "parses the column specifications it formats"() {
+        expect:
+            column.toString() == spec
+            Column.valueOf(spec).toString() == spec
+        where:
+            column                        | spec
+            new Column(STRING, 64, false) | 'STRING(64) NOT NULL'
+            new Column(VARBINARY, 8, true)| 'VARBINARY(8)'
+            new Column(BIGINT, 8, true)   | 'BIGINT'
+            new Column(DECIMAL, 38, false)| 'DECIMAL NOT NULL'
+    }
+}
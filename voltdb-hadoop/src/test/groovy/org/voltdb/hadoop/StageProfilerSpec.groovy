@@ -0,0 +1,123 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package org.voltdb.hadoop
+
+import org.apache.hadoop.conf.Configuration
+
+import spock.lang.Specification
+
+import static org.voltdb.hadoop.StageProfiler.Stage.*
+
+class StageProfilerSpec extends Specification {
+
+    def cleanup() {
+        StageProfiler.current().release()
+    }
+
+    def sampling(int every) {
+        def conf = new Configuration()
+        conf.setInt(VoltConfiguration.PROFILE_SAMPLE_EVERY_PROP, every)
+        conf
+    }
+
+    def "is disabled unless the configuration asks for sampling"() {
+        when:
+            def profiler = StageProfiler.open(new Configuration())
+        then:
+            profiler.is(StageProfiler.DISABLED)
+            profiler.start(PARSE) == StageProfiler.NOT_SAMPLED
+            profiler.drain().isEmpty()
+        when:
+            profiler = StageProfiler.open(sampling(4))
+        then:
+            profiler.enabled
+            StageProfiler.current().is(profiler)
+        when: 'a later job in the same thread does not ask for sampling'
+            StageProfiler.open(new Configuration())
+        then:
+            !StageProfiler.current().enabled
+            profiler.enabled
+    }
+
+    def "is not enabled by reading a VoltDB configuration"() {
+        when:
+            VoltConfiguration.configFrom(sampling(4), 'THINGS')
+        then:
+            !StageProfiler.current().enabled
+    }
+
+    def "samples one in every given number of events, and extrapolates their times"() {
+        given:
+            def profiler = StageProfiler.open(sampling(3))
+        when:
+            def tokens = (1..9).collect {
+                def token = StageProfiler.current().start(CONVERT)
+                Thread.sleep(1)
+                StageProfiler.current().stop(CONVERT, token)
+                token
+            }
+            def counters = profiler.drain()
+        then:
+            tokens.count { it != StageProfiler.NOT_SAMPLED } == 3
+            counters.CONVERT_EVENTS == 9L
+            counters.CONVERT_WALL_MILLIS >= 9L
+            counters.containsKey('CONVERT_CPU_MILLIS')
+            !counters.containsKey('PARSE_EVENTS')
+        and: 'draining resets the accumulated times'
+            profiler.drain().isEmpty()
+    }
+
+    def "records every wait event at its wall clock time only"() {
+        given:
+            def profiler = StageProfiler.open(sampling(100))
+        when:
+            profiler.record(NETWORK, 2000000L)
+            profiler.record(NETWORK, 3000000L)
+            def counters = profiler.drain()
+        then:
+            counters == [NETWORK_EVENTS: 2L, NETWORK_WALL_MILLIS: 5L]
+    }
+
+    def "keeps the stage times, and sampling rates of concurrent writers apart"() {
+        given:
+            def first = StageProfiler.open(sampling(1))
+            def second = null
+            Thread.start {
+                second = StageProfiler.open(sampling(2))
+                4.times { StageProfiler.current().stop(ENQUEUE, StageProfiler.current().start(ENQUEUE)) }
+                StageProfiler.current().release()
+            }.join()
+        when:
+            3.times { StageProfiler.current().stop(ENQUEUE, StageProfiler.current().start(ENQUEUE)) }
+        then:
+            first.drain().ENQUEUE_EVENTS == 3L
+            second.drain().ENQUEUE_EVENTS == 4L
+        when:
+            first.release()
+        then:
+            StageProfiler.current().is(StageProfiler.DISABLED)
+    }
+}
@@ -0,0 +1,89 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.hadoop
+
+import org.apache.hadoop.mapred.JobConf
+
+import spock.lang.Specification
+
+class StagingCommitterSpec extends Specification {
+
+    def config(boolean upsert) {
+        new VoltConfiguration.Config.Builder('THINGS', ['uno'] as String[], null, null, 300, 1000L, 0, upsert)
+            .setStagingTableName('THINGS_STAGE')
+            .build()
+    }
+
+    def "promotes and deletes an attempt's rows in one ad hoc batch"() {
+        when:
+            def sql = StagingCommitter.commitStatement(config(upsert),
+                    ['A', 'B', 'ATTEMPT'] as String[], ['X', 'Y'] as String[], "attempt_1_0001_m_000001_0")
+        then:
+            sql == "$verb INTO THINGS (X, Y) SELECT A, B FROM THINGS_STAGE WHERE ATTEMPT = 'attempt_1_0001_m_000001_0';\n" +
+                   "DELETE FROM THINGS_STAGE WHERE ATTEMPT = 'attempt_1_0001_m_000001_0';"
+        where:
+            upsert | verb
+            false  | 'INSERT'
+            true   | 'UPSERT'
+    }
+
+    def "rejects staging tables that do not match the destination table"() {
+        when:
+            StagingCommitter.commitStatement(config(false), ['A', 'B'] as String[], ['X', 'Y'] as String[], "a")
+        then:
+            thrown(IOException)
+    }
+
+    def "deletes an attempt's rows, a job's, or finished jobs' by exact attempt id prefix"() {
+        expect:
+            StagingCommitter.deleteStatement(config(false), ['A', 'B', 'ATTEMPT'] as String[], attempt, match) == sql
+        where:
+            attempt                        | match                             | sql
+            "attempt_1_0001_m_000001_0"    | StagingCommitter.Match.ATTEMPT    | "DELETE FROM THINGS_STAGE WHERE ATTEMPT = 'attempt_1_0001_m_000001_0';"
+            "attempt_1_0001_"              | StagingCommitter.Match.JOB        | "DELETE FROM THINGS_STAGE WHERE SUBSTRING(ATTEMPT, 1, 15) = 'attempt_1_0001_';"
+            "attempt_1_0002_"              | StagingCommitter.Match.OTHER_JOBS | "DELETE FROM THINGS_STAGE WHERE SUBSTRING(ATTEMPT, 1, 15) <> 'attempt_1_0002_';"
+    }
+
+    def "derives job attempt prefixes, and quotes literals"() {
+        expect:
+            StagingCommitter.attemptPrefix("job_1400_0007") == "attempt_1400_0007_"
+            StagingCommitter.quote("it's") == "'it''s'"
+    }
+
+    def "staging re-enables speculative execution"() {
+        given:
+            def conf = new JobConf(false)
+            VoltConfiguration.configureVoltDB(conf, ['uno'] as String[], null, null, 'THINGS')
+        when:
+            VoltConfiguration.configureStaging(conf, 'THINGS_STAGE')
+            def vc = new VoltConfiguration(conf)
+        then:
+            conf.getBoolean(VoltConfiguration.MAP_SPECULATIVE_EXEC, false)
+            conf.getBoolean(VoltConfiguration.REDUCE_SPECULATIVE_EXEC, false)
+            conf.getOutputCommitter() instanceof org.voltdb.hadoop.mapred.VoltOutputCommitter
+            vc.config.staged
+            vc.config.loadTableName == 'THINGS_STAGE'
+    }
+}
@@ -42,7 +42,7 @@ class TextAdapterSpec extends Specification {
     static byte[] BYTES = "bytes".bytes
 
     def setupSpec() {
-        VoltConfiguration.typesFor(THINGS, COLUMNTYPES)
+        VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, COLUMNTYPES)
         DataAdapters.adaptersFor(THINGS, COLUMNTYPES)
     }
 
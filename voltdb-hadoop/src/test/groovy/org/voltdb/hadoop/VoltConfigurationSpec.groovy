@@ -39,7 +39,7 @@ class VoltConfigurationSpec extends Specification {
     static VoltType [] COLUMNTYPES = [INTEGER,BIGINT,FLOAT,STRING,TIMESTAMP,VARBINARY] as VoltType[]
 
     def setupSpec() {
-        VoltConfiguration.typesFor(THINGS, COLUMNTYPES)
+        VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, COLUMNTYPES)
         DataAdapters.adaptersFor(THINGS, COLUMNTYPES)
     }
 
@@ -82,6 +82,54 @@ class VoltConfigurationSpec extends Specification {
             IllegalArgumentException | null                        | ['-p','source','things']
     }
 
+    def "loads map only unless a shuffle is requested"() {
+        given:
+            def opts = new LoaderOpts(args as String[])
+            def hconf = opts.configure(new JobConf(VoltLoader.class))
+        expect:
+            opts.shuffle == shuffle
+            hconf.numReduceTasks == reducers
+        where:
+            shuffle | reducers | args
+            false   | 0        | ['source',THINGS,'-s','uno,due']
+            true    | 1        | ['-r','-s','uno,due','-u','jim','source',THINGS]
+            true    | 1        | ['--shuffle','source',THINGS]
+    }
+
+    def "retries rows by default only for upserts"() {
+        given:
+            def hconf = new JobConf()
+            hconf.set(VoltConfiguration.HOSTNAMES_PROP, "uno")
+            props.each { k, v -> hconf.set(k, v) }
+        expect:
+            VoltConfiguration.configFrom(hconf, THINGS).retryAttempts == attempts
+        where:
+            attempts                          | props
+            0                                 | [:]
+            VoltConfiguration.RETRY_MAX_DFLT  | [(VoltConfiguration.BULKLOADER_UPSERT_PROP): "true"]
+            0                                 | [(VoltConfiguration.STAGING_TABLE_PROP): "THINGS_STAGE"]
+            VoltConfiguration.RETRY_MAX_DFLT  | [(VoltConfiguration.STAGING_TABLE_PROP): "THINGS_STAGE",
+                                                 (VoltConfiguration.BULKLOADER_UPSERT_PROP): "true"]
+            2                                 | [(VoltConfiguration.RETRY_MAX_PROP): "2"]
+    }
+
+    def "builds the same defaults with, or without a job configuration"() {
+        given:
+            def hconf = new JobConf()
+            hconf.set(VoltConfiguration.HOSTNAMES_PROP, "uno")
+            hconf.setBoolean(VoltConfiguration.BULKLOADER_UPSERT_PROP, upsert)
+            def fromJob = VoltConfiguration.configFrom(hconf, THINGS)
+            def built = new VoltConfiguration.Config.Builder(THINGS, ['uno'] as String[], null, null,
+                    VoltConfiguration.BATCHSIZE_DFLT, VoltConfiguration.TIMEOUT_DFLT, 0, upsert).build()
+        expect:
+            ['typeCacheTtl','heartbeatSeconds','flushDelay','flushSeconds','retryAttempts',
+             'clientIdleSeconds','loaderParallelism','maxRejects'].each { p ->
+                assert built."$p" == fromJob."$p"
+            }
+        where:
+            upsert << [false, true]
+    }
+
     def "configures JObConf as expected"(){
         given:
             def hconf = new LoaderOpts(args as String[]).configure(new JobConf(VoltLoader.class))
@@ -99,4 +147,62 @@ class VoltConfigurationSpec extends Specification {
             user | wordpass | servers       | table  | types       | args
             'jim'| 'please' | ['uno','due'] | THINGS | COLUMNTYPES |  ['-s','uno,due','-u','jim','-p','please','source',THINGS]
     }
+
+    def "ships the table schema in the job configuration"() {
+        given:
+            def hconf = new LoaderOpts(['source','shipped','-s','uno'] as String[]).configure(new JobConf(VoltLoader.class))
+            VoltConfiguration.configureSchema(hconf, 'shipped', COLUMNTYPES)
+        expect:
+            VoltConfiguration.schemaFrom(hconf, 'SHIPPED') == COLUMNTYPES
+            new VoltConfiguration(hconf).tableColumnTypes == COLUMNTYPES
+        when:
+            hconf.set(VoltConfiguration.TABLE_SCHEMA_PROP_PREFIX + 'SHIPPED', 'INTEGER,NOT_A_TYPE')
+        then:
+            VoltConfiguration.schemaFrom(hconf, 'shipped') == null
+    }
+
+    def "detects schema drift since job submission"() {
+        given:
+            def hconf = new LoaderOpts(['source','drifting','-s','uno'] as String[]).configure(new JobConf(VoltLoader.class))
+            VoltConfiguration.configureSchema(hconf, 'drifting', COLUMNTYPES)
+            def vconf = new VoltConfiguration(hconf)
+        when:
+            vconf.checkSchema(COLUMNTYPES)
+        then:
+            notThrown(IOException)
+        when:
+            vconf.checkSchema([INTEGER,BIGINT,FLOAT,STRING,TIMESTAMP,STRING] as VoltType[])
+        then:
+            def e = thrown(IOException)
+            e.message.contains('schema changed')
+    }
+
+    def "caches table column types by cluster and table"() {
+        given:
+            VoltConfiguration.typesFor(['Uno','due'] as String[], 'cached', COLUMNTYPES)
+            def hconf = new LoaderOpts(['source','CACHED','-s','due,uno'] as String[]).configure(new JobConf(VoltLoader.class))
+            def hits = VoltConfiguration.typeCacheStats.hitCount()
+        expect:
+            new VoltConfiguration(hconf).tableColumnTypes == COLUMNTYPES
+            VoltConfiguration.typeCacheStats.hitCount() == hits + 1
+            VoltConfiguration.typesFor(['tre'] as String[], 'CACHED', null) == null
+        when:
+            VoltConfiguration.invalidateTableTypes(['uno','due'] as String[], 'Cached')
+        then:
+            VoltConfiguration.typesFor(['uno','due'] as String[], 'CACHED', null) == null
+    }
+
+    def "replaces the adapters of altered tables"() {
+        given:
+            def altered = [INTEGER,BIGINT,STRING] as VoltType[]
+            def adapters = DataAdapters.adaptersFor('ALTERED', COLUMNTYPES)
+        expect:
+            DataAdapters.adaptersFor('ALTERED', COLUMNTYPES).is(adapters)
+            DataAdapters.adaptersFor('ALTERED', altered).signature == RecordAdapter.signatureFor(altered)
+            DataAdapters.adaptersFor('ALTERED', null).signature == RecordAdapter.signatureFor(altered)
+        when:
+            DataAdapters.invalidate('ALTERED')
+        then:
+            DataAdapters.adaptersFor('ALTERED', null) == null
+    }
 }
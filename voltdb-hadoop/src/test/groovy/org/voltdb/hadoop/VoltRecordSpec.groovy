@@ -35,13 +35,13 @@ class VoltRecordSpec extends Specification {
     static VoltType [] COLUMNTYPES = [INTEGER,BIGINT,FLOAT,STRING,TIMESTAMP,VARBINARY] as VoltType[]
 
     def setupSpec() {
-        VoltConfiguration.typesFor(THINGS, COLUMNTYPES)
+        VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, COLUMNTYPES)
         DataAdapters.adaptersFor(THINGS, COLUMNTYPES)
     }
 
     def "caches are setup properly"() {
         when:
-            def types = VoltConfiguration.typesFor(THINGS, null)
+            def types = VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, null)
             def signature = DataAdapters.adaptersFor(THINGS, null).getSignature()
         then:
             types == COLUMNTYPES
@@ -79,6 +79,24 @@ class VoltRecordSpec extends Specification {
             new VoltRecord(THINGS,  4,2L, "voltrecord", 3.33D, new Date(), "bytes".bytes)     | ClassCastException
     }
 
+    def "hands over its fields without copying, and copies them on reuse"() {
+        given:
+            def vr = new VoltRecord(THINGS).ensureCapacity(3)
+            vr << [1, 2L, "three"]
+        when:
+            def shared = vr.share()
+        then:
+            shared.is(vr.share())
+            shared as List == [1, 2L, "three"]
+        when:
+            vr.clear().add(4)
+            vr.set(0, 5)
+        then:
+            shared as List == [1, 2L, "three"]
+            vr.toArray() as List == [5]
+            vr.share().length == 1
+    }
+
     def getDataInputStreamFrom(ByteArrayOutputStream baos) {
         new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))
     }
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
@@ -41,7 +42,6 @@ import static org.voltdb.VoltType.TIMESTAMP;
 import static org.voltdb.VoltType.VARBINARY;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.util.Date;
 
 import org.apache.hadoop.io.Text;
@@ -59,6 +59,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.VoltBulkLoader.BulkLoaderSuccessCallback;
 import org.voltdb.hadoop.FaultCollector;
 import org.voltdb.hadoop.VoltConfiguration;
 import org.voltdb.hadoop.VoltRecord;
@@ -67,7 +68,7 @@ import org.voltdb.utils.CSVBulkDataLoader;
 import org.voltdb.utils.RowWithMetaData;
 
 @PrepareForTest({VoltOutputFormat.class})
-@PowerMockIgnore({"org.apache.commons.logging.*","org.apache.log4j.*"})
+@PowerMockIgnore({"org.apache.commons.logging.*","org.apache.log4j.*","javax.management.*"})
 @RunWith(PowerMockRunner.class)
 public class VoltOuputFormatTest {
 
@@ -94,8 +95,10 @@ public class VoltOuputFormatTest {
     public void setup() throws Exception {
         PowerMockito.whenNew(VoltConfiguration.class).withAnyArguments().thenReturn(vc);
 
-        when(vc.getBulkLoader(fccptr.capture())).thenReturn(lr);
+        when(vc.getLoader(fccptr.capture(), any(BulkLoaderSuccessCallback.class), anyInt())).thenReturn(lr);
         when(vc.getTableColumnTypes()).thenReturn(CTYPES);
+        when(vc.getConfig()).thenReturn(new VoltConfiguration.Config(
+                "THING", new String[]{"uno","due"}, null, null, 300, 1000L, 0, false));
         when(conf.get(eq("mapred.voltdb.table.name"))).thenReturn("THING");
         when(conf.getStrings(eq("mapred.voltdb.hostname"),any(String[].class))).thenReturn(new String[]{"uno","due"});
 
@@ -106,7 +109,7 @@ public class VoltOuputFormatTest {
     @Test
     public void testCheckOutputSpec()  throws Exception {
         assertNotNull(fccptr.getValue());
-        verify(vc,atLeast(1)).getBulkLoader(any(FaultCollector.class));
+        verify(vc,atLeast(1)).getLoader(any(FaultCollector.class), any(BulkLoaderSuccessCallback.class), anyInt());
         verify(vc,atLeast(1)).getTableColumnTypes();
         ofmt.checkOutputSpecs(null, conf);
     }
@@ -171,7 +174,7 @@ public class VoltOuputFormatTest {
     }
 
     RowWithMetaData metaDataFor(VoltRecord vr) {
-        return new RowWithMetaData(new WeakReference<VoltRecord>(vr), -1);
+        return new RowWithMetaData(vr.toArray(), -1);
     }
 
     VoltRecord generateRecord(int i) {
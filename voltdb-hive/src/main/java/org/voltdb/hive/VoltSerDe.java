@@ -47,6 +47,7 @@ import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.Writable;
 import org.voltdb.VoltType;
 import org.voltdb.hadoop.FaultCollector;
+import org.voltdb.hadoop.StageProfiler;
 import org.voltdb.hadoop.VoltConfiguration;
 import org.voltdb.hadoop.VoltRecord;
 
@@ -78,6 +79,7 @@ import com.google_voltpatches.common.collect.FluentIterable;
  * <li>{@code voltdb.batchSize} (optional) VoltDB BulkLoader batch size</li>
  * <li>{@code voltdb.clientTimeout} (optional) VoltDB client timeout</li>
  * <li>{@code voltdb.maxErrors} (optional) VoltDB BulkLoader max errors</li>
+ * <li>{@code voltdb.clientAffinity} (optional) route rows to their partition leaders</li>
  * </ul>
  * <p>
  */
@@ -91,6 +93,7 @@ public class VoltSerDe extends AbstractSerDe {
     public final static String CLIENT_TIMEOUT_PROP = "voltdb.clientTimeout";
     public final static String MAX_ERRORS_PROP = "voltdb.maxErrors";
     public final static String UPSERT_PROP = "voltdb.upsert";
+    public final static String CLIENT_AFFINITY_PROP = "voltdb.clientAffinity";
 
     private final Splitter m_splitter = Splitter.on(",").trimResults().omitEmptyStrings();
     private VoltObjectInspectorGenerator m_oig;
@@ -128,6 +131,7 @@ public class VoltSerDe extends AbstractSerDe {
      * <li>{@code voltdb.clientTimeout} (optional) VoltDB client timeout</li>
      * <li>{@code voltdb.maxErrors} (optional) VoltDB BulkLoader max errors</li>
      * <li>{@code voltdb.upsert} (optional) VoltDB BulkLoader upsert mode</li>
+     * <li>{@code voltdb.clientAffinity} (optional) route rows to their partition leaders</li>
      * </ul>
      * <p>
      * and makes sure that the Hive table column types match the destination
@@ -193,12 +197,17 @@ public class VoltSerDe extends AbstractSerDe {
         }
 
         boolean upsert = "true".equalsIgnoreCase(props.getProperty(UPSERT_PROP, "false"));
+        boolean affinity = !"false".equalsIgnoreCase(props.getProperty(CLIENT_AFFINITY_PROP, "true"));
 
         if (conf != null) {
             VoltConfiguration.configureVoltDB(conf, servers, user, password, table, batchSize, timeout, maxErrors,  upsert);
+            conf.setBoolean(VoltConfiguration.CLIENT_AFFINITY_PROP, affinity);
         }
 
-        VoltConfiguration.Config config = new VoltConfiguration.Config(table, servers, user, password, batchSize, timeout, maxErrors, upsert);
+        VoltConfiguration.Config config = new VoltConfiguration.Config.Builder(table, servers, user, password, batchSize, timeout, maxErrors, upsert)
+                .setClientAffinity(affinity)
+                .setSchema(conf != null ? VoltConfiguration.schemaFrom(conf, table) : null)
+                .build();
         VoltType [] voltTypes = null;
         m_voltConf = new VoltConfiguration(config);
         try {
@@ -206,6 +215,9 @@ public class VoltSerDe extends AbstractSerDe {
         } catch (IOException e) {
             throw new VoltSerdeException("Uanble to setup a VoltDB context. Properties:" + config.toString(), e);
         }
+        if (conf != null && config.getSchema() == null) {
+            VoltConfiguration.configureSchema(conf, table, voltTypes);
+        }
         m_oig = new VoltObjectInspectorGenerator(columnNames, columnTypes, voltTypes);
     }
 
@@ -221,22 +233,29 @@ public class VoltSerDe extends AbstractSerDe {
                     + " can only serialize struct types, but we got: "
                     + oi.getTypeName());
         }
+        final StageProfiler profiler = StageProfiler.current();
+        final long token = profiler.start(StageProfiler.Stage.CONVERT);
         VoltRecord vr = new VoltRecord(m_voltConf.getConfig().getTableName());
-        StructObjectInspector soi = (StructObjectInspector)oi;
-        List<? extends StructField> structFields = soi.getAllStructFieldRefs();
-        List<Object> fieldValues = soi.getStructFieldsDataAsList(obj);
+        try {
+            StructObjectInspector soi = (StructObjectInspector)oi;
+            List<? extends StructField> structFields = soi.getAllStructFieldRefs();
+            List<Object> fieldValues = soi.getStructFieldsDataAsList(obj);
 
-        final int size = m_oig.getColumnTypes().size();
+            final int size = m_oig.getColumnTypes().size();
+            vr.ensureCapacity(size);
 
-        for (int i = 0; i < size; ++i) {
-            ObjectInspector fieldOI = structFields.get(i).getFieldObjectInspector();
-            PrimitiveObjectInspector poi = (PrimitiveObjectInspector)fieldOI;
+            for (int i = 0; i < size; ++i) {
+                ObjectInspector fieldOI = structFields.get(i).getFieldObjectInspector();
+                PrimitiveObjectInspector poi = (PrimitiveObjectInspector)fieldOI;
 
-            Object fieldValue = poi.getPrimitiveJavaObject(fieldValues.get(i));
-            if (poi.getTypeInfo().equals(TypeInfoFactory.timestampTypeInfo)) {
-                fieldValue = fieldValue != null ? new Date(((Timestamp)fieldValue).getTime()) : null;
+                Object fieldValue = poi.getPrimitiveJavaObject(fieldValues.get(i));
+                if (poi.getTypeInfo().equals(TypeInfoFactory.timestampTypeInfo)) {
+                    fieldValue = fieldValue != null ? new Date(((Timestamp)fieldValue).getTime()) : null;
+                }
+                vr.add(fieldValue);
             }
-            vr.add(fieldValue);
+        } finally {
+            profiler.stop(StageProfiler.Stage.CONVERT, token);
         }
 
         return vr;
@@ -50,7 +50,7 @@ class VoltSerDeSpec extends Specification {
     ] as Properties
 
     def setupSpec() {
-        VoltConfiguration.typesFor(THINGS, COLUMNTYPES)
+        VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, COLUMNTYPES)
         DataAdapters.adaptersFor(THINGS, COLUMNTYPES)
     }
 
@@ -38,6 +38,7 @@ import org.joda.time.DateTime;
 import org.voltdb.VoltType;
 import org.voltdb.hadoop.FieldAdapter;
 import org.voltdb.hadoop.RecordAdapter;
+import org.voltdb.hadoop.StageProfiler;
 import org.voltdb.hadoop.VoltRecord;
 import org.voltdb.hadoop.typeto.BigDecimalTypeTo;
 import org.voltdb.hadoop.typeto.ByteArrayTypeTo;
@@ -219,14 +220,21 @@ public class TupleAdapter extends RecordAdapter<VoltRecord, Tuple, ExecException
         if (record == null) {
             record = new VoltRecord();
         }
+        record.ensureCapacity(m_adapters.size());
         if (tuple.size() != m_adapters.size()) {
             throw new ExecException(
                     "mismatched tuple size: expected is " + m_adapters.size()
                   + ", actual is " + tuple.size()
                   );
         }
-        for (TupleFieldAdapter fieldAdapter: m_adapters) {
-            fieldAdapter.adapt(tuple, record);
+        final StageProfiler profiler = StageProfiler.current();
+        final long token = profiler.start(StageProfiler.Stage.CONVERT);
+        try {
+            for (TupleFieldAdapter fieldAdapter: m_adapters) {
+                fieldAdapter.adapt(tuple, record);
+            }
+        } finally {
+            profiler.stop(StageProfiler.Stage.CONVERT, token);
         }
         return record;
     }
@@ -106,6 +106,7 @@ public class VoltStorer extends StoreFunc {
                 );
         m_conf = new VoltConfiguration(job.getConfiguration());
         m_conf.isMinimallyConfigured();
+        m_conf.shipSchema(job.getConfiguration());
     }
 
     @Override
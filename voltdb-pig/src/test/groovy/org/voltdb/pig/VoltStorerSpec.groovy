@@ -50,7 +50,7 @@ class VoltStorerSpec extends Specification {
     static TupleFactory tFactory = TupleFactory.instance
 
     def setupSpec() {
-        VoltConfiguration.typesFor(THINGS, COLUMNTYPES)
+        VoltConfiguration.typesFor(['uno','due'] as String[], THINGS, COLUMNTYPES)
         DataAdapters.adaptersFor(THINGS, COLUMNTYPES)
     }
 